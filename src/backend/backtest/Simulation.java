@@ -0,0 +1,190 @@
+package backend.backtest;
+
+import backend.models.BacktestResult;
+import backend.models.NavHistory;
+import backend.models.PriceHistory;
+
+import java.util.Map;
+
+/**
+ * One simulated account replaying a {@link Strategy} over daily bars. Fills follow the
+ * same rules as {@link backend.services.PortfolioService}: a trade costs quantity x price
+ * with no fees, a buy larger than the cash balance is rejected ("Insufficient balance"),
+ * a sale larger than the position is rejected ("Insufficient stocks"), and buys re-average
+ * the position's cost.
+ *
+ * Symbols are merged onto one calendar, so histories that start, end or pause at
+ * different dates are fine; a symbol without a bar on a day keeps its last close. Cash,
+ * positions and the value of holdings are updated incrementally, so a run is
+ * O(days x symbols) and the strategy can ask for equity on every bar for free.
+ * Instances are single-use and not thread-safe; parallel sweeps use one per run.
+ */
+public class Simulation {
+    private final PriceHistory[] histories;
+    private final double startingCash;
+    private final int[] shares;
+    private final double[] averagePrice;
+    private final double[] lastClose;
+    // Signed quantity to fill at the symbol's next open; 0 when there is no order
+    private final int[] pending;
+
+    private double cash;
+    private double holdingsValue;
+    private double invested;
+    private int trades;
+    private int rejected;
+    private int closedTrades;
+    private int winningTrades;
+    private int day;
+
+    public Simulation(PriceHistory[] histories, double startingCash) {
+        this.histories = histories;
+        this.startingCash = startingCash;
+        this.cash = startingCash;
+        this.shares = new int[histories.length];
+        this.averagePrice = new double[histories.length];
+        this.lastClose = new double[histories.length];
+        this.pending = new int[histories.length];
+    }
+
+    /**
+     * Replays every bar and returns the statistics, with the equity curve reduced to at
+     * most curvePoints points. Statistics are computed from the full daily curve.
+     */
+    public BacktestResult run(String strategyName, Map<String, Double> parameters, Strategy strategy, int curvePoints) {
+        int symbols = histories.length;
+        int[] cursor = new int[symbols];
+        int[] today = new int[symbols];
+        int longest = 0;
+        for (PriceHistory history : histories) {
+            longest = Math.max(longest, history.size());
+        }
+        NavHistory.Builder curve = new NavHistory.Builder(strategyName, longest);
+
+        strategy.start(this);
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            for (int s = 0; s < symbols; s++) {
+                if (cursor[s] < histories[s].size()) {
+                    next = Math.min(next, histories[s].getEpochDay(cursor[s]));
+                }
+            }
+            if (next == Integer.MAX_VALUE) {
+                break;
+            }
+            day = next;
+            int count = 0;
+            for (int s = 0; s < symbols; s++) {
+                if (cursor[s] < histories[s].size() && histories[s].getEpochDay(cursor[s]) == next) {
+                    today[count++] = s;
+                }
+            }
+            // Every fill and mark for the day first, so each strategy call sees the same equity
+            for (int i = 0; i < count; i++) {
+                int s = today[i];
+                fill(s, histories[s].getOpen(cursor[s]));
+                mark(s, histories[s].getClose(cursor[s]));
+            }
+            for (int i = 0; i < count; i++) {
+                int s = today[i];
+                strategy.onBar(this, s, cursor[s]);
+            }
+            curve.add(next, cash + holdingsValue, cash, invested);
+            for (int i = 0; i < count; i++) {
+                cursor[today[i]]++;
+            }
+        }
+        return BacktestResult.of(strategyName, parameters, curve.build(), curvePoints, startingCash,
+                trades, rejected, closedTrades, winningTrades);
+    }
+
+    // ---------- what strategies see ----------
+
+    public int getSymbolCount() { return histories.length; }
+    public PriceHistory getHistory(int symbol) { return histories[symbol]; }
+    public int getEpochDay() { return day; }
+    public double getCash() { return cash; }
+    public double getEquity() { return cash + holdingsValue; }
+    public int getShares(int symbol) { return shares[symbol]; }
+    public double getAveragePrice(int symbol) { return averagePrice[symbol]; }
+    public double getLastClose(int symbol) { return lastClose[symbol]; }
+
+    /** Whole shares worth the given fraction of current equity at the last close. */
+    public int sharesFor(int symbol, double fractionOfEquity) {
+        double price = lastClose[symbol];
+        return price > 0 ? (int) Math.max(0, Math.floor(getEquity() * fractionOfEquity / price)) : 0;
+    }
+
+    /** Buys at the next open; replaces any order already placed for the symbol. */
+    public void buy(int symbol, int quantity) {
+        if (quantity <= 0) {
+            // PortfolioService: "Quantity must be positive"
+            rejected++;
+            return;
+        }
+        pending[symbol] = quantity;
+    }
+
+    /** Sells at the next open; replaces any order already placed for the symbol. */
+    public void sell(int symbol, int quantity) {
+        if (quantity <= 0) {
+            rejected++;
+            return;
+        }
+        pending[symbol] = -quantity;
+    }
+
+    /** Trades at the next open toward the given position. */
+    public void orderTarget(int symbol, int targetShares) {
+        pending[symbol] = Math.max(0, targetShares) - shares[symbol];
+    }
+
+    // ---------- internals ----------
+
+    private void fill(int s, double price) {
+        int quantity = pending[s];
+        if (quantity == 0) {
+            return;
+        }
+        pending[s] = 0;
+        // Re-mark the existing position at the fill price before changing it
+        holdingsValue += shares[s] * (price - lastClose[s]);
+        lastClose[s] = price;
+
+        if (quantity > 0) {
+            double cost = quantity * price;
+            if (cash < cost) {
+                rejected++;
+                return;
+            }
+            averagePrice[s] = (shares[s] * averagePrice[s] + cost) / (shares[s] + quantity);
+            shares[s] += quantity;
+            cash -= cost;
+            invested += cost;
+            holdingsValue += cost;
+        } else {
+            quantity = -quantity;
+            if (shares[s] < quantity) {
+                rejected++;
+                return;
+            }
+            double proceeds = quantity * price;
+            closedTrades++;
+            if (price > averagePrice[s]) {
+                winningTrades++;
+            }
+            shares[s] -= quantity;
+            if (shares[s] == 0) {
+                averagePrice[s] = 0;
+            }
+            cash += proceeds;
+            holdingsValue -= proceeds;
+        }
+        trades++;
+    }
+
+    private void mark(int s, double close) {
+        holdingsValue += shares[s] * (close - lastClose[s]);
+        lastClose[s] = close;
+    }
+}
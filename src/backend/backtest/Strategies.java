@@ -0,0 +1,225 @@
+package backend.backtest;
+
+import backend.models.PriceHistory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The built-in strategies, by name. Each takes numeric parameters; anything not given
+ * falls back to {@link #defaults}. Position size is a fraction of equity split evenly
+ * across the symbols, so "allocation" 0.95 keeps 5% in cash for gaps at the open.
+ */
+public final class Strategies {
+    public static final String BUY_AND_HOLD = "buy-and-hold";
+    public static final String SMA_CROSSOVER = "sma-crossover";
+    public static final String MEAN_REVERSION = "mean-reversion";
+
+    private static final List<String> NAMES = Collections.unmodifiableList(
+            Arrays.asList(BUY_AND_HOLD, SMA_CROSSOVER, MEAN_REVERSION));
+
+    private Strategies() {
+    }
+
+    public static List<String> names() {
+        return NAMES;
+    }
+
+    /** Parameter names with their defaults, in display order; null if the strategy is unknown. */
+    public static Map<String, Double> defaults(String name) {
+        Map<String, Double> defaults = new LinkedHashMap<>();
+        switch (name) {
+            case BUY_AND_HOLD:
+                defaults.put("allocation", 0.95);
+                break;
+            case SMA_CROSSOVER:
+                defaults.put("fast", 20.0);
+                defaults.put("slow", 50.0);
+                defaults.put("allocation", 0.95);
+                break;
+            case MEAN_REVERSION:
+                defaults.put("lookback", 20.0);
+                defaults.put("entry", 2.0);
+                defaults.put("exit", 0.0);
+                defaults.put("allocation", 0.95);
+                break;
+            default:
+                return null;
+        }
+        return defaults;
+    }
+
+    /** Throws IllegalArgumentException for an unknown strategy or parameters it cannot use. */
+    public static Strategy create(String name, Map<String, Double> parameters) {
+        Map<String, Double> values = defaults(name);
+        if (values == null) {
+            throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+        values.putAll(parameters);
+        double allocation = values.get("allocation");
+        if (!(allocation > 0 && allocation <= 1)) {
+            throw new IllegalArgumentException("allocation must be in (0, 1]");
+        }
+        switch (name) {
+            case SMA_CROSSOVER:
+                int fast = window(values, "fast");
+                int slow = window(values, "slow");
+                if (fast >= slow) {
+                    throw new IllegalArgumentException("fast must be shorter than slow");
+                }
+                return new MovingAverageCrossover(fast, slow, allocation);
+            case MEAN_REVERSION:
+                int lookback = window(values, "lookback");
+                if (lookback < 2) {
+                    throw new IllegalArgumentException("lookback must be at least 2 days");
+                }
+                return new MeanReversion(lookback, values.get("entry"), values.get("exit"), allocation);
+            default:
+                return new BuyAndHold(allocation);
+        }
+    }
+
+    private static int window(Map<String, Double> values, String name) {
+        double value = values.get(name);
+        if (!(value >= 1) || value != Math.rint(value)) {
+            throw new IllegalArgumentException(name + " must be a whole number of days");
+        }
+        return (int) value;
+    }
+
+    // Running sums of closes (and squares) so any window's mean and variance are O(1)
+    private static double[][] prefixSums(PriceHistory history, boolean squares) {
+        int n = history.size();
+        double[] sums = new double[n + 1];
+        double[] sumSquares = squares ? new double[n + 1] : null;
+        for (int i = 0; i < n; i++) {
+            double close = history.getClose(i);
+            sums[i + 1] = sums[i] + close;
+            if (squares) {
+                sumSquares[i + 1] = sumSquares[i] + close * close;
+            }
+        }
+        return new double[][] {sums, sumSquares};
+    }
+
+    /** Buys an equal share of every symbol on its first bar and holds to the end. */
+    static final class BuyAndHold implements Strategy {
+        private final double allocation;
+
+        BuyAndHold(double allocation) {
+            this.allocation = allocation;
+        }
+
+        @Override
+        public void onBar(Simulation simulation, int symbol, int bar) {
+            if (bar == 0) {
+                int quantity = simulation.sharesFor(symbol, allocation / simulation.getSymbolCount());
+                if (quantity > 0) {
+                    simulation.buy(symbol, quantity);
+                }
+            }
+        }
+    }
+
+    /** Long while the fast simple moving average is above the slow one, flat otherwise. */
+    static final class MovingAverageCrossover implements Strategy {
+        private final int fast;
+        private final int slow;
+        private final double allocation;
+        private double[][] sums;
+
+        MovingAverageCrossover(int fast, int slow, double allocation) {
+            this.fast = fast;
+            this.slow = slow;
+            this.allocation = allocation;
+        }
+
+        @Override
+        public void start(Simulation simulation) {
+            sums = new double[simulation.getSymbolCount()][];
+            for (int s = 0; s < sums.length; s++) {
+                sums[s] = prefixSums(simulation.getHistory(s), false)[0];
+            }
+        }
+
+        @Override
+        public void onBar(Simulation simulation, int symbol, int bar) {
+            if (bar < slow) {
+                return;
+            }
+            double[] sum = sums[symbol];
+            double fastNow = (sum[bar + 1] - sum[bar + 1 - fast]) / fast;
+            double slowNow = (sum[bar + 1] - sum[bar + 1 - slow]) / slow;
+            double fastBefore = (sum[bar] - sum[bar - fast]) / fast;
+            double slowBefore = (sum[bar] - sum[bar - slow]) / slow;
+            int held = simulation.getShares(symbol);
+            if (held == 0 && fastBefore <= slowBefore && fastNow > slowNow) {
+                int quantity = simulation.sharesFor(symbol, allocation / simulation.getSymbolCount());
+                if (quantity > 0) {
+                    simulation.buy(symbol, quantity);
+                }
+            } else if (held > 0 && fastBefore >= slowBefore && fastNow < slowNow) {
+                simulation.sell(symbol, held);
+            }
+        }
+    }
+
+    /**
+     * Buys when the close is more than entry standard deviations below its moving
+     * average and sells once it recovers above average + exit deviations.
+     */
+    static final class MeanReversion implements Strategy {
+        private final int lookback;
+        private final double entry;
+        private final double exit;
+        private final double allocation;
+        private double[][] sums;
+        private double[][] sumSquares;
+
+        MeanReversion(int lookback, double entry, double exit, double allocation) {
+            this.lookback = lookback;
+            this.entry = entry;
+            this.exit = exit;
+            this.allocation = allocation;
+        }
+
+        @Override
+        public void start(Simulation simulation) {
+            int symbols = simulation.getSymbolCount();
+            sums = new double[symbols][];
+            sumSquares = new double[symbols][];
+            for (int s = 0; s < symbols; s++) {
+                double[][] prefix = prefixSums(simulation.getHistory(s), true);
+                sums[s] = prefix[0];
+                sumSquares[s] = prefix[1];
+            }
+        }
+
+        @Override
+        public void onBar(Simulation simulation, int symbol, int bar) {
+            if (bar + 1 < lookback) {
+                return;
+            }
+            int from = bar + 1 - lookback;
+            double mean = (sums[symbol][bar + 1] - sums[symbol][from]) / lookback;
+            double meanSquare = (sumSquares[symbol][bar + 1] - sumSquares[symbol][from]) / lookback;
+            double stdDev = Math.sqrt(Math.max(0, meanSquare - mean * mean));
+            if (stdDev == 0) {
+                return;
+            }
+            double z = (simulation.getHistory(symbol).getClose(bar) - mean) / stdDev;
+            int held = simulation.getShares(symbol);
+            if (held == 0 && z < -entry) {
+                int quantity = simulation.sharesFor(symbol, allocation / simulation.getSymbolCount());
+                if (quantity > 0) {
+                    simulation.buy(symbol, quantity);
+                }
+            } else if (held > 0 && z > exit) {
+                simulation.sell(symbol, held);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package backend.backtest;
+
+/**
+ * Trading rules replayed by {@link Simulation}. {@link #onBar} is called once per symbol
+ * for every day that symbol has a bar, oldest day first, after that day's fills. Orders
+ * placed there fill at the symbol's next open, as a market order placed after the close
+ * would, so a strategy can never trade on a price it has not seen yet.
+ *
+ * A strategy instance is used for one run only and may keep per-symbol state.
+ */
+public interface Strategy {
+
+    /** Called once before the first bar; precompute indicators over the histories here. */
+    default void start(Simulation simulation) {
+    }
+
+    void onBar(Simulation simulation, int symbol, int bar);
+}
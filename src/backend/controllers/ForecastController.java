@@ -3,38 +3,34 @@ package backend.controllers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import backend.models.PriceHistory;
 import backend.services.LSTMForecaster;
+import backend.services.PriceHistoryService;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class ForecastController implements HttpHandler {
+    // The model looks at the last 30 closes; training uses a longer window
+    private static final int FORECAST_WINDOW = 60;
+    private static final int TRAINING_WINDOW = 100;
+
     private final LSTMForecaster forecaster;
+    private final PriceHistoryService priceHistoryService;
     private final ObjectMapper mapper = new ObjectMapper();
-    private final Map<String, List<Double>> stockPriceCache = new HashMap<>();
 
-    public ForecastController() {
+    public ForecastController(PriceHistoryService priceHistoryService) {
         System.out.println(" Initializing ForecastController...");
         this.forecaster = new LSTMForecaster();
-        initializeMockData();
+        this.priceHistoryService = priceHistoryService;
+        trainModel("AAPL");
     }
 
-    private void initializeMockData() {
-        System.out.println(" Initializing mock data...");
-
-        // Generate mock historical data
-        for (String symbol : Arrays.asList("AAPL", "MSFT", "GOOGL", "TSLA", "AMZN", "META", "NVDA")) {
-            List<Double> prices = generateMockPrices(symbol);
-            stockPriceCache.put(symbol, prices);
-        }
-
+    private void trainModel(String symbol) {
         // Train with minimal data to avoid errors
-        System.out.println(" Training model with minimal data...");
+        System.out.println(" Training model with " + symbol + " history...");
         try {
-            List<Double> trainingData = stockPriceCache.get("AAPL");
-            // Use a subset for training
-            if (trainingData.size() > 100) {
-                trainingData = trainingData.subList(0, 100);
-            }
+            List<Double> trainingData = toList(priceHistoryService.getRecentCloses(symbol, TRAINING_WINDOW));
             forecaster.trainModel(trainingData, 10); // Just 10 epochs
             System.out.println(" Model training completed!");
         } catch (Exception e) {
@@ -53,6 +49,8 @@ public class ForecastController implements HttpHandler {
     }
 
     private void handleForecastRequest(HttpExchange exchange) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        int status = 200;
         try {
             String query = exchange.getRequestURI().getQuery();
             String symbol = parseParam(query, "symbol", "AAPL");
@@ -61,14 +59,12 @@ public class ForecastController implements HttpHandler {
             System.out.println(" Forecasting for " + symbol + " for " + days + " days");
 
             // Get historical prices for stock
-            List<Double> historicalPrices = stockPriceCache.getOrDefault(symbol,
-                    generateMockPrices(symbol));
+            List<Double> historicalPrices = getHistoricalPrices(symbol);
 
             // Run forecast
             LSTMForecaster.ForecastResult result = forecaster.forecast(historicalPrices);
 
             // Build response
-            Map<String, Object> response = new HashMap<>();
             response.put("symbol", symbol);
             response.put("historical", historicalPrices.subList(
                     Math.max(0, historicalPrices.size() - 30),
@@ -79,70 +75,31 @@ public class ForecastController implements HttpHandler {
             response.put("direction", result.direction);
             response.put("modelType", "LSTM Neural Network");
 
-            String json = mapper.writeValueAsString(response);
-
-            // Add CORS headers
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, OPTIONS");
-
-            exchange.sendResponseHeaders(200, json.getBytes().length);
-            exchange.getResponseBody().write(json.getBytes());
-
         } catch (Exception e) {
             System.err.println(" Error in forecast request: " + e.getMessage());
-            e.printStackTrace();
-            // Return a simple error response
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("symbol", "AAPL");
-            errorResponse.put("historical", generateMockPrices("AAPL").subList(0, 30));
-            errorResponse.put("forecast", Arrays.asList(100.0, 101.0, 102.0, 103.0, 104.0, 105.0, 106.0));
-            errorResponse.put("confidence", 75.0);
-            errorResponse.put("direction", "bullish");
-            errorResponse.put("modelType", "Simple Forecast");
-            errorResponse.put("error", e.getMessage());
-
-            String json = mapper.writeValueAsString(errorResponse);
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-            exchange.sendResponseHeaders(200, json.getBytes().length);
-            exchange.getResponseBody().write(json.getBytes());
+            status = 503;
+            response.put("error", e.getMessage());
         }
-    }
 
-    private List<Double> generateMockPrices(String symbol) {
-        List<Double> prices = new ArrayList<>();
-        double basePrice;
-
-        // Different base prices for different symbols
-        switch (symbol) {
-            case "AAPL": basePrice = 180; break;
-            case "MSFT": basePrice = 350; break;
-            case "GOOGL": basePrice = 140; break;
-            case "TSLA": basePrice = 200; break;
-            case "AMZN": basePrice = 150; break;
-            case "META": basePrice = 320; break;
-            case "NVDA": basePrice = 500; break;
-            default: basePrice = 100 + Math.random() * 400;
-        }
+        String json = mapper.writeValueAsString(response);
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
 
-        double price = basePrice;
-        // Generate 200 days of data with realistic patterns
-        for (int i = 0; i < 200; i++) {
-            // Add some trend and seasonality
-            double trend = 0.0005 * i; // Small upward trend
-            double seasonality = 0.02 * Math.sin(2 * Math.PI * i / 30); // Monthly cycle
-            double random = (Math.random() - 0.5) * 0.03; // Random noise
-
-            price = price * (1.0 + trend + seasonality + random);
-            price = Math.max(10, price); // Ensure price doesn't go below 10
-            prices.add(Math.round(price * 100.0) / 100.0); // Round to 2 decimals
-        }
-        return prices;
+        // Add CORS headers
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, OPTIONS");
+
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    public PriceHistory getHistory(String symbol) {
+        return priceHistoryService.getHistory(symbol);
     }
 
+    // The forecaster takes boxed lists, so only the window it actually uses is converted
     public List<Double> getHistoricalPrices(String symbol) {
-        return stockPriceCache.getOrDefault(symbol, generateMockPrices(symbol));
+        return toList(priceHistoryService.getRecentCloses(symbol, FORECAST_WINDOW));
     }
 
     public LSTMForecaster.ForecastResult getForecastResult(String symbol, int days) {
@@ -150,6 +107,14 @@ public class ForecastController implements HttpHandler {
         return forecaster.forecast(prices);
     }
 
+    private static List<Double> toList(double[] values) {
+        List<Double> list = new ArrayList<>(values.length);
+        for (double value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
     private String parseParam(String query, String param, String defaultValue) {
         if (query == null) return defaultValue;
         for (String pair : query.split("&")) {
@@ -158,4 +123,4 @@ public class ForecastController implements HttpHandler {
         }
         return defaultValue;
     }
-}
\ No newline at end of file
+}
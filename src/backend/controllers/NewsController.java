@@ -1,11 +1,11 @@
 package backend.controllers;
 
 import static spark.Spark.*;
+import backend.services.UpstreamHttpClient;
 import com.google.gson.Gson;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
-import java.util.Scanner;
 
 public class NewsController {
     private final Gson gson = new Gson();
@@ -18,24 +18,9 @@ public class NewsController {
             try {
                 String urlString = "https://newsapi.org/v2/everything?q=stock+market+OR+investing+OR+trading&sortBy=publishedAt&language=en&pageSize=10&apiKey=" + NEWS_API_KEY;
 
-                URL url = new URL(urlString);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.connect();
-
-                int responseCode = conn.getResponseCode();
-                if (responseCode != 200) {
-                    return gson.toJson(Map.of("articles", new Object[0], "error", "API returned response code: " + responseCode));
-                }
-
-                Scanner scanner = new Scanner(url.openStream());
-                StringBuilder response = new StringBuilder();
-                while (scanner.hasNext()) {
-                    response.append(scanner.nextLine());
-                }
-                scanner.close();
-
-                return response.toString();
+                return UpstreamHttpClient.getString(urlString);
+            } catch (UpstreamHttpClient.UpstreamStatusException e) {
+                return gson.toJson(Map.of("articles", new Object[0], "error", "API returned response code: " + e.getStatusCode()));
             } catch (Exception e) {
                 return gson.toJson(Map.of("articles", new Object[0], "error", "Failed to fetch news: " + e.getMessage()));
             }
@@ -48,21 +33,9 @@ public class NewsController {
                 String query = req.queryParams("query");
                 if (query == null) query = "stock market";
 
-                String urlString = "https://newsapi.org/v2/everything?q=" + query + "&sortBy=publishedAt&language=en&pageSize=15&apiKey=" + NEWS_API_KEY;
-
-                URL url = new URL(urlString);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.connect();
-
-                Scanner scanner = new Scanner(url.openStream());
-                StringBuilder response = new StringBuilder();
-                while (scanner.hasNext()) {
-                    response.append(scanner.nextLine());
-                }
-                scanner.close();
+                String urlString = "https://newsapi.org/v2/everything?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8) + "&sortBy=publishedAt&language=en&pageSize=15&apiKey=" + NEWS_API_KEY;
 
-                return response.toString();
+                return UpstreamHttpClient.getString(urlString);
             } catch (Exception e) {
                 return gson.toJson(Map.of("articles", new Object[0], "error", "Failed to fetch news: " + e.getMessage()));
             }
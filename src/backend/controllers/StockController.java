@@ -1,6 +1,7 @@
 package backend.controllers;
 
 import backend.services.AlphaVantageService;
+import backend.services.UpstreamScheduler.RateLimitedException;
 import com.google.gson.Gson;
 import java.util.Map;
 
@@ -16,6 +17,8 @@ public class StockController {
     public Map<String, Object> getStockQuote(String symbol) {
         try {
             return alphaVantageService.getStockQuote(symbol);
+        } catch (RateLimitedException e) {
+            throw e;
         } catch (Exception e) {
             return Map.of("error", "Failed to fetch stock data: " + e.getMessage());
         }
@@ -25,6 +28,8 @@ public class StockController {
     public Map<String, Object> searchStocks(String keywords) {
         try {
             return alphaVantageService.searchStocks(keywords);
+        } catch (RateLimitedException e) {
+            throw e;
         } catch (Exception e) {
             return Map.of("error", "Failed to search stocks: " + e.getMessage());
         }
@@ -3,12 +3,32 @@ package backend.database;
 import backend.models.User;
 import backend.models.Portfolio;
 import backend.models.Transaction;
+import backend.models.PriceHistory;
+import backend.models.NavHistory;
+import backend.models.LotMethod;
+import backend.models.LotSale;
+import backend.models.TaxLot;
+import backend.models.Order;
+import backend.models.TradeResult;
+import backend.models.TransactionPage;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,20 +37,36 @@ public class DatabaseHandler {
     private Connection connection;
     private static final Logger logger = Logger.getLogger(DatabaseHandler.class.getName());
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    // The connection is shared and autocommit state is per connection, so every statement
+    // runs under this lock: nothing can land inside an open transaction (and be rolled back
+    // with it) or read its uncommitted rows
+    private final ReentrantLock connectionLock = new ReentrantLock();
+    // Once attached, trades are made durable by the journal rather than by SQLite
+    private TradeJournal journal;
 
     public DatabaseHandler() {
-        initializeConnection();
+        this(DB_URL);
     }
 
-    private void initializeConnection() {
+    /** Opens the database at the given JDBC URL, creating or migrating its tables. */
+    public DatabaseHandler(String url) {
+        initializeConnection(url);
+    }
+
+    private void initializeConnection(String url) {
         try {
-            connection = DriverManager.getConnection(DB_URL);
+            connection = DriverManager.getConnection(url);
             // Enable foreign keys for SQLite
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute("PRAGMA foreign_keys = ON");
             }
             initializeDatabase();
             initializePortfolioTable();
+            initializePriceHistoryTable();
+            initializeOrdersTable();
+            initializeNavHistoryTable();
+            initializeTaxLotTables();
+            initializeJournalStateTable();
             logger.info("Database initialized successfully");
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Failed to initialize database connection", e);
@@ -89,15 +125,230 @@ public class DatabaseHandler {
 
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createPortfolioTable);
+            migratePortfolioTable(stmt);
             stmt.execute(createTransactionsTable);
+            // Keyset pages walk these newest first; id breaks ties between same-timestamp rows
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_date ON transactions(username, transaction_date, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_symbol_date ON transactions(username, symbol, transaction_date, id)");
             logger.info("Portfolio and Transactions tables ready.");
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error creating portfolio/transactions tables", e);
         }
     }
 
+    /**
+     * Brings a portfolio table created before UNIQUE(username, symbol) and last_updated up to
+     * date, since the buy path upserts on that pair. Duplicate rows for a position are first
+     * merged into the oldest one: quantities add up and the purchase price becomes their
+     * weighted average.
+     */
+    private void migratePortfolioTable(Statement stmt) throws SQLException {
+        boolean hasLastUpdated = false;
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(portfolio)")) {
+            while (rs.next()) {
+                hasLastUpdated |= "last_updated".equals(rs.getString("name"));
+            }
+        }
+        if (!hasLastUpdated) {
+            // ADD COLUMN cannot take a CURRENT_TIMESTAMP default; every write path sets it
+            stmt.execute("ALTER TABLE portfolio ADD COLUMN last_updated TEXT");
+        }
+        if (hasUniqueIndex(stmt, "portfolio", "username", "symbol")) {
+            return;
+        }
+
+        String sameRow = "d.username = portfolio.username AND d.symbol = portfolio.symbol";
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            int merged = stmt.executeUpdate("UPDATE portfolio SET "
+                    + "purchase_price = COALESCE((SELECT SUM(d.quantity * d.purchase_price) / NULLIF(SUM(d.quantity), 0) "
+                    + "FROM portfolio d WHERE " + sameRow + "), purchase_price), "
+                    + "quantity = (SELECT SUM(d.quantity) FROM portfolio d WHERE " + sameRow + "), "
+                    + "current_price = (SELECT d.current_price FROM portfolio d WHERE " + sameRow + " ORDER BY d.id DESC LIMIT 1), "
+                    + "purchase_date = (SELECT MIN(d.purchase_date) FROM portfolio d WHERE " + sameRow + "), "
+                    + "last_updated = CURRENT_TIMESTAMP "
+                    + "WHERE id IN (SELECT MIN(id) FROM portfolio GROUP BY username, symbol HAVING COUNT(*) > 1)");
+            stmt.executeUpdate("DELETE FROM portfolio WHERE id NOT IN (SELECT MIN(id) FROM portfolio GROUP BY username, symbol)");
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_portfolio_user_symbol ON portfolio(username, symbol)");
+            connection.commit();
+            logger.info("Portfolio table migrated; merged duplicate rows for " + merged + " positions.");
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // True if some unique index or constraint on the table covers exactly these columns
+    private static boolean hasUniqueIndex(Statement stmt, String table, String... columns) throws SQLException {
+        List<String> unique = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery("PRAGMA index_list(" + table + ")")) {
+            while (rs.next()) {
+                if (rs.getInt("unique") == 1) {
+                    unique.add(rs.getString("name"));
+                }
+            }
+        }
+        for (String index : unique) {
+            Set<String> indexed = new HashSet<>();
+            try (ResultSet rs = stmt.executeQuery("PRAGMA index_info(\"" + index + "\")")) {
+                while (rs.next()) {
+                    indexed.add(rs.getString("name"));
+                }
+            }
+            if (indexed.equals(Set.of(columns))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Daily OHLCV bars, one row per symbol and day (epoch day), clustered by the primary key
+    public void initializePriceHistoryTable() {
+        String createPriceHistoryTable = "CREATE TABLE IF NOT EXISTS price_history ("
+                + "symbol TEXT NOT NULL, "
+                + "trade_day INTEGER NOT NULL, "
+                + "open REAL NOT NULL, "
+                + "high REAL NOT NULL, "
+                + "low REAL NOT NULL, "
+                + "close REAL NOT NULL, "
+                + "volume INTEGER NOT NULL, "
+                + "PRIMARY KEY (symbol, trade_day)"
+                + ") WITHOUT ROWID;";
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createPriceHistoryTable);
+            logger.info("Price history table ready.");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error creating price_history table", e);
+        }
+    }
+
+    // Resting LIMIT orders and their outcomes; the partial index keeps startup loading cheap
+    public void initializeOrdersTable() {
+        String createOrdersTable = "CREATE TABLE IF NOT EXISTS orders ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "username TEXT NOT NULL, "
+                + "side TEXT NOT NULL CHECK (side IN ('BUY', 'SELL')), "
+                + "symbol TEXT NOT NULL, "
+                + "stock_name TEXT NOT NULL, "
+                + "quantity INTEGER NOT NULL CHECK (quantity > 0), "
+                + "limit_price REAL NOT NULL CHECK (limit_price > 0), "
+                + "duration TEXT NOT NULL, "
+                + "status TEXT NOT NULL, "
+                + "status_message TEXT, "
+                + "fill_price REAL, "
+                + "created_at TEXT NOT NULL, "
+                + "updated_at TEXT NOT NULL, "
+                + "FOREIGN KEY (username) REFERENCES users(username) ON DELETE CASCADE"
+                + ");";
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createOrdersTable);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_open ON orders(id) WHERE status = 'OPEN'");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_user ON orders(username, id)");
+            logger.info("Orders table ready.");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error creating orders table", e);
+        }
+    }
+
+    // End-of-day account valuations, one compact row per user and day (epoch day)
+    public void initializeNavHistoryTable() {
+        String createNavHistoryTable = "CREATE TABLE IF NOT EXISTS nav_history ("
+                + "username TEXT NOT NULL, "
+                + "nav_day INTEGER NOT NULL, "
+                + "nav REAL NOT NULL, "
+                + "cash REAL NOT NULL, "
+                + "invested REAL NOT NULL, "
+                + "PRIMARY KEY (username, nav_day)"
+                + ") WITHOUT ROWID;";
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createNavHistoryTable);
+            logger.info("NAV history table ready.");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error creating nav_history table", e);
+        }
+    }
+
+    /**
+     * Open tax lots, running realized gains per symbol, and the lot method per account.
+     * Positions that predate lot tracking get one lot at their average cost.
+     */
+    public void initializeTaxLotTables() {
+        String createTaxLotsTable = "CREATE TABLE IF NOT EXISTS tax_lots ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "username TEXT NOT NULL, "
+                + "symbol TEXT NOT NULL, "
+                + "opened_at TEXT NOT NULL, "
+                + "quantity INTEGER NOT NULL CHECK (quantity > 0), "
+                + "cost_per_share REAL NOT NULL, "
+                + "FOREIGN KEY (username) REFERENCES users(username) ON DELETE CASCADE"
+                + ");";
+        String createRealizedTable = "CREATE TABLE IF NOT EXISTS realized_gains ("
+                + "username TEXT NOT NULL, "
+                + "symbol TEXT NOT NULL, "
+                + "proceeds REAL NOT NULL, "
+                + "cost REAL NOT NULL, "
+                + "cost_days REAL NOT NULL DEFAULT 0, "
+                + "PRIMARY KEY (username, symbol)"
+                + ") WITHOUT ROWID;";
+        String createSettingsTable = "CREATE TABLE IF NOT EXISTS account_settings ("
+                + "username TEXT PRIMARY KEY, "
+                + "lot_method TEXT NOT NULL DEFAULT 'FIFO'"
+                + ") WITHOUT ROWID;";
+        String backfill = "INSERT INTO tax_lots(username, symbol, opened_at, quantity, cost_per_share) "
+                + "SELECT username, symbol, purchase_date, quantity, purchase_price FROM portfolio p "
+                + "WHERE quantity > 0 AND NOT EXISTS "
+                + "(SELECT 1 FROM tax_lots l WHERE l.username = p.username AND l.symbol = p.symbol)";
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createTaxLotsTable);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tax_lots_position ON tax_lots(username, symbol, id)");
+            stmt.execute(createRealizedTable);
+            boolean hasCostDays = false;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(realized_gains)")) {
+                while (rs.next()) {
+                    hasCostDays |= "cost_days".equals(rs.getString("name"));
+                }
+            }
+            if (!hasCostDays) {
+                // Sales made before this column existed count as held for no time
+                stmt.execute("ALTER TABLE realized_gains ADD COLUMN cost_days REAL NOT NULL DEFAULT 0");
+            }
+            stmt.execute(createSettingsTable);
+            int backfilled = stmt.executeUpdate(backfill);
+            if (backfilled > 0) {
+                logger.info("Opened " + backfilled + " tax lots for existing positions.");
+            }
+            logger.info("Tax lot tables ready.");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error creating tax lot tables", e);
+        }
+    }
+
+    /** The last trade journal sequence applied to SQLite, kept in the same transaction as the trade. */
+    public void initializeJournalStateTable() {
+        String createJournalStateTable = "CREATE TABLE IF NOT EXISTS journal_state ("
+                + "id INTEGER PRIMARY KEY CHECK (id = 0), "
+                + "applied_seq INTEGER NOT NULL"
+                + ");";
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createJournalStateTable);
+            stmt.execute("INSERT OR IGNORE INTO journal_state(id, applied_seq) VALUES (0, 0)");
+            logger.info("Journal state table ready.");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error creating journal state table", e);
+        }
+    }
+
     // Close the connection
     public void closeConnection() {
+        connectionLock.lock();
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -105,26 +356,28 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error closing database connection", e);
+        } finally {
+            connectionLock.unlock();
         }
     }
 
-    public Connection getConnection() {
-        return connection;
-    }
-
     // Check if connection is valid
     public boolean isConnectionValid() {
+        connectionLock.lock();
         try {
             return connection != null && !connection.isClosed() && connection.isValid(2);
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Database connection validation failed", e);
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
     // Add a user with transaction support
     public boolean addUser(User user) {
         String sql = "INSERT INTO users(username, passwordHash, email, balance) VALUES (?, ?, ?, ?)";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, user.getUsername());
             pstmt.setString(2, user.getPasswordHash());
@@ -136,12 +389,15 @@ public class DatabaseHandler {
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error adding user: " + user.getUsername(), e);
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
     // Fetch a user by username
     public User getUserByUsername(String username) {
         String sql = "SELECT username, passwordHash, email, balance FROM users WHERE username = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             ResultSet rs = pstmt.executeQuery();
@@ -156,6 +412,8 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error fetching user: " + username, e);
+        } finally {
+            connectionLock.unlock();
         }
         return null;
     }
@@ -168,6 +426,7 @@ public class DatabaseHandler {
         }
 
         String sql = "UPDATE users SET balance = ? WHERE username = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setDouble(1, newBalance);
             pstmt.setString(2, username);
@@ -180,12 +439,15 @@ public class DatabaseHandler {
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error updating balance for user: " + username, e);
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
     // Validate login
     public boolean validateUser(String username, String passwordHash) {
         String sql = "SELECT 1 FROM users WHERE username = ? AND passwordHash = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             pstmt.setString(2, passwordHash);
@@ -193,6 +455,8 @@ public class DatabaseHandler {
             return rs.next();
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error validating user: " + username, e);
+        } finally {
+            connectionLock.unlock();
         }
         return false;
     }
@@ -207,6 +471,7 @@ public class DatabaseHandler {
         }
 
         String sql = "INSERT INTO portfolio(username, symbol, stock_name, quantity, purchase_price, current_price, purchase_date) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, portfolio.getUsername());
             pstmt.setString(2, portfolio.getSymbol());
@@ -221,6 +486,8 @@ public class DatabaseHandler {
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error adding to portfolio for user: " + portfolio.getUsername(), e);
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
@@ -228,6 +495,7 @@ public class DatabaseHandler {
     public List<Portfolio> getPortfolioByUsername(String username) {
         List<Portfolio> portfolio = new ArrayList<>();
         String sql = "SELECT * FROM portfolio WHERE username = ? ORDER BY symbol";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             ResultSet rs = pstmt.executeQuery();
@@ -240,6 +508,8 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error fetching portfolio for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
         }
         return portfolio;
     }
@@ -252,6 +522,7 @@ public class DatabaseHandler {
         }
 
         String sql = "UPDATE portfolio SET quantity = ?, last_updated = CURRENT_TIMESTAMP WHERE username = ? AND symbol = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setInt(1, newQuantity);
             pstmt.setString(2, username);
@@ -261,12 +532,15 @@ public class DatabaseHandler {
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error updating portfolio quantity for user: " + username + ", symbol: " + symbol, e);
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
     // Remove from portfolio
     public boolean removeFromPortfolio(String username, String symbol) {
         String sql = "DELETE FROM portfolio WHERE username = ? AND symbol = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             pstmt.setString(2, symbol);
@@ -279,12 +553,15 @@ public class DatabaseHandler {
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error removing from portfolio for user: " + username + ", symbol: " + symbol, e);
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
     // Check if stock exists in portfolio
     public Portfolio getPortfolioItem(String username, String symbol) {
         String sql = "SELECT * FROM portfolio WHERE username = ? AND symbol = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             pstmt.setString(2, symbol);
@@ -295,6 +572,8 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error fetching portfolio item for user: " + username + ", symbol: " + symbol, e);
+        } finally {
+            connectionLock.unlock();
         }
         return null;
     }
@@ -307,6 +586,7 @@ public class DatabaseHandler {
         }
 
         String sql = "UPDATE portfolio SET current_price = ?, last_updated = CURRENT_TIMESTAMP WHERE username = ? AND symbol = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setDouble(1, currentPrice);
             pstmt.setString(2, username);
@@ -316,13 +596,568 @@ public class DatabaseHandler {
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error updating portfolio price for user: " + username + ", symbol: " + symbol, e);
             return false;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    // TRADE EXECUTION
+
+    /**
+     * Applies a BUY or SELL in one SQLite transaction: the balance change, the position
+     * upsert and the transaction record either all commit or none do. Balance and holdings
+     * are checked by the guarded UPDATEs themselves, so the check and the write cannot
+     * drift apart. Returns the post-trade balance and position.
+     *
+     * With a journal attached the trade is appended to it inside the transaction and the
+     * commit skips SQLite's fsync; the call returns once the journal record is on disk,
+     * after the connection lock is released so other trades can join the same sync. If the
+     * record cannot be made durable the trade is reported as indeterminate, never as executed.
+     */
+    public TradeResult executeTrade(Transaction trade) {
+        long[] sequence = new long[1];
+        TradeResult result = executeTrade(trade, 0, sequence);
+        if (sequence[0] > 0) {
+            try {
+                journal.awaitDurable(sequence[0]);
+            } catch (IOException e) {
+                // Committed and in the journal's pages, but not known to be on disk, so it may
+                // not survive a crash; the journal refuses further trades from here on
+                logger.log(Level.SEVERE, "Trade " + sequence[0] + " committed without a durable journal record", e);
+                return TradeResult.indeterminate("Trade not durable");
+            }
+        }
+        return result;
+    }
+
+    // replaySequence is non-zero when recovering a journaled trade, which is not appended again
+    private TradeResult executeTrade(Transaction trade, long replaySequence, long[] journalSequence) {
+        boolean buy = "BUY".equals(trade.getType());
+        connectionLock.lock();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            if (journal != null) {
+                setSynchronous("NORMAL");
+            }
+            connection.setAutoCommit(false);
+            long sequence = 0;
+            try {
+                String rejection = buy ? applyBuy(trade) : applySell(trade);
+                if (rejection != null) {
+                    connection.rollback();
+                    return TradeResult.rejected(rejection);
+                }
+                double realizedGain = 0;
+                if (buy) {
+                    openLot(trade);
+                } else {
+                    realizedGain = closeLots(trade);
+                }
+                insertTransaction(trade);
+
+                double balance = 0;
+                String email = null;
+                try (PreparedStatement pstmt = connection.prepareStatement("SELECT balance, email FROM users WHERE username = ?")) {
+                    pstmt.setString(1, trade.getUsername());
+                    ResultSet rs = pstmt.executeQuery();
+                    if (rs.next()) {
+                        balance = rs.getDouble("balance");
+                        email = rs.getString("email");
+                    }
+                }
+                int positionId = 0;
+                int quantity = 0;
+                double averagePrice = 0;
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "SELECT id, quantity, purchase_price FROM portfolio WHERE username = ? AND symbol = ?")) {
+                    pstmt.setString(1, trade.getUsername());
+                    pstmt.setString(2, trade.getSymbol());
+                    ResultSet rs = pstmt.executeQuery();
+                    if (rs.next()) {
+                        positionId = rs.getInt("id");
+                        quantity = rs.getInt("quantity");
+                        averagePrice = rs.getDouble("purchase_price");
+                    }
+                }
+
+                if (journal != null) {
+                    sequence = replaySequence > 0 ? replaySequence : journal.append(TradeJournal.TRADE, encodeTrade(trade));
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "UPDATE journal_state SET applied_seq = ? WHERE id = 0")) {
+                        pstmt.setLong(1, sequence);
+                        pstmt.executeUpdate();
+                    }
+                }
+                connection.commit();
+                journalSequence[0] = replaySequence > 0 ? 0 : sequence;
+                logger.info("Trade executed for user: " + trade.getUsername() + " - " + trade.getType() + " "
+                        + trade.getQuantity() + " " + trade.getSymbol());
+                return TradeResult.executed(buy ? "Stock purchased successfully" : "Stock sold successfully",
+                        balance, email, positionId, quantity, averagePrice, trade.getTotalAmount(), realizedGain);
+            } catch (SQLException | IOException e) {
+                connection.rollback();
+                if (sequence > 0 && replaySequence == 0) {
+                    abortJournaledTrade(sequence);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+                if (journal != null) {
+                    setSynchronous("FULL");
+                }
+            }
+        } catch (SQLException | IOException e) {
+            logger.log(Level.WARNING, "Error executing trade for user: " + trade.getUsername(), e);
+            return TradeResult.rejected("Failed to execute trade");
+        } finally {
+            if (journal != null && replaySequence == 0) {
+                checkpointJournal();
+            }
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Makes the journal the durability point for trades, then re-applies every journaled
+     * trade that SQLite lost because its commit had not reached disk. Call once at startup,
+     * before anything reads balances or positions.
+     *
+     * @return trades replayed
+     */
+    public int attachJournal(TradeJournal tradeJournal) {
+        connectionLock.lock();
+        try {
+            // WAL keeps the database consistent when commits skip fsync; at worst the tail is lost
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
+            long applied = 0;
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT applied_seq FROM journal_state WHERE id = 0")) {
+                if (rs.next()) {
+                    applied = rs.getLong(1);
+                }
+            }
+            journal = tradeJournal;
+
+            Set<Long> aborted = new HashSet<>();
+            List<Long> sequences = new ArrayList<>();
+            List<Transaction> trades = new ArrayList<>();
+            tradeJournal.replay(applied, (sequence, type, payload) -> {
+                if (type == TradeJournal.ABORT) {
+                    aborted.add(payload.getLong(0));
+                } else if (type == TradeJournal.TRADE) {
+                    sequences.add(sequence);
+                    trades.add(decodeTrade(payload));
+                }
+            });
+            int replayed = 0;
+            for (int i = 0; i < trades.size(); i++) {
+                if (aborted.contains(sequences.get(i))) {
+                    continue;
+                }
+                TradeResult result = executeTrade(trades.get(i), sequences.get(i), new long[1]);
+                if (!result.isSuccess()) {
+                    logger.severe("Journaled trade " + sequences.get(i) + " could not be replayed: " + result.getMessage());
+                }
+                replayed++;
+            }
+            tradeJournal.startAfter(applied);
+            if (replayed > 0) {
+                logger.info("Replayed " + replayed + " journaled trades after sequence " + applied);
+            }
+            return replayed;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error attaching trade journal", e);
+            throw new RuntimeException("Could not attach trade journal", e);
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    // Once a journal segment is full, flush the WAL into the database file so that
+    // segment's trades are durable in SQLite itself and it can be deleted
+    private void checkpointJournal() {
+        if (!journal.hasClosedSegments()) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            long applied;
+            try (ResultSet rs = stmt.executeQuery("SELECT applied_seq FROM journal_state WHERE id = 0")) {
+                applied = rs.next() ? rs.getLong(1) : 0;
+            }
+            try (ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(FULL)")) {
+                // First column is 1 if the checkpoint could not complete
+                if (!rs.next() || rs.getInt(1) != 0) {
+                    return;
+                }
+            }
+            int retired = journal.retire(applied);
+            if (retired > 0) {
+                logger.info("Checkpointed SQLite and retired " + retired + " journal segments up to " + applied);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error checkpointing trade journal", e);
+        }
+    }
+
+    private void abortJournaledTrade(long sequence) {
+        try {
+            journal.append(TradeJournal.ABORT, ByteBuffer.allocate(8).putLong(sequence).array());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not record abort of journaled trade " + sequence, e);
+        }
+    }
+
+    private void setSynchronous(String mode) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA synchronous = " + mode);
+        }
+    }
+
+    private static byte[] encodeTrade(Transaction trade) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(trade.getUsername());
+            out.writeUTF(trade.getType());
+            out.writeUTF(trade.getSymbol());
+            out.writeUTF(trade.getStockName() != null ? trade.getStockName() : "");
+            out.writeInt(trade.getQuantity());
+            out.writeDouble(trade.getPrice());
+            out.writeDouble(trade.getTotalAmount());
+            out.writeUTF(trade.getOrderType() != null ? trade.getOrderType() : "");
+            out.writeUTF(trade.getDuration() != null ? trade.getDuration() : "");
+            out.writeUTF(trade.getTransactionDate().format(DATE_FORMATTER));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Transaction decodeTrade(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Transaction trade = new Transaction();
+            trade.setUsername(in.readUTF());
+            trade.setType(in.readUTF());
+            trade.setSymbol(in.readUTF());
+            trade.setStockName(in.readUTF());
+            trade.setQuantity(in.readInt());
+            trade.setPrice(in.readDouble());
+            trade.setTotalAmount(in.readDouble());
+            String orderType = in.readUTF();
+            trade.setOrderType(orderType.isEmpty() ? null : orderType);
+            String duration = in.readUTF();
+            trade.setDuration(duration.isEmpty() ? null : duration);
+            trade.setTransactionDate(LocalDateTime.parse(in.readUTF(), DATE_FORMATTER));
+            return trade;
+        } catch (IOException e) {
+            throw new RuntimeException("Unreadable journaled trade", e);
+        }
+    }
+
+    // Returns a rejection message, or null once the balance and position are updated
+    private String applyBuy(Transaction trade) throws SQLException {
+        double cost = trade.getTotalAmount();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE users SET balance = balance - ? WHERE username = ? AND balance >= ?")) {
+            pstmt.setDouble(1, cost);
+            pstmt.setString(2, trade.getUsername());
+            pstmt.setDouble(3, cost);
+            if (pstmt.executeUpdate() == 0) {
+                return userExists(trade.getUsername()) ? "Insufficient balance" : "User not found";
+            }
+        }
+
+        // Right-hand sides see the pre-update row, so the average uses the old quantity
+        String upsert = "INSERT INTO portfolio(username, symbol, stock_name, quantity, purchase_price, current_price, purchase_date) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT(username, symbol) DO UPDATE SET "
+                + "purchase_price = (portfolio.purchase_price * portfolio.quantity + excluded.purchase_price * excluded.quantity) "
+                + "/ (portfolio.quantity + excluded.quantity), "
+                + "quantity = portfolio.quantity + excluded.quantity, "
+                + "current_price = excluded.current_price, "
+                + "last_updated = CURRENT_TIMESTAMP";
+        try (PreparedStatement pstmt = connection.prepareStatement(upsert)) {
+            pstmt.setString(1, trade.getUsername());
+            pstmt.setString(2, trade.getSymbol());
+            pstmt.setString(3, trade.getStockName());
+            pstmt.setInt(4, trade.getQuantity());
+            pstmt.setDouble(5, trade.getPrice());
+            pstmt.setDouble(6, trade.getPrice());
+            pstmt.setString(7, trade.getTransactionDate().format(DATE_FORMATTER));
+            pstmt.executeUpdate();
+        }
+        return null;
+    }
+
+    private String applySell(Transaction trade) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE portfolio SET quantity = quantity - ?, current_price = ?, last_updated = CURRENT_TIMESTAMP "
+                        + "WHERE username = ? AND symbol = ? AND quantity >= ?")) {
+            pstmt.setInt(1, trade.getQuantity());
+            pstmt.setDouble(2, trade.getPrice());
+            pstmt.setString(3, trade.getUsername());
+            pstmt.setString(4, trade.getSymbol());
+            pstmt.setInt(5, trade.getQuantity());
+            if (pstmt.executeUpdate() == 0) {
+                return "Insufficient stocks";
+            }
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM portfolio WHERE username = ? AND symbol = ? AND quantity = 0")) {
+            pstmt.setString(1, trade.getUsername());
+            pstmt.setString(2, trade.getSymbol());
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE users SET balance = balance + ? WHERE username = ?")) {
+            pstmt.setDouble(1, trade.getTotalAmount());
+            pstmt.setString(2, trade.getUsername());
+            if (pstmt.executeUpdate() == 0) {
+                return "User not found";
+            }
+        }
+        return null;
+    }
+
+    private void openLot(Transaction trade) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO tax_lots(username, symbol, opened_at, quantity, cost_per_share) VALUES (?, ?, ?, ?, ?)")) {
+            pstmt.setString(1, trade.getUsername());
+            pstmt.setString(2, trade.getSymbol());
+            pstmt.setString(3, trade.getTransactionDate().format(DATE_FORMATTER));
+            pstmt.setInt(4, trade.getQuantity());
+            pstmt.setDouble(5, trade.getPrice());
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Draws the sold shares from the position's lots by the account's lot method, adds the
+     * result to the realized totals and re-bases the position's average cost on the lots
+     * left. Returns the realized gain. The realized totals also keep the cost sold times the
+     * days it was held, which weights the holding period behind the annual return.
+     */
+    private double closeLots(Transaction trade) throws SQLException {
+        LotMethod method = readLotMethod(trade.getUsername());
+        List<TaxLot> lots = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT id, quantity, cost_per_share, opened_at FROM tax_lots WHERE username = ? AND symbol = ? ORDER BY id")) {
+            pstmt.setString(1, trade.getUsername());
+            pstmt.setString(2, trade.getSymbol());
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                lots.add(new TaxLot(rs.getLong(1), trade.getSymbol(), LocalDateTime.parse(rs.getString(4), DATE_FORMATTER),
+                        rs.getInt(2), rs.getDouble(3)));
+            }
+        }
+
+        LotSale sale = LotSale.match(method, lots, trade.getQuantity(), trade.getTransactionDate(), trade.getPrice());
+        try (PreparedStatement shrink = connection.prepareStatement("UPDATE tax_lots SET quantity = ? WHERE id = ?");
+             PreparedStatement close = connection.prepareStatement("DELETE FROM tax_lots WHERE id = ?")) {
+            for (int i = 0; i < lots.size(); i++) {
+                TaxLot lot = lots.get(i);
+                int take = sale.getTaken(i);
+                if (take == 0) {
+                    continue;
+                }
+                if (take == lot.getQuantity()) {
+                    close.setLong(1, lot.getId());
+                    close.addBatch();
+                } else {
+                    shrink.setInt(1, lot.getQuantity() - take);
+                    shrink.setLong(2, lot.getId());
+                    shrink.addBatch();
+                }
+            }
+            close.executeBatch();
+            shrink.executeBatch();
+        }
+        if (sale.getShortfall() > 0) {
+            logger.warning("Tax lots short by " + sale.getShortfall() + " shares for user: " + trade.getUsername() + ", symbol: " + trade.getSymbol());
+        }
+
+        if (method == LotMethod.AVERAGE) {
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "UPDATE tax_lots SET cost_per_share = ? WHERE username = ? AND symbol = ?")) {
+                pstmt.setDouble(1, sale.getAverageCost());
+                pstmt.setString(2, trade.getUsername());
+                pstmt.setString(3, trade.getSymbol());
+                pstmt.executeUpdate();
+            }
+        }
+
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO realized_gains(username, symbol, proceeds, cost, cost_days) VALUES (?, ?, ?, ?, ?) "
+                        + "ON CONFLICT(username, symbol) DO UPDATE SET proceeds = proceeds + excluded.proceeds, "
+                        + "cost = cost + excluded.cost, cost_days = cost_days + excluded.cost_days")) {
+            pstmt.setString(1, trade.getUsername());
+            pstmt.setString(2, trade.getSymbol());
+            pstmt.setDouble(3, trade.getTotalAmount());
+            pstmt.setDouble(4, sale.getCostOfSold());
+            pstmt.setDouble(5, sale.getCostDays());
+            pstmt.executeUpdate();
+        }
+
+        // The position's average cost follows the lots that remain (a no-op once the position is closed)
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE portfolio SET purchase_price = COALESCE((SELECT SUM(quantity * cost_per_share) / SUM(quantity) "
+                        + "FROM tax_lots WHERE username = ? AND symbol = ?), purchase_price) WHERE username = ? AND symbol = ?")) {
+            pstmt.setString(1, trade.getUsername());
+            pstmt.setString(2, trade.getSymbol());
+            pstmt.setString(3, trade.getUsername());
+            pstmt.setString(4, trade.getSymbol());
+            pstmt.executeUpdate();
+        }
+        return trade.getTotalAmount() - sale.getCostOfSold();
+    }
+
+    private LotMethod readLotMethod(String username) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT lot_method FROM account_settings WHERE username = ?")) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                LotMethod method = LotMethod.parse(rs.getString(1));
+                return method != null ? method : LotMethod.FIFO;
+            }
+        }
+        return LotMethod.FIFO;
+    }
+
+    private boolean userExists(String username) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT 1 FROM users WHERE username = ?")) {
+            pstmt.setString(1, username);
+            return pstmt.executeQuery().next();
+        }
+    }
+
+    // ORDER METHODS
+
+    // Insert a new order; returns its id, or -1 on failure
+    public long insertOrder(Order order) {
+        String sql = "INSERT INTO orders(username, side, symbol, stock_name, quantity, limit_price, duration, status, created_at, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, order.getUsername());
+            pstmt.setString(2, order.getSide());
+            pstmt.setString(3, order.getSymbol());
+            pstmt.setString(4, order.getStockName());
+            pstmt.setInt(5, order.getQuantity());
+            pstmt.setDouble(6, order.getLimitPrice());
+            pstmt.setString(7, order.getDuration());
+            pstmt.setString(8, order.getStatus());
+            pstmt.setString(9, order.getCreatedAt().format(DATE_FORMATTER));
+            pstmt.setString(10, order.getUpdatedAt().format(DATE_FORMATTER));
+            pstmt.executeUpdate();
+            ResultSet keys = pstmt.getGeneratedKeys();
+            if (keys.next()) {
+                return keys.getLong(1);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error inserting order for user: " + order.getUsername(), e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return -1;
+    }
+
+    // Record an order's final (or current) state
+    public boolean updateOrderStatus(Order order) {
+        String sql = "UPDATE orders SET status = ?, status_message = ?, fill_price = ?, updated_at = ? WHERE id = ?";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, order.getStatus());
+            pstmt.setString(2, order.getStatusMessage());
+            if (Order.FILLED.equals(order.getStatus())) {
+                pstmt.setDouble(3, order.getFillPrice());
+            } else {
+                pstmt.setNull(3, Types.REAL);
+            }
+            pstmt.setString(4, order.getUpdatedAt().format(DATE_FORMATTER));
+            pstmt.setLong(5, order.getId());
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error updating order: " + order.getId(), e);
+            return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
+    // All OPEN orders in submission order, for rebuilding the order book at startup
+    public List<Order> getOpenOrders() {
+        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT * FROM orders WHERE status = 'OPEN' ORDER BY id";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                orders.add(createOrderFromResultSet(rs));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching open orders", e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return orders;
+    }
+
+    // Newest first
+    public List<Order> getOrdersByUsername(String username) {
+        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT * FROM orders WHERE username = ? ORDER BY id DESC";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                orders.add(createOrderFromResultSet(rs));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching orders for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return orders;
+    }
+
+    private Order createOrderFromResultSet(ResultSet rs) throws SQLException {
+        Order order = new Order();
+        order.setId(rs.getLong("id"));
+        order.setUsername(rs.getString("username"));
+        order.setSide(rs.getString("side"));
+        order.setSymbol(rs.getString("symbol"));
+        order.setStockName(rs.getString("stock_name"));
+        order.setQuantity(rs.getInt("quantity"));
+        order.setLimitPrice(rs.getDouble("limit_price"));
+        order.setDuration(rs.getString("duration"));
+        order.setStatus(rs.getString("status"));
+        order.setStatusMessage(rs.getString("status_message"));
+        order.setFillPrice(rs.getDouble("fill_price"));
+        order.setCreatedAt(LocalDateTime.parse(rs.getString("created_at"), DATE_FORMATTER));
+        order.setUpdatedAt(LocalDateTime.parse(rs.getString("updated_at"), DATE_FORMATTER));
+        return order;
+    }
+
     // TRANSACTION METHODS
 
     // Add transaction with validation
     public boolean addTransaction(Transaction transaction) {
+        connectionLock.lock();
+        try {
+            insertTransaction(transaction);
+            logger.info("Transaction recorded for user: " + transaction.getUsername() + " - " + transaction.getType() + " " + transaction.getSymbol());
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error adding transaction for user: " + transaction.getUsername(), e);
+            return false;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    private void insertTransaction(Transaction transaction) throws SQLException {
         String sql = "INSERT INTO transactions(username, type, symbol, stock_name, quantity, price, total_amount, order_type, duration, transaction_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, transaction.getUsername());
@@ -336,11 +1171,6 @@ public class DatabaseHandler {
             pstmt.setString(9, transaction.getDuration());
             pstmt.setString(10, transaction.getTransactionDate().format(DATE_FORMATTER));
             pstmt.executeUpdate();
-            logger.info("Transaction recorded for user: " + transaction.getUsername() + " - " + transaction.getType() + " " + transaction.getSymbol());
-            return true;
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "Error adding transaction for user: " + transaction.getUsername(), e);
-            return false;
         }
     }
 
@@ -348,6 +1178,7 @@ public class DatabaseHandler {
     public List<Transaction> getTransactionsByUsername(String username) {
         List<Transaction> transactions = new ArrayList<>();
         String sql = "SELECT * FROM transactions WHERE username = ? ORDER BY transaction_date DESC";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             ResultSet rs = pstmt.executeQuery();
@@ -360,14 +1191,86 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error fetching transactions for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
         }
         return transactions;
     }
 
+    /**
+     * One page of transactions, newest first, optionally filtered by symbol, type and an
+     * inclusive date range. Rows come from the (username[, symbol], transaction_date, id)
+     * index starting just below the cursor, so no earlier page is ever re-read.
+     *
+     * @param cursor null for the first page
+     */
+    public TransactionPage getTransactionPage(String username, String symbol, String type, LocalDate from, LocalDate to,
+                                              TransactionPage.Cursor cursor, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM transactions WHERE username = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(username);
+        if (symbol != null) {
+            sql.append(" AND symbol = ?");
+            params.add(symbol);
+        }
+        if (type != null) {
+            sql.append(" AND type = ?");
+            params.add(type);
+        }
+        if (from != null) {
+            sql.append(" AND transaction_date >= ?");
+            params.add(from.atStartOfDay().format(DATE_FORMATTER));
+        }
+        if (to != null) {
+            sql.append(" AND transaction_date < ?");
+            params.add(to.plusDays(1).atStartOfDay().format(DATE_FORMATTER));
+        }
+        if (cursor != null) {
+            sql.append(" AND (transaction_date, id) < (?, ?)");
+            params.add(cursor.getTransactionDate());
+            params.add(cursor.getId());
+        }
+        // One extra row tells us whether another page exists
+        sql.append(" ORDER BY transaction_date DESC, id DESC LIMIT ?");
+        params.add(limit + 1);
+
+        List<Transaction> transactions = new ArrayList<>(Math.min(limit + 1, 1024));
+        String lastDate = null;
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next() && transactions.size() <= limit) {
+                Transaction transaction = createTransactionFromResultSet(rs);
+                if (transaction != null) {
+                    transactions.add(transaction);
+                    if (transactions.size() == limit) {
+                        lastDate = rs.getString("transaction_date");
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching transaction page for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
+        }
+
+        String nextCursor = null;
+        if (transactions.size() > limit) {
+            transactions.remove(transactions.size() - 1);
+            // The stored text, not a re-formatted date, so the comparison is exact
+            nextCursor = new TransactionPage.Cursor(lastDate, transactions.get(limit - 1).getId()).encode();
+        }
+        return new TransactionPage(transactions, nextCursor);
+    }
+
     // Get transactions by type
     public List<Transaction> getTransactionsByType(String username, String type) {
         List<Transaction> transactions = new ArrayList<>();
         String sql = "SELECT * FROM transactions WHERE username = ? AND type = ? ORDER BY transaction_date DESC";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             pstmt.setString(2, type);
@@ -381,13 +1284,119 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error fetching transactions for user: " + username + ", type: " + type, e);
+        } finally {
+            connectionLock.unlock();
         }
         return transactions;
     }
 
+    // EXPORT METHODS
+
+    private static final int EXPORT_BATCH_SIZE = 500;
+
+    /** Receives exported rows one at a time; an IOException stops the export. */
+    public interface RowVisitor<T> {
+        void visit(T row) throws IOException;
+    }
+
+    /**
+     * Visits every transaction of the user, oldest first. Rows are read in keyset batches
+     * through a forward-only cursor, and each batch's statement is closed before its rows
+     * are handed on, so a slow consumer never holds a cursor open on the shared connection
+     * and memory is bounded by the batch size rather than the length of the history.
+     *
+     * @return rows visited, or -1 if the database failed part way through
+     */
+    public long forEachTransaction(String username, RowVisitor<Transaction> visitor) throws IOException {
+        String sql = "SELECT * FROM transactions WHERE username = ? AND (transaction_date, id) > (?, ?) "
+                + "ORDER BY transaction_date, id LIMIT ?";
+        List<Transaction> batch = new ArrayList<>(EXPORT_BATCH_SIZE);
+        String lastDate = "";
+        long lastId = 0;
+        long visited = 0;
+        int read;
+        do {
+            batch.clear();
+            read = 0;
+            connectionLock.lock();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                pstmt.setFetchSize(EXPORT_BATCH_SIZE);
+                pstmt.setString(1, username);
+                pstmt.setString(2, lastDate);
+                pstmt.setLong(3, lastId);
+                pstmt.setInt(4, EXPORT_BATCH_SIZE);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    read++;
+                    lastDate = rs.getString("transaction_date");
+                    lastId = rs.getLong("id");
+                    Transaction transaction = createTransactionFromResultSet(rs);
+                    if (transaction != null) {
+                        batch.add(transaction);
+                    }
+                }
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "Error exporting transactions for user: " + username, e);
+                return -1;
+            } finally {
+                connectionLock.unlock();
+            }
+            for (Transaction transaction : batch) {
+                visitor.visit(transaction);
+            }
+            visited += batch.size();
+        } while (read == EXPORT_BATCH_SIZE);
+        return visited;
+    }
+
+    /**
+     * Visits every open position of the user in symbol order, batched the same way as
+     * {@link #forEachTransaction}.
+     *
+     * @return rows visited, or -1 if the database failed part way through
+     */
+    public long forEachPosition(String username, RowVisitor<Portfolio> visitor) throws IOException {
+        String sql = "SELECT * FROM portfolio WHERE username = ? AND symbol > ? ORDER BY symbol LIMIT ?";
+        List<Portfolio> batch = new ArrayList<>();
+        String lastSymbol = "";
+        long visited = 0;
+        int read;
+        do {
+            batch.clear();
+            read = 0;
+            connectionLock.lock();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                pstmt.setFetchSize(EXPORT_BATCH_SIZE);
+                pstmt.setString(1, username);
+                pstmt.setString(2, lastSymbol);
+                pstmt.setInt(3, EXPORT_BATCH_SIZE);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    read++;
+                    lastSymbol = rs.getString("symbol");
+                    Portfolio item = createPortfolioFromResultSet(rs);
+                    if (item != null && item.getQuantity() > 0) {
+                        batch.add(item);
+                    }
+                }
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "Error exporting positions for user: " + username, e);
+                return -1;
+            } finally {
+                connectionLock.unlock();
+            }
+            for (Portfolio item : batch) {
+                visitor.visit(item);
+            }
+            visited += batch.size();
+        } while (read == EXPORT_BATCH_SIZE);
+        return visited;
+    }
+
     // Get total investment (sum of all BUY transactions)
     public double getTotalInvestment(String username) {
         String sql = "SELECT COALESCE(SUM(total_amount), 0) as total FROM transactions WHERE username = ? AND type = 'BUY'";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             ResultSet rs = pstmt.executeQuery();
@@ -397,6 +1406,8 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error calculating total investment for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
         }
         return 0.0;
     }
@@ -406,6 +1417,7 @@ public class DatabaseHandler {
         String buySql = "SELECT COALESCE(SUM(total_amount), 0) as buy_total FROM transactions WHERE username = ? AND type = 'BUY'";
         String sellSql = "SELECT COALESCE(SUM(total_amount), 0) as sell_total FROM transactions WHERE username = ? AND type = 'SELL'";
 
+        connectionLock.lock();
         try {
             double buyTotal = executeSumQuery(buySql, username);
             double sellTotal = executeSumQuery(sellSql, username);
@@ -413,6 +1425,8 @@ public class DatabaseHandler {
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error calculating cash flow for user: " + username, e);
             return 0.0;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
@@ -478,6 +1492,7 @@ public class DatabaseHandler {
     // Additional utility method: Get user's total portfolio value
     public double getTotalPortfolioValue(String username) {
         String sql = "SELECT COALESCE(SUM(quantity * current_price), 0) as total_value FROM portfolio WHERE username = ?";
+        connectionLock.lock();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, username);
             ResultSet rs = pstmt.executeQuery();
@@ -486,7 +1501,291 @@ public class DatabaseHandler {
             }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Error calculating total portfolio value for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
         }
         return 0.0;
     }
-}
\ No newline at end of file
+
+    // PRICE HISTORY METHODS
+
+    // Last stored trading day for a symbol, or Integer.MIN_VALUE if none
+    public int getLastPriceDay(String symbol) {
+        String sql = "SELECT MAX(trade_day) AS last_day FROM price_history WHERE symbol = ?";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, symbol);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                int lastDay = rs.getInt("last_day");
+                return rs.wasNull() ? Integer.MIN_VALUE : lastDay;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error reading last price day for symbol: " + symbol, e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * Appends bars from the given day onwards in one transaction. The bar for the last stored
+     * day is overwritten, since it may have been captured before the close. Returns the number
+     * of bars written, or -1 on failure.
+     */
+    public int appendPriceHistory(PriceHistory bars, int fromEpochDay) {
+        String sql = "INSERT INTO price_history(symbol, trade_day, open, high, low, close, volume) VALUES (?, ?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT(symbol, trade_day) DO UPDATE SET open = excluded.open, high = excluded.high, "
+                + "low = excluded.low, close = excluded.close, volume = excluded.volume";
+        int start = bars.indexOnOrAfter(fromEpochDay);
+        if (start >= bars.size()) {
+            return 0;
+        }
+        connectionLock.lock();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (int i = start; i < bars.size(); i++) {
+                    pstmt.setString(1, bars.getSymbol());
+                    pstmt.setInt(2, bars.getEpochDay(i));
+                    pstmt.setDouble(3, bars.getOpen(i));
+                    pstmt.setDouble(4, bars.getHigh(i));
+                    pstmt.setDouble(5, bars.getLow(i));
+                    pstmt.setDouble(6, bars.getClose(i));
+                    pstmt.setLong(7, bars.getVolume(i));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                connection.commit();
+                return bars.size() - start;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error appending price history for symbol: " + bars.getSymbol(), e);
+            return -1;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    // Bars with fromEpochDay <= trade_day <= toEpochDay, read straight into primitive columns
+    public PriceHistory getPriceHistory(String symbol, int fromEpochDay, int toEpochDay) {
+        String sql = "SELECT trade_day, open, high, low, close, volume FROM price_history "
+                + "WHERE symbol = ? AND trade_day BETWEEN ? AND ? ORDER BY trade_day";
+        PriceHistory.Builder builder = new PriceHistory.Builder(symbol);
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, symbol);
+            pstmt.setInt(2, fromEpochDay);
+            pstmt.setInt(3, toEpochDay);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                builder.add(rs.getInt(1), rs.getDouble(2), rs.getDouble(3), rs.getDouble(4), rs.getDouble(5), rs.getLong(6));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching price history for symbol: " + symbol, e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return builder.build();
+    }
+
+    // NAV HISTORY METHODS
+
+    /** Receives every account's rows during {@link #scanAccounts}. */
+    public interface AccountScanHandler {
+        void account(String username, double balance);
+        void position(String username, String symbol, int quantity, double lastPrice);
+        void invested(String username, double totalBought);
+    }
+
+    /**
+     * Streams cash, positions and total BUY amounts for every account: three sequential
+     * scans rather than queries per user. Holds the connection lock so no trade commits
+     * between the scans and the three views agree. Returns false on failure.
+     */
+    public boolean scanAccounts(AccountScanHandler handler) {
+        connectionLock.lock();
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT username, balance FROM users")) {
+                while (rs.next()) {
+                    handler.account(rs.getString(1), rs.getDouble(2));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT username, symbol, quantity, current_price FROM portfolio WHERE quantity > 0")) {
+                while (rs.next()) {
+                    handler.position(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getDouble(4));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT username, SUM(total_amount) FROM transactions WHERE type = 'BUY' GROUP BY username")) {
+                while (rs.next()) {
+                    handler.invested(rs.getString(1), rs.getDouble(2));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error scanning accounts", e);
+            return false;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Writes one day's NAV rows for the first count accounts in a single transaction,
+     * replacing any earlier snapshot for that day. Returns rows written, or -1 on failure.
+     */
+    public int appendNavSnapshots(int epochDay, String[] usernames, double[] nav, double[] cash, double[] invested, int count) {
+        String sql = "INSERT INTO nav_history(username, nav_day, nav, cash, invested) VALUES (?, ?, ?, ?, ?) "
+                + "ON CONFLICT(username, nav_day) DO UPDATE SET nav = excluded.nav, cash = excluded.cash, invested = excluded.invested";
+        connectionLock.lock();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (int i = 0; i < count; i++) {
+                    pstmt.setString(1, usernames[i]);
+                    pstmt.setInt(2, epochDay);
+                    pstmt.setDouble(3, nav[i]);
+                    pstmt.setDouble(4, cash[i]);
+                    pstmt.setDouble(5, invested[i]);
+                    pstmt.addBatch();
+                    // Bounded batches keep driver memory flat for large account counts
+                    if ((i + 1) % 1000 == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+                connection.commit();
+                return count;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error writing NAV snapshots for day: " + epochDay, e);
+            return -1;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    // Snapshots with fromEpochDay <= nav_day <= toEpochDay, a range read on the primary key
+    public NavHistory getNavHistory(String username, int fromEpochDay, int toEpochDay) {
+        String sql = "SELECT nav_day, nav, cash, invested FROM nav_history "
+                + "WHERE username = ? AND nav_day BETWEEN ? AND ? ORDER BY nav_day";
+        NavHistory.Builder builder = new NavHistory.Builder(username);
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.setInt(2, fromEpochDay);
+            pstmt.setInt(3, toEpochDay);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                builder.add(rs.getInt(1), rs.getDouble(2), rs.getDouble(3), rs.getDouble(4));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching NAV history for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return builder.build();
+    }
+
+    // TAX LOT METHODS
+
+    public LotMethod getLotMethod(String username) {
+        connectionLock.lock();
+        try {
+            return readLotMethod(username);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error reading lot method for user: " + username, e);
+            return LotMethod.FIFO;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    // Applies to sales from now on; lots already closed keep their results
+    public boolean setLotMethod(String username, LotMethod method) {
+        String sql = "INSERT INTO account_settings(username, lot_method) VALUES (?, ?) "
+                + "ON CONFLICT(username) DO UPDATE SET lot_method = excluded.lot_method";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, method.name());
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error setting lot method for user: " + username, e);
+            return false;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    // Open lots ordered by symbol, then lot id (oldest first); served by idx_tax_lots_position
+    public List<TaxLot> getOpenLots(String username) {
+        List<TaxLot> lots = new ArrayList<>();
+        String sql = "SELECT id, symbol, opened_at, quantity, cost_per_share FROM tax_lots WHERE username = ? ORDER BY symbol, id";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                lots.add(new TaxLot(rs.getLong(1), rs.getString(2), LocalDateTime.parse(rs.getString(3), DATE_FORMATTER),
+                        rs.getInt(4), rs.getDouble(5)));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching tax lots for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return lots;
+    }
+
+    // Realized gain (proceeds minus cost of shares sold) per symbol
+    public Map<String, Double> getRealizedGains(String username) {
+        Map<String, Double> gains = new HashMap<>();
+        String sql = "SELECT symbol, proceeds - cost FROM realized_gains WHERE username = ?";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                gains.put(rs.getString(1), rs.getDouble(2));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching realized gains for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return gains;
+    }
+
+    /** Cost of every share the user has sold, and that cost times the days each was held. */
+    public double[] getRealizedCost(String username) {
+        String sql = "SELECT COALESCE(SUM(cost), 0), COALESCE(SUM(cost_days), 0) FROM realized_gains WHERE username = ?";
+        connectionLock.lock();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return new double[] {rs.getDouble(1), rs.getDouble(2)};
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error fetching realized cost for user: " + username, e);
+        } finally {
+            connectionLock.unlock();
+        }
+        return new double[2];
+    }
+
+}
@@ -0,0 +1,479 @@
+package backend.database;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of executed trades in fixed-size, memory-mapped segment files. Every
+ * record is framed as
+ *
+ *   length (4) | crc32c (4) | sequence (8) | type (1) | payload (length)
+ *
+ * with the CRC covering sequence, type and payload, and sequences consecutive within a
+ * segment. A torn or partly written tail therefore fails the CRC or sequence check and
+ * is cut off on open.
+ *
+ * Appending only copies into the mapping. A single sync thread forces everything
+ * appended since its last pass in one call, so trades that arrive while a sync is in
+ * progress share the next one (group commit); {@link #awaitDurable} blocks a caller until
+ * its record is covered. A segment is forced in full before the next one is started.
+ */
+public class TradeJournal implements AutoCloseable {
+    public static final byte TRADE = 1;
+    // Payload is the sequence of a TRADE whose SQLite transaction rolled back after it was appended
+    public static final byte ABORT = 2;
+
+    private static final int HEADER_SIZE = 17;
+    private static final String SUFFIX = ".journal";
+    private static final Logger logger = Logger.getLogger(TradeJournal.class.getName());
+
+    /** Receives records in sequence order during {@link #replay}. */
+    public interface RecordHandler {
+        void record(long sequence, byte type, ByteBuffer payload);
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    private final Thread syncer;
+    private final LongAdder records = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+
+    // Guarded by lock
+    private Segment current;
+    private long nextSequence;
+    private long writtenSequence;
+    private long syncedSequence;
+    private int syncedOffset;
+    private IOException failure;
+    private boolean closed;
+
+    /** Opens the journal in the directory, creating it if needed, and cuts off any torn tail. */
+    public TradeJournal(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        open();
+        syncer = new Thread(this::syncLoop, "trade-journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /** Reads TRADE_JOURNAL_DIR and TRADE_JOURNAL_SEGMENT_MB. */
+    public static TradeJournal fromEnvironment() throws IOException {
+        String dir = System.getenv("TRADE_JOURNAL_DIR");
+        Path path = Paths.get(dir == null || dir.isBlank() ? "smartstock-journal" : dir.trim());
+        int segmentMb = Math.max(1, Math.min(1024, intFromEnv("TRADE_JOURNAL_SEGMENT_MB", 64)));
+        return new TradeJournal(path, segmentMb << 20);
+    }
+
+    /**
+     * Appends a record without waiting for it to reach disk and returns its sequence.
+     * Throws if the record cannot be written or an earlier sync failed.
+     */
+    public long append(byte type, byte[] payload) throws IOException {
+        int size = HEADER_SIZE + payload.length;
+        if (size > segmentBytes) {
+            throw new IOException("Journal record of " + size + " bytes exceeds the segment size");
+        }
+        lock.lock();
+        try {
+            checkUsable();
+            if (current == null || segmentBytes - current.end < size) {
+                roll();
+            }
+            long sequence = nextSequence++;
+            MappedByteBuffer buffer = current.buffer;
+            int offset = current.end;
+            buffer.putLong(offset + 8, sequence);
+            buffer.put(offset + 16, type);
+            buffer.put(offset + HEADER_SIZE, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(offset + 8, 9 + payload.length));
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            // Written last, though the CRC is what makes a record valid
+            buffer.putInt(offset, payload.length);
+            current.end = offset + size;
+            current.lastSequence = sequence;
+            writtenSequence = sequence;
+            records.increment();
+            appended.signal();
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Blocks until the record with this sequence, and every one before it, is on disk. */
+    public void awaitDurable(long sequence) throws IOException {
+        lock.lock();
+        try {
+            while (syncedSequence < sequence) {
+                if (failure != null) {
+                    throw failure;
+                }
+                synced.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the trade journal");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Visits every record after the given sequence, oldest first. */
+    public void replay(long afterSequence, RecordHandler handler) {
+        List<Segment> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(segments);
+        } finally {
+            lock.unlock();
+        }
+        for (Segment segment : snapshot) {
+            if (segment.lastSequence <= afterSequence) {
+                continue;
+            }
+            ByteBuffer buffer = segment.buffer.asReadOnlyBuffer();
+            int offset = 0;
+            while (offset < segment.end) {
+                int length = buffer.getInt(offset);
+                long sequence = buffer.getLong(offset + 8);
+                if (sequence > afterSequence) {
+                    handler.record(sequence, buffer.get(offset + 16), buffer.slice(offset + HEADER_SIZE, length));
+                }
+                offset += HEADER_SIZE + length;
+            }
+        }
+    }
+
+    /**
+     * Continues numbering after the given sequence if that is past the end of the journal,
+     * e.g. when segments were removed by hand. The next record then starts a new segment.
+     */
+    public void startAfter(long sequence) {
+        lock.lock();
+        try {
+            if (sequence >= nextSequence) {
+                nextSequence = sequence + 1;
+                current = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True once a full segment is waiting to be retired. */
+    public boolean hasClosedSegments() {
+        lock.lock();
+        try {
+            return segments.size() > 1 || (current == null && !segments.isEmpty());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Deletes the closed segments whose records are all at or below the given sequence. */
+    public int retire(long appliedSequence) {
+        List<Segment> retired = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                if (segment != current && segment.lastSequence <= appliedSequence) {
+                    retired.add(segment);
+                }
+            }
+            segments.removeAll(retired);
+        } finally {
+            lock.unlock();
+        }
+        for (Segment segment : retired) {
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not delete journal segment " + segment.path, e);
+            }
+        }
+        return retired.size();
+    }
+
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRecordCount() { return records.sum(); }
+    // Records divided by syncs is the average group commit size
+    public long getSyncCount() { return syncs.sum(); }
+
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Syncs what has been appended, then closes every segment. */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error closing journal segment " + segment.path, e);
+            }
+        }
+    }
+
+    // ---------- internals ----------
+
+    private void syncLoop() {
+        while (true) {
+            Segment segment;
+            int from;
+            int to;
+            long target;
+            lock.lock();
+            try {
+                while (syncedSequence == writtenSequence && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if (syncedSequence == writtenSequence || failure != null) {
+                    synced.signalAll();
+                    return;
+                }
+                segment = current;
+                from = syncedOffset;
+                to = segment.end;
+                target = writtenSequence;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                segment.buffer.force(from, to - from);
+                syncs.increment();
+            } catch (RuntimeException e) {
+                error = new IOException("Trade journal sync failed", e);
+                logger.log(Level.SEVERE, "Trade journal sync failed; trades will be refused", e);
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    syncedSequence = Math.max(syncedSequence, target);
+                    if (segment == current) {
+                        syncedOffset = Math.max(syncedOffset, to);
+                    }
+                }
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Called with the lock held; the old segment is forced here so the sync thread only
+    // ever has to look at the current one
+    private void roll() throws IOException {
+        if (current != null) {
+            try {
+                current.buffer.force();
+            } catch (RuntimeException e) {
+                failure = new IOException("Trade journal sync failed", e);
+                throw failure;
+            }
+            syncedSequence = Math.max(syncedSequence, current.lastSequence);
+            synced.signalAll();
+        }
+        Path path = directory.resolve(String.format("%020d%s", nextSequence, SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes),
+                nextSequence);
+        syncDirectory();
+        segments.add(segment);
+        current = segment;
+        syncedOffset = 0;
+    }
+
+    private void open() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        // Zero-padded names sort in sequence order
+        paths.sort(null);
+
+        long expected = 1;
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            String name = path.getFileName().toString();
+            long first = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            if (first < expected) {
+                throw new IOException("Journal segment " + path + " overlaps the one before it");
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+            Segment segment = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), first);
+            scan(segment);
+            boolean last = i == paths.size() - 1;
+            if (!last && !isZero(segment.buffer, segment.end, segment.end + HEADER_SIZE)) {
+                throw new IOException("Journal segment " + path + " is corrupt after sequence " + segment.lastSequence);
+            }
+            // Pages reach disk in any order, so a later record can outlive a torn one; clear
+            // everything past the cut so it can never line up with new records
+            if (last && !isZero(segment.buffer, segment.end, size)) {
+                logger.warning("Cutting torn journal tail after sequence " + segment.lastSequence);
+                zero(segment.buffer, segment.end);
+                segment.buffer.force();
+            }
+            segments.add(segment);
+            expected = segment.lastSequence + 1;
+            if (last && segment.buffer.capacity() == segmentBytes) {
+                current = segment;
+                syncedOffset = segment.end;
+            }
+        }
+        nextSequence = expected;
+        writtenSequence = expected - 1;
+        syncedSequence = expected - 1;
+        if (!segments.isEmpty()) {
+            logger.info("Trade journal opened at sequence " + (expected - 1) + " in " + segments.size() + " segments");
+        }
+    }
+
+    // Finds the end of the valid records
+    private static void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int offset = 0;
+        long expected = segment.firstSequence;
+        CRC32C crc = new CRC32C();
+        while (offset + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(offset);
+            long sequence = buffer.getLong(offset + 8);
+            if (sequence != expected || length < 0 || length > capacity - offset - HEADER_SIZE) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(offset + 8, 9 + length));
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+            expected++;
+        }
+        segment.end = offset;
+        segment.lastSequence = expected - 1;
+    }
+
+    private static boolean isZero(MappedByteBuffer buffer, int from, int to) {
+        for (int i = from; i < Math.min(to, buffer.capacity()); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void zero(MappedByteBuffer buffer, int from) {
+        byte[] zeros = new byte[65536];
+        for (int offset = from; offset < buffer.capacity(); offset += zeros.length) {
+            buffer.put(offset, zeros, 0, Math.min(zeros.length, buffer.capacity() - offset));
+        }
+    }
+
+    // Makes a new segment's directory entry durable; not every platform allows it
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Directory sync not supported for " + directory, e);
+        }
+    }
+
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Trade journal is closed");
+        }
+    }
+
+    private static int intFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + name + " '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final long firstSequence;
+        // End of the last valid record
+        int end;
+        long lastSequence;
+
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer, long firstSequence) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+}
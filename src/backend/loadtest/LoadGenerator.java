@@ -0,0 +1,435 @@
+package backend.loadtest;
+
+import backend.server.LatencyHistogram;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load generator for a running server, normally one started with
+ * MARKET_DATA_MODE=synthetic so quotes cost nothing and need no network:
+ *
+ * <pre>
+ *   MARKET_DATA_MODE=synthetic java Main &
+ *   LOADGEN_RATE=500 LOADGEN_USERS=200 java backend.loadtest.LoadGenerator
+ * </pre>
+ *
+ * It registers LOADGEN_USERS fresh accounts, gives each a few shares of every symbol so
+ * sells have something to sell, then sends a weighted mix of buys, sells, portfolio views
+ * and tutorial reads at a fixed LOADGEN_RATE for LOADGEN_DURATION_SECONDS after
+ * LOADGEN_WARMUP_SECONDS of unrecorded warmup.
+ *
+ * The load is open-loop: request i is due at start + i / rate whatever happened to
+ * earlier ones, and its latency is measured from that due time rather than from when it
+ * was actually sent. A server stall therefore shows up as the queue of requests that
+ * should have been sent during it, not as a single slow sample (coordinated omission).
+ * Service time measured from the actual send is reported alongside for comparison.
+ *
+ * Exits 1 if LOADGEN_MAX_P99_MS or LOADGEN_MAX_ERROR_PERCENT is set and exceeded, so a
+ * run can gate a build, and 2 if the accounts could not be set up.
+ */
+public class LoadGenerator {
+    private static final String PASSWORD = "loadgen-password";
+    private static final int SEED_SHARES = 10;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    enum Operation { BUY, SELL, PORTFOLIO, TUTORIAL }
+
+    /** Counters and latency for one operation, measured window only. */
+    static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder clientErrors = new LongAdder();
+        final LongAdder serverErrors = new LongAdder();
+        final LongAdder failures = new LongAdder();
+
+        long errors() {
+            return clientErrors.sum() + serverErrors.sum() + failures.sum();
+        }
+    }
+
+    private final String baseUrl;
+    private final int users;
+    private final double rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final Map<Operation, Integer> mix;
+    private final String[] symbols;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final SplittableRandom random;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("loadgen-http-", 0).factory()))
+            .build();
+
+    private final Map<Operation, Stats> stats = new LinkedHashMap<>();
+    private final String[] usernames;
+    // Shares each user is known to hold, per symbol; sells only take what is there
+    private final AtomicIntegerArray held;
+    private final List<String> tutorialIds = new ArrayList<>();
+    private volatile long maxDispatchLagNanos;
+
+    public LoadGenerator(String baseUrl, int users, double rate, int durationSeconds, int warmupSeconds,
+                         Map<Operation, Integer> mix, String[] symbols, int maxInFlight, long seed) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.users = users;
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.mix = mix;
+        this.symbols = symbols;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.random = new SplittableRandom(seed);
+        this.usernames = new String[users];
+        this.held = new AtomicIntegerArray(users * symbols.length);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator(
+                stringFromEnv("LOADGEN_URL", "http://localhost:8080"),
+                Math.max(1, intFromEnv("LOADGEN_USERS", 50)),
+                Math.max(1, doubleFromEnv("LOADGEN_RATE", 200)),
+                Math.max(1, intFromEnv("LOADGEN_DURATION_SECONDS", 60)),
+                Math.max(0, intFromEnv("LOADGEN_WARMUP_SECONDS", 10)),
+                parseMix(stringFromEnv("LOADGEN_MIX", "buy=30,sell=20,portfolio=40,tutorial=10")),
+                stringFromEnv("LOADGEN_SYMBOLS", "AAPL,MSFT,GOOGL,JPM,TSLA").toUpperCase().split("\\s*,\\s*"),
+                Math.max(1, intFromEnv("LOADGEN_MAX_IN_FLIGHT", 512)),
+                intFromEnv("LOADGEN_SEED", 42));
+
+        try {
+            generator.setUp();
+        } catch (RuntimeException e) {
+            System.err.println(" Load test setup failed: " + e.getMessage());
+            System.exit(2);
+        }
+        generator.run();
+        boolean passed = generator.report(doubleFromEnv("LOADGEN_MAX_P99_MS", 0),
+                doubleFromEnv("LOADGEN_MAX_ERROR_PERCENT", -1));
+        System.exit(passed ? 0 : 1);
+    }
+
+    /** Registers the accounts, seeds their positions and looks up the tutorial ids. */
+    public void setUp() {
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        System.out.println(" Registering " + users + " users against " + baseUrl);
+        List<CompletableFuture<HttpResponse<String>>> registrations = new ArrayList<>(users);
+        for (int u = 0; u < users; u++) {
+            usernames[u] = "lg" + runId + "u" + u;
+            registrations.add(send(post("/api/auth/register", "{\"username\":\"" + usernames[u]
+                    + "\",\"email\":\"" + usernames[u] + "@loadgen.local\",\"password\":\"" + PASSWORD + "\"}")));
+        }
+        for (int u = 0; u < users; u++) {
+            HttpResponse<String> response = registrations.get(u).join();
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("registering " + usernames[u] + " returned " + response.statusCode()
+                        + ": " + response.body());
+            }
+        }
+
+        if (mix.getOrDefault(Operation.SELL, 0) > 0) {
+            System.out.println(" Seeding " + SEED_SHARES + " shares of " + String.join(",", symbols) + " per user");
+            for (int u = 0; u < users; u++) {
+                List<CompletableFuture<HttpResponse<String>>> buys = new ArrayList<>(symbols.length);
+                for (String symbol : symbols) {
+                    buys.add(send(trade("buy", usernames[u], symbol, SEED_SHARES)));
+                }
+                for (int s = 0; s < symbols.length; s++) {
+                    HttpResponse<String> response = buys.get(s).join();
+                    if (response.statusCode() != 200) {
+                        throw new RuntimeException("seeding " + symbols[s] + " for " + usernames[u] + " returned "
+                                + response.statusCode() + ": " + response.body());
+                    }
+                    held.set(u * symbols.length + s, SEED_SHARES);
+                }
+            }
+        }
+
+        if (mix.getOrDefault(Operation.TUTORIAL, 0) > 0) {
+            HttpResponse<String> response = send(get("/api/tutorials")).join();
+            if (response.statusCode() == 200) {
+                JSONArray tutorials = new JSONObject(response.body()).optJSONArray("data");
+                for (int i = 0; tutorials != null && i < tutorials.length(); i++) {
+                    tutorialIds.add(tutorials.getJSONObject(i).getString("id"));
+                }
+            }
+            if (tutorialIds.isEmpty()) {
+                System.err.println(" No tutorials found, tutorial calls will fetch the catalog instead");
+            }
+        }
+    }
+
+    /** Sends the scheduled load and waits for every request to finish or time out. */
+    public void run() {
+        long intervalNanos = (long) (1_000_000_000L / rate);
+        long totalRequests = (long) (rate * (warmupSeconds + durationSeconds));
+        long warmupRequests = (long) (rate * warmupSeconds);
+        int totalWeight = 0;
+        for (int weight : mix.values()) {
+            totalWeight += weight;
+        }
+
+        System.out.println(String.format(Locale.ROOT, " Sending %.0f req/s for %ds (+%ds warmup), mix %s, at most %d in flight",
+                rate, durationSeconds, warmupSeconds, mix, maxInFlight));
+        long start = System.nanoTime();
+        long nextProgress = start + TimeUnit.SECONDS.toNanos(10);
+        for (long i = 0; i < totalRequests; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = i >= warmupRequests;
+            if (i == warmupRequests && warmupRequests > 0) {
+                System.out.println(" Warmup done, measuring");
+            }
+
+            // Blocking here delays the send but not the due time, so the wait is counted
+            inFlight.acquireUninterruptibly();
+            maxDispatchLagNanos = Math.max(maxDispatchLagNanos, System.nanoTime() - due);
+            dispatch(pick(totalWeight), due, measured);
+
+            if (System.nanoTime() >= nextProgress) {
+                System.out.println(String.format(Locale.ROOT, " %ds: %d sent, %d in flight",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), i + 1,
+                        maxInFlight - inFlight.availablePermits()));
+                nextProgress += TimeUnit.SECONDS.toNanos(10);
+            }
+        }
+        try {
+            if (!inFlight.tryAcquire(maxInFlight, REQUEST_TIMEOUT.toSeconds() + 5, TimeUnit.SECONDS)) {
+                System.err.println(" Gave up waiting for " + (maxInFlight - inFlight.availablePermits()) + " requests");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Operation pick(int totalWeight) {
+        int roll = random.nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.PORTFOLIO;
+    }
+
+    private void dispatch(Operation operation, long due, boolean measured) {
+        int user = random.nextInt(users);
+        int symbol = random.nextInt(symbols.length);
+        String username = usernames[user];
+        int slot = user * symbols.length + symbol;
+
+        HttpRequest request;
+        if (operation == Operation.SELL && !takeShare(slot)) {
+            // Nothing confirmed to sell; a buy keeps the rate and avoids a predictable rejection
+            operation = Operation.BUY;
+        }
+        switch (operation) {
+            case BUY -> request = trade("buy", username, symbols[symbol], 1);
+            case SELL -> request = trade("sell", username, symbols[symbol], 1);
+            case PORTFOLIO -> request = get("/api/portfolio?username=" + username);
+            default -> request = tutorialIds.isEmpty()
+                    ? get("/api/tutorials")
+                    : get("/api/tutorial/" + tutorialIds.get(random.nextInt(tutorialIds.size())));
+        }
+
+        Operation op = operation;
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            long finished = System.nanoTime();
+            int status = response != null ? response.statusCode() : 0;
+            if (op == Operation.BUY && status == 200) {
+                held.incrementAndGet(slot);
+            } else if (op == Operation.SELL && status != 200) {
+                held.incrementAndGet(slot);
+            }
+            if (measured) {
+                Stats s = stats.get(op);
+                s.latency.recordNanos(finished - due);
+                s.serviceTime.recordNanos(finished - sent);
+                if (error != null) {
+                    s.failures.increment();
+                } else if (status >= 500) {
+                    s.serverErrors.increment();
+                } else if (status >= 400) {
+                    s.clientErrors.increment();
+                }
+            }
+            inFlight.release();
+        });
+    }
+
+    private boolean takeShare(int slot) {
+        while (true) {
+            int shares = held.get(slot);
+            if (shares <= 0) {
+                return false;
+            }
+            if (held.compareAndSet(slot, shares, shares - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Prints throughput, latency percentiles and errors per operation; returns false if a
+     * threshold was exceeded. A threshold of zero or less is not checked.
+     */
+    public boolean report(double maxP99Millis, double maxErrorPercent) {
+        LatencyHistogram allLatency = new LatencyHistogram();
+        long total = 0;
+        long errors = 0;
+        long worstP99 = 0;
+
+        System.out.println();
+        System.out.println(" Latency from scheduled start (ms), " + durationSeconds + "s measured:");
+        System.out.println(String.format(Locale.ROOT, " %-10s %9s %9s %8s %8s %8s %8s %8s %8s %6s %6s %6s",
+                "operation", "requests", "req/s", "p50", "p90", "p99", "p99.9", "max", "svc p99", "4xx", "5xx", "fail"));
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            long count = s.latency.getCount();
+            if (count == 0) {
+                continue;
+            }
+            total += count;
+            errors += s.errors();
+            worstP99 = Math.max(worstP99, s.latency.percentile(0.99));
+            System.out.println(String.format(Locale.ROOT, " %-10s %9d %9.1f %8s %8s %8s %8s %8s %8s %6d %6d %6d",
+                    entry.getKey().name().toLowerCase(), count, (double) count / durationSeconds,
+                    millis(s.latency.percentile(0.50)), millis(s.latency.percentile(0.90)),
+                    millis(s.latency.percentile(0.99)), millis(s.latency.percentile(0.999)),
+                    millis(s.latency.percentile(1.0)), millis(s.serviceTime.percentile(0.99)),
+                    s.clientErrors.sum(), s.serverErrors.sum(), s.failures.sum()));
+        }
+
+        double errorPercent = total > 0 ? 100.0 * errors / total : 0;
+        System.out.println(String.format(Locale.ROOT, " Total %d requests, %.1f req/s (target %.0f), %.2f%% errors,"
+                        + " generator fell up to %s ms behind schedule",
+                total, (double) total / durationSeconds, rate, errorPercent, millis(maxDispatchLagNanos / 1_000)));
+
+        boolean passed = true;
+        if (maxP99Millis > 0 && worstP99 / 1000.0 > maxP99Millis) {
+            System.err.println(" FAIL: p99 " + millis(worstP99) + " ms exceeds LOADGEN_MAX_P99_MS " + maxP99Millis);
+            passed = false;
+        }
+        if (maxErrorPercent >= 0 && errorPercent > maxErrorPercent) {
+            System.err.println(String.format(Locale.ROOT, " FAIL: %.2f%% errors exceeds LOADGEN_MAX_ERROR_PERCENT %s",
+                    errorPercent, maxErrorPercent));
+            passed = false;
+        }
+        return passed;
+    }
+
+    // ---------- requests ----------
+
+    // The server's field extraction only reads quoted string values
+    private HttpRequest trade(String side, String username, String symbol, int quantity) {
+        return post("/api/trade/" + side, "{\"username\":\"" + username + "\",\"symbol\":\"" + symbol
+                + "\",\"stockName\":\"" + symbol + "\",\"quantity\":\"" + quantity
+                + "\",\"orderType\":\"MARKET\",\"duration\":\"DAY\"}");
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(REQUEST_TIMEOUT).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    // ---------- configuration ----------
+
+    /** Parses "buy=30,sell=20,..." into weights; unknown names and bad weights are skipped. */
+    static Map<Operation, Integer> parseMix(String spec) {
+        Map<Operation, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.split("=", 2);
+            try {
+                Operation operation = Operation.valueOf(pair[0].trim().toUpperCase());
+                int weight = Integer.parseInt(pair[1].trim());
+                if (weight > 0) {
+                    mix.put(operation, weight);
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                System.err.println(" Ignoring invalid LOADGEN_MIX entry '" + part + "'");
+            }
+        }
+        if (mix.isEmpty()) {
+            System.err.println(" LOADGEN_MIX has no usable entries, sending only portfolio views");
+            mix.put(Operation.PORTFOLIO, 1);
+        }
+        return mix;
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+    }
+
+    private static String stringFromEnv(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    private static int intFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println(" Invalid " + name + " value '" + value + "', using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static double doubleFromEnv(String name, double defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println(" Invalid " + name + " value '" + value + "', using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package backend.models;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of one backtest run: the parameters it used, its equity curve (as the NAV
+ * history of the simulated account) and summary statistics. Percentages are in percent;
+ * Sharpe assumes a zero risk-free rate and 252 trading days a year.
+ */
+public class BacktestResult {
+    private static final double TRADING_DAYS = 252.0;
+
+    private final String strategy;
+    private final Map<String, Double> parameters;
+    private final NavHistory equity;
+    private final double startingCash;
+    private final double finalEquity;
+    private final double totalReturn;
+    private final double annualReturn;
+    private final double volatility;
+    private final double sharpe;
+    private final double maxDrawdown;
+    private final int trades;
+    private final int rejected;
+    private final double winRate;
+
+    private BacktestResult(String strategy, Map<String, Double> parameters, NavHistory equity, double startingCash,
+                           double finalEquity, double totalReturn, double annualReturn, double volatility,
+                           double sharpe, double maxDrawdown, int trades, int rejected, double winRate) {
+        this.strategy = strategy;
+        this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+        this.equity = equity;
+        this.startingCash = startingCash;
+        this.finalEquity = finalEquity;
+        this.totalReturn = totalReturn;
+        this.annualReturn = annualReturn;
+        this.volatility = volatility;
+        this.sharpe = sharpe;
+        this.maxDrawdown = maxDrawdown;
+        this.trades = trades;
+        this.rejected = rejected;
+        this.winRate = winRate;
+    }
+
+    /**
+     * Computes the statistics from the full daily curve, then keeps it reduced to at most
+     * curvePoints points.
+     */
+    public static BacktestResult of(String strategy, Map<String, Double> parameters, NavHistory curve, int curvePoints,
+                                    double startingCash, int trades, int rejected, int closedTrades, int winningTrades) {
+        int n = curve.size();
+        double finalEquity = n > 0 ? curve.getNav(n - 1) : startingCash;
+        double totalReturn = (finalEquity / startingCash - 1) * 100;
+
+        double annualReturn = Double.NaN;
+        if (n > 1) {
+            double years = (curve.getEpochDay(n - 1) - curve.getEpochDay(0)) / 365.25;
+            if (years > 0 && finalEquity > 0) {
+                annualReturn = (Math.pow(finalEquity / startingCash, 1 / years) - 1) * 100;
+            }
+        }
+
+        // Daily returns, and the deepest fall from a running peak
+        double sum = 0;
+        double sumSquares = 0;
+        double peak = startingCash;
+        double maxDrawdown = 0;
+        double previous = startingCash;
+        for (int i = 0; i < n; i++) {
+            double value = curve.getNav(i);
+            double change = previous > 0 ? value / previous - 1 : 0;
+            sum += change;
+            sumSquares += change * change;
+            previous = value;
+            peak = Math.max(peak, value);
+            if (peak > 0) {
+                maxDrawdown = Math.max(maxDrawdown, (peak - value) / peak);
+            }
+        }
+        double mean = n > 0 ? sum / n : 0;
+        double variance = n > 1 ? (sumSquares - n * mean * mean) / (n - 1) : 0;
+        double dailyStdDev = Math.sqrt(Math.max(0, variance));
+        double volatility = dailyStdDev * Math.sqrt(TRADING_DAYS) * 100;
+        double sharpe = dailyStdDev > 0 ? mean / dailyStdDev * Math.sqrt(TRADING_DAYS) : Double.NaN;
+        double winRate = closedTrades > 0 ? 100.0 * winningTrades / closedTrades : Double.NaN;
+
+        return new BacktestResult(strategy, parameters, curve.downsample(curvePoints), startingCash, finalEquity,
+                totalReturn, annualReturn, volatility, sharpe, maxDrawdown * 100, trades, rejected, winRate);
+    }
+
+    public String getStrategy() { return strategy; }
+    public Map<String, Double> getParameters() { return parameters; }
+    // Reduced curve: nav is equity, invested the cumulative amount bought
+    public NavHistory getEquity() { return equity; }
+    public double getStartingCash() { return startingCash; }
+    public double getFinalEquity() { return finalEquity; }
+    public double getTotalReturn() { return totalReturn; }
+    // Compound annual growth rate; NaN for runs shorter than a day
+    public double getAnnualReturn() { return annualReturn; }
+    public double getVolatility() { return volatility; }
+    public double getSharpe() { return sharpe; }
+    public double getMaxDrawdown() { return maxDrawdown; }
+    public int getTrades() { return trades; }
+    // Orders refused for lack of cash or shares, as the live account would refuse them
+    public int getRejected() { return rejected; }
+    // Share of sales made above average cost; NaN if nothing was sold
+    public double getWinRate() { return winRate; }
+}
@@ -0,0 +1,23 @@
+package backend.models;
+
+/**
+ * Which tax lots a sale draws from. FIFO sells the oldest shares first, LIFO the newest;
+ * AVERAGE prices every sale at the pooled average cost of the position.
+ */
+public enum LotMethod {
+    FIFO,
+    LIFO,
+    AVERAGE;
+
+    /** Parses a method name; null or blank means FIFO. Returns null if it is not recognised. */
+    public static LotMethod parse(String value) {
+        if (value == null || value.isBlank()) {
+            return FIFO;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
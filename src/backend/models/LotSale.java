@@ -0,0 +1,69 @@
+package backend.models;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * How one sale draws down the open lots of a symbol under a {@link LotMethod}. Pure
+ * arithmetic: the database applies the result to its lot rows in the same transaction.
+ */
+public class LotSale {
+    private final int[] taken;
+    private final int shortfall;
+    private final double averageCost;
+    private final double costOfSold;
+    private final double costDays;
+
+    private LotSale(int[] taken, int shortfall, double averageCost, double costOfSold, double costDays) {
+        this.taken = taken;
+        this.shortfall = shortfall;
+        this.averageCost = averageCost;
+        this.costOfSold = costOfSold;
+        this.costDays = costDays;
+    }
+
+    /**
+     * @param lots         open lots of the symbol, oldest first
+     * @param quantity     shares sold
+     * @param soldAt       time of the sale, for the holding period of each share
+     * @param fallbackCost cost per share to use when there are no lots at all
+     */
+    public static LotSale match(LotMethod method, List<TaxLot> lots, int quantity, LocalDateTime soldAt,
+                                double fallbackCost) {
+        double pooledCost = 0;
+        int pooledShares = 0;
+        for (TaxLot lot : lots) {
+            pooledShares += lot.getQuantity();
+            pooledCost += lot.getCostBasis();
+        }
+        double averageCost = pooledShares > 0 ? pooledCost / pooledShares : fallbackCost;
+
+        int[] taken = new int[lots.size()];
+        int remaining = quantity;
+        double costOfSold = 0;
+        double costDays = 0;
+        for (int n = 0; n < lots.size() && remaining > 0; n++) {
+            int i = method == LotMethod.LIFO ? lots.size() - 1 - n : n;
+            TaxLot lot = lots.get(i);
+            int take = Math.min(remaining, lot.getQuantity());
+            double takeCost = take * (method == LotMethod.AVERAGE ? averageCost : lot.getCostPerShare());
+            taken[i] = take;
+            costOfSold += takeCost;
+            costDays += takeCost * TaxLot.daysHeld(lot.getOpenedAt(), soldAt);
+            remaining -= take;
+        }
+        // Lots out of step with the position; the shortfall is priced at the pooled average
+        costOfSold += remaining * averageCost;
+        return new LotSale(taken, remaining, averageCost, costOfSold, costDays);
+    }
+
+    /** Shares taken from each lot, in the order the lots were given. */
+    public int getTaken(int index) { return taken[index]; }
+    // Shares sold that no lot covered
+    public int getShortfall() { return shortfall; }
+    // Pooled cost per share before the sale; under AVERAGE every remaining lot is repriced to it
+    public double getAverageCost() { return averageCost; }
+    public double getCostOfSold() { return costOfSold; }
+    // Cost of the shares sold times the days each was held
+    public double getCostDays() { return costDays; }
+}
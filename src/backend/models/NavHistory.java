@@ -0,0 +1,102 @@
+package backend.models;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Daily end-of-day valuations for one account, oldest first, in primitive columns:
+ * net asset value (cash plus positions), cash, and cumulative amount invested.
+ */
+public class NavHistory {
+    private final String username;
+    private final int[] days;
+    private final double[] nav;
+    private final double[] cash;
+    private final double[] invested;
+
+    private NavHistory(String username, int[] days, double[] nav, double[] cash, double[] invested) {
+        this.username = username;
+        this.days = days;
+        this.nav = nav;
+        this.cash = cash;
+        this.invested = invested;
+    }
+
+    public String getUsername() { return username; }
+    public int size() { return days.length; }
+    public boolean isEmpty() { return days.length == 0; }
+
+    public int getEpochDay(int i) { return days[i]; }
+    public LocalDate getDate(int i) { return LocalDate.ofEpochDay(days[i]); }
+    public double getNav(int i) { return nav[i]; }
+    public double getCash(int i) { return cash[i]; }
+    public double getInvested(int i) { return invested[i]; }
+
+    /**
+     * At most maxPoints records: the range is split into equal buckets and the last record
+     * of each is kept, like a weekly or monthly close. The first record is always kept so
+     * the chart starts where the range does.
+     */
+    public NavHistory downsample(int maxPoints) {
+        int n = days.length;
+        if (maxPoints < 2 || n <= maxPoints) {
+            return this;
+        }
+        Builder builder = new Builder(username, maxPoints);
+        builder.add(days[0], nav[0], cash[0], invested[0]);
+        int buckets = maxPoints - 1;
+        for (int b = 1; b <= buckets; b++) {
+            // Bucket b covers records (end of bucket b-1, end of bucket b]; ends are exact at b == buckets
+            int i = (int) ((long) (n - 1) * b / buckets);
+            builder.add(days[i], nav[i], cash[i], invested[i]);
+        }
+        return builder.build();
+    }
+
+    public static class Builder {
+        private final String username;
+        private int[] days;
+        private double[] nav;
+        private double[] cash;
+        private double[] invested;
+        private int size;
+
+        public Builder(String username) {
+            this(username, 64);
+        }
+
+        public Builder(String username, int expectedSize) {
+            int capacity = Math.max(1, expectedSize);
+            this.username = username;
+            this.days = new int[capacity];
+            this.nav = new double[capacity];
+            this.cash = new double[capacity];
+            this.invested = new double[capacity];
+        }
+
+        /** Days must be added in strictly increasing order. */
+        public Builder add(int epochDay, double navValue, double cashValue, double investedValue) {
+            if (size > 0 && epochDay <= days[size - 1]) {
+                throw new IllegalArgumentException("NAV days must be strictly increasing: " + epochDay);
+            }
+            if (size == days.length) {
+                int capacity = size * 2;
+                days = Arrays.copyOf(days, capacity);
+                nav = Arrays.copyOf(nav, capacity);
+                cash = Arrays.copyOf(cash, capacity);
+                invested = Arrays.copyOf(invested, capacity);
+            }
+            days[size] = epochDay;
+            nav[size] = navValue;
+            cash[size] = cashValue;
+            invested[size] = investedValue;
+            size++;
+            return this;
+        }
+
+        public NavHistory build() {
+            return new NavHistory(username, Arrays.copyOf(days, size), Arrays.copyOf(nav, size),
+                    Arrays.copyOf(cash, size), Arrays.copyOf(invested, size));
+        }
+    }
+}
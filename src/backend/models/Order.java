@@ -0,0 +1,104 @@
+package backend.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * A LIMIT order. While OPEN it rests in the in-memory order book and in the orders table;
+ * it leaves the book when it is FILLED, CANCELLED, EXPIRED or REJECTED.
+ */
+public class Order {
+    public static final String OPEN = "OPEN";
+    public static final String FILLED = "FILLED";
+    public static final String CANCELLED = "CANCELLED";
+    public static final String EXPIRED = "EXPIRED";
+    public static final String REJECTED = "REJECTED";
+
+    private long id;
+    private String username;
+    private String side; // "BUY" or "SELL"
+    private String symbol;
+    private String stockName;
+    private int quantity;
+    private double limitPrice;
+    private String duration;
+    private String status;
+    private String statusMessage;
+    private double fillPrice;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public Order() {}
+
+    public Order(String username, String side, String symbol, String stockName, int quantity,
+                 double limitPrice, String duration) {
+        this.username = username;
+        this.side = side;
+        this.symbol = symbol;
+        this.stockName = stockName;
+        this.quantity = quantity;
+        this.limitPrice = limitPrice;
+        this.duration = duration;
+        this.status = OPEN;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = createdAt;
+    }
+
+    // Getters and setters
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    public String getSide() { return side; }
+    public void setSide(String side) { this.side = side; }
+
+    public String getSymbol() { return symbol; }
+    public void setSymbol(String symbol) { this.symbol = symbol; }
+
+    public String getStockName() { return stockName; }
+    public void setStockName(String stockName) { this.stockName = stockName; }
+
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+
+    public double getLimitPrice() { return limitPrice; }
+    public void setLimitPrice(double limitPrice) { this.limitPrice = limitPrice; }
+
+    public String getDuration() { return duration; }
+    public void setDuration(String duration) { this.duration = duration; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getStatusMessage() { return statusMessage; }
+    public void setStatusMessage(String statusMessage) { this.statusMessage = statusMessage; }
+
+    public double getFillPrice() { return fillPrice; }
+    public void setFillPrice(double fillPrice) { this.fillPrice = fillPrice; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    public boolean isBuy() {
+        return "BUY".equals(side);
+    }
+
+    public boolean isOpen() {
+        return OPEN.equals(status);
+    }
+
+    // Limit prices are matched in whole cents
+    public long getLimitTicks() {
+        return Math.round(limitPrice * 100);
+    }
+
+    /** True if the order would execute against a market price. */
+    public boolean isMarketable(double marketPrice) {
+        long ticks = Math.round(marketPrice * 100);
+        return isBuy() ? ticks <= getLimitTicks() : ticks >= getLimitTicks();
+    }
+}
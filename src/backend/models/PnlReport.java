@@ -0,0 +1,152 @@
+package backend.models;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Realized and unrealized profit and loss for one account, by symbol. Built from the open
+ * lots, the realized totals and one price per symbol, never from the trade history, so
+ * the cost is proportional to open lots however many trades the account has made.
+ *
+ * The annual return is (realized + unrealized) over the cost of everything held or sold,
+ * compounded to a yearly rate over the cost-weighted holding period. Periods shorter than
+ * a year are reported as is rather than extrapolated, as performance reporting standards
+ * require.
+ */
+public class PnlReport {
+    private static final double DAYS_PER_YEAR = 365.25;
+
+    /** Figures for one symbol; a fully sold symbol has no lots but keeps its realized result. */
+    public static class Line {
+        private final String symbol;
+        private final List<TaxLot> lots;
+        private final double price;
+        private final int quantity;
+        private final double costBasis;
+        private final double unrealized;
+        private final double realized;
+
+        Line(String symbol, List<TaxLot> lots, double price, double realized) {
+            int shares = 0;
+            double cost = 0;
+            double gain = 0;
+            for (TaxLot lot : lots) {
+                shares += lot.getQuantity();
+                cost += lot.getCostBasis();
+                gain += lot.getUnrealizedGain(price);
+            }
+            this.symbol = symbol;
+            this.lots = Collections.unmodifiableList(lots);
+            this.price = price;
+            this.quantity = shares;
+            this.costBasis = cost;
+            this.unrealized = lots.isEmpty() ? 0 : gain;
+            this.realized = realized;
+        }
+
+        public String getSymbol() { return symbol; }
+        public List<TaxLot> getLots() { return lots; }
+        public double getPrice() { return price; }
+        public int getQuantity() { return quantity; }
+        public double getCostBasis() { return costBasis; }
+        public double getMarketValue() { return quantity * price; }
+        public double getUnrealized() { return unrealized; }
+        public double getRealized() { return realized; }
+    }
+
+    private final String username;
+    private final LotMethod method;
+    private final List<Line> lines;
+    private final double totalRealized;
+    private final double totalUnrealized;
+    private final double holdingDays;
+    private final double annualReturn;
+
+    private PnlReport(String username, LotMethod method, List<Line> lines, double realizedCost,
+                      double realizedCostDays, LocalDateTime asOf) {
+        double realized = 0;
+        double unrealized = 0;
+        double openCost = 0;
+        double openCostDays = 0;
+        for (Line line : lines) {
+            realized += line.realized;
+            unrealized += line.unrealized;
+            for (TaxLot lot : line.lots) {
+                openCost += lot.getCostBasis();
+                openCostDays += lot.getCostBasis() * TaxLot.daysHeld(lot.getOpenedAt(), asOf);
+            }
+        }
+        this.username = username;
+        this.method = method;
+        this.lines = Collections.unmodifiableList(lines);
+        this.totalRealized = realized;
+        this.totalUnrealized = unrealized;
+
+        double capital = openCost + realizedCost;
+        if (capital > 0) {
+            double growth = Math.max(0, 1 + (realized + unrealized) / capital);
+            this.holdingDays = (openCostDays + realizedCostDays) / capital;
+            this.annualReturn = holdingDays >= DAYS_PER_YEAR
+                    ? (Math.pow(growth, DAYS_PER_YEAR / holdingDays) - 1) * 100
+                    : (growth - 1) * 100;
+        } else {
+            this.holdingDays = 0;
+            this.annualReturn = 0;
+        }
+    }
+
+    /**
+     * @param lots     open lots ordered by symbol, then lot id
+     * @param prices   current price per symbol; symbols without one are valued at cost
+     * @param realized realized gain per symbol
+     * @param realizedCost     cost of all shares sold
+     * @param realizedCostDays that cost times the days each share was held
+     * @param asOf             valuation time, for the age of the open lots
+     */
+    public static PnlReport of(String username, LotMethod method, List<TaxLot> lots, Map<String, Double> prices,
+                               Map<String, Double> realized, double realizedCost, double realizedCostDays,
+                               LocalDateTime asOf) {
+        Map<String, List<TaxLot>> bySymbol = new LinkedHashMap<>();
+        for (TaxLot lot : lots) {
+            bySymbol.computeIfAbsent(lot.getSymbol(), s -> new ArrayList<>()).add(lot);
+        }
+        TreeSet<String> symbols = new TreeSet<>(bySymbol.keySet());
+        symbols.addAll(realized.keySet());
+
+        List<Line> lines = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            List<TaxLot> symbolLots = bySymbol.getOrDefault(symbol, new ArrayList<>());
+            Double price = prices.get(symbol);
+            if (price == null) {
+                price = averageCost(symbolLots);
+            }
+            lines.add(new Line(symbol, symbolLots, price, realized.getOrDefault(symbol, 0.0)));
+        }
+        return new PnlReport(username, method, lines, realizedCost, realizedCostDays, asOf);
+    }
+
+    private static double averageCost(List<TaxLot> lots) {
+        int shares = 0;
+        double cost = 0;
+        for (TaxLot lot : lots) {
+            shares += lot.getQuantity();
+            cost += lot.getCostBasis();
+        }
+        return shares > 0 ? cost / shares : 0;
+    }
+
+    public String getUsername() { return username; }
+    public LotMethod getMethod() { return method; }
+    public List<Line> getLines() { return lines; }
+    public double getTotalRealized() { return totalRealized; }
+    public double getTotalUnrealized() { return totalUnrealized; }
+    // Cost-weighted average days the money behind the P&L has been invested
+    public double getHoldingDays() { return holdingDays; }
+    // Percent; 0 when nothing has been bought
+    public double getAnnualReturn() { return annualReturn; }
+}
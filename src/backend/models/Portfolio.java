@@ -11,6 +11,7 @@ public class Portfolio {
     private double purchasePrice;
     private double currentPrice;
     private LocalDateTime purchaseDate;
+    private boolean priceStale;
 
     public Portfolio() {}
 
@@ -50,6 +51,10 @@ public class Portfolio {
     public LocalDateTime getPurchaseDate() { return purchaseDate; }
     public void setPurchaseDate(LocalDateTime purchaseDate) { this.purchaseDate = purchaseDate; }
 
+    // True when currentPrice is not a fresh quote (last known or stored price)
+    public boolean isPriceStale() { return priceStale; }
+    public void setPriceStale(boolean priceStale) { this.priceStale = priceStale; }
+
     // Business logic methods
     public double getTotalValue() {
         return quantity * currentPrice;
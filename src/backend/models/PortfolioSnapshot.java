@@ -0,0 +1,89 @@
+package backend.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A user's holdings valued once against one set of prices. Everything derived from them
+ * (market value, cost basis, gain/loss, weights, returns) is computed in a single pass
+ * at construction, so every figure in a response agrees with every other.
+ */
+public class PortfolioSnapshot {
+    private final String username;
+    private final List<Portfolio> holdings;
+    private final double[] marketValues;
+    private final double[] costBases;
+    private final double[] gainLosses;
+    private final double[] weights;
+    private final double[] returnPercents;
+    private final double totalValue;
+    private final double totalCost;
+    private final double totalGainLoss;
+    private final double totalInvestment;
+    private final boolean anyPriceStale;
+
+    private PortfolioSnapshot(String username, List<Portfolio> holdings, double totalInvestment) {
+        int n = holdings.size();
+        this.username = username;
+        this.holdings = Collections.unmodifiableList(holdings);
+        this.totalInvestment = totalInvestment;
+        this.marketValues = new double[n];
+        this.costBases = new double[n];
+        this.gainLosses = new double[n];
+        this.weights = new double[n];
+        this.returnPercents = new double[n];
+
+        double value = 0;
+        double cost = 0;
+        boolean stale = false;
+        for (int i = 0; i < n; i++) {
+            Portfolio item = holdings.get(i);
+            double marketValue = item.getQuantity() * item.getCurrentPrice();
+            double costBasis = item.getQuantity() * item.getPurchasePrice();
+            marketValues[i] = marketValue;
+            costBases[i] = costBasis;
+            gainLosses[i] = marketValue - costBasis;
+            returnPercents[i] = costBasis > 0 ? (marketValue - costBasis) / costBasis * 100 : 0;
+            value += marketValue;
+            cost += costBasis;
+            stale |= item.isPriceStale();
+        }
+        for (int i = 0; i < n; i++) {
+            weights[i] = value > 0 ? marketValues[i] / value : 0;
+        }
+
+        this.totalValue = value;
+        this.totalCost = cost;
+        this.totalGainLoss = value - cost;
+        this.anyPriceStale = stale;
+    }
+
+    /**
+     * @param holdings        holdings with current prices already applied
+     * @param totalInvestment sum of all BUY transactions
+     */
+    public static PortfolioSnapshot of(String username, List<Portfolio> holdings, double totalInvestment) {
+        return new PortfolioSnapshot(username, holdings, totalInvestment);
+    }
+
+    public String getUsername() { return username; }
+    public List<Portfolio> getHoldings() { return holdings; }
+    public int getHoldingsCount() { return holdings.size(); }
+
+    public double getMarketValue(int i) { return marketValues[i]; }
+    public double getCostBasis(int i) { return costBases[i]; }
+    public double getGainLoss(int i) { return gainLosses[i]; }
+    // Fraction of total market value, 0..1
+    public double getWeight(int i) { return weights[i]; }
+    public double getReturnPercent(int i) { return returnPercents[i]; }
+
+    public double getTotalValue() { return totalValue; }
+    public double getTotalCost() { return totalCost; }
+    public double getTotalGainLoss() { return totalGainLoss; }
+    public double getTotalInvestment() { return totalInvestment; }
+    public boolean isAnyPriceStale() { return anyPriceStale; }
+
+    public double getTotalReturnPercent() {
+        return totalCost > 0 ? totalGainLoss / totalCost * 100 : 0;
+    }
+}
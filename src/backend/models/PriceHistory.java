@@ -0,0 +1,145 @@
+package backend.models;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Daily OHLCV bars for one symbol, oldest first, stored as parallel primitive arrays so
+ * range scans and indicator math never box. Dates are epoch days (LocalDate.toEpochDay).
+ * Instances are immutable; use {@link Builder} to assemble one.
+ */
+public class PriceHistory {
+    private final String symbol;
+    private final int[] epochDays;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final long[] volume;
+    private final int size;
+
+    private PriceHistory(String symbol, int[] epochDays, double[] open, double[] high, double[] low,
+                         double[] close, long[] volume, int size) {
+        this.symbol = symbol;
+        this.epochDays = epochDays;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.size = size;
+    }
+
+    public static PriceHistory empty(String symbol) {
+        return new Builder(symbol, 0).build();
+    }
+
+    public String getSymbol() { return symbol; }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public int getEpochDay(int i) { return epochDays[i]; }
+    public LocalDate getDate(int i) { return LocalDate.ofEpochDay(epochDays[i]); }
+    public double getOpen(int i) { return open[i]; }
+    public double getHigh(int i) { return high[i]; }
+    public double getLow(int i) { return low[i]; }
+    public double getClose(int i) { return close[i]; }
+    public long getVolume(int i) { return volume[i]; }
+
+    public int getFirstEpochDay() { return size > 0 ? epochDays[0] : Integer.MIN_VALUE; }
+    public int getLastEpochDay() { return size > 0 ? epochDays[size - 1] : Integer.MIN_VALUE; }
+
+    /** Copy of the closing prices, oldest first. */
+    public double[] closes() {
+        return Arrays.copyOf(close, size);
+    }
+
+    /** Copy of the last {@code count} closing prices (or fewer if the history is shorter). */
+    public double[] lastCloses(int count) {
+        int from = Math.max(0, size - count);
+        return Arrays.copyOfRange(close, from, size);
+    }
+
+    /** Index of the first bar on or after the given epoch day, or size() if none. */
+    public int indexOnOrAfter(int epochDay) {
+        int index = Arrays.binarySearch(epochDays, 0, size, epochDay);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /** Bars with fromEpochDay <= date <= toEpochDay. */
+    public PriceHistory range(int fromEpochDay, int toEpochDay) {
+        int from = indexOnOrAfter(fromEpochDay);
+        int to = indexOnOrAfter(toEpochDay + 1);
+        if (to <= from) {
+            return empty(symbol);
+        }
+        return new PriceHistory(symbol,
+                Arrays.copyOfRange(epochDays, from, to),
+                Arrays.copyOfRange(open, from, to),
+                Arrays.copyOfRange(high, from, to),
+                Arrays.copyOfRange(low, from, to),
+                Arrays.copyOfRange(close, from, to),
+                Arrays.copyOfRange(volume, from, to),
+                to - from);
+    }
+
+    public static class Builder {
+        private final String symbol;
+        private int[] epochDays;
+        private double[] open;
+        private double[] high;
+        private double[] low;
+        private double[] close;
+        private long[] volume;
+        private int size;
+
+        public Builder(String symbol) {
+            this(symbol, 256);
+        }
+
+        public Builder(String symbol, int expectedSize) {
+            int capacity = Math.max(1, expectedSize);
+            this.symbol = symbol;
+            this.epochDays = new int[capacity];
+            this.open = new double[capacity];
+            this.high = new double[capacity];
+            this.low = new double[capacity];
+            this.close = new double[capacity];
+            this.volume = new long[capacity];
+        }
+
+        /** Appends a bar; bars must be added in strictly increasing date order. */
+        public Builder add(int epochDay, double o, double h, double l, double c, long v) {
+            if (size > 0 && epochDay <= epochDays[size - 1]) {
+                throw new IllegalArgumentException("Bars must be appended in date order: " + LocalDate.ofEpochDay(epochDay));
+            }
+            if (size == epochDays.length) {
+                int capacity = size * 2;
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                open = Arrays.copyOf(open, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                close = Arrays.copyOf(close, capacity);
+                volume = Arrays.copyOf(volume, capacity);
+            }
+            epochDays[size] = epochDay;
+            open[size] = o;
+            high[size] = h;
+            low[size] = l;
+            close[size] = c;
+            volume[size] = v;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public PriceHistory build() {
+            return new PriceHistory(symbol,
+                    Arrays.copyOf(epochDays, size), Arrays.copyOf(open, size), Arrays.copyOf(high, size),
+                    Arrays.copyOf(low, size), Arrays.copyOf(close, size), Arrays.copyOf(volume, size), size);
+        }
+    }
+}
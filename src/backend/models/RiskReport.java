@@ -0,0 +1,81 @@
+package backend.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Risk figures for one portfolio over a window of daily returns. Per-holding arrays are
+ * indexed like {@link #getSymbols()}; volatilities are annualized, VaR figures are one-day
+ * losses in currency (positive = loss) on the valued holdings.
+ */
+public class RiskReport {
+    private final String username;
+    private final String benchmark;
+    private final int observations;
+    private final String[] symbols;
+    private final double[] weights;
+    private final double[] volatility;
+    private final double[] beta;
+    private final double[][] correlation;
+    private final double portfolioValue;
+    private final double portfolioVolatility;
+    private final double portfolioBeta;
+    private final double historicalVar95;
+    private final double historicalVar99;
+    private final double parametricVar95;
+    private final double parametricVar99;
+    private final List<String> excluded;
+
+    public RiskReport(String username, String benchmark, int observations, String[] symbols, double[] weights,
+                      double[] volatility, double[] beta, double[][] correlation, double portfolioValue,
+                      double portfolioVolatility, double portfolioBeta, double historicalVar95, double historicalVar99,
+                      double parametricVar95, double parametricVar99, List<String> excluded) {
+        this.username = username;
+        this.benchmark = benchmark;
+        this.observations = observations;
+        this.symbols = symbols;
+        this.weights = weights;
+        this.volatility = volatility;
+        this.beta = beta;
+        this.correlation = correlation;
+        this.portfolioValue = portfolioValue;
+        this.portfolioVolatility = portfolioVolatility;
+        this.portfolioBeta = portfolioBeta;
+        this.historicalVar95 = historicalVar95;
+        this.historicalVar99 = historicalVar99;
+        this.parametricVar95 = parametricVar95;
+        this.parametricVar99 = parametricVar99;
+        this.excluded = Collections.unmodifiableList(excluded);
+    }
+
+    /** A report for a portfolio with nothing to analyze. */
+    public static RiskReport empty(String username, String benchmark, List<String> excluded) {
+        return new RiskReport(username, benchmark, 0, new String[0], new double[0], new double[0], new double[0],
+                new double[0][0], 0, 0, Double.NaN, 0, 0, 0, 0, excluded);
+    }
+
+    public String getUsername() { return username; }
+    public String getBenchmark() { return benchmark; }
+    // Daily returns in the window shared by every analyzed symbol
+    public int getObservations() { return observations; }
+    public int size() { return symbols.length; }
+
+    public String[] getSymbols() { return symbols; }
+    public String getSymbol(int i) { return symbols[i]; }
+    public double getWeight(int i) { return weights[i]; }
+    public double getVolatility(int i) { return volatility[i]; }
+    // NaN when the benchmark has no usable history
+    public double getBeta(int i) { return beta[i]; }
+    public double getCorrelation(int i, int j) { return correlation[i][j]; }
+
+    public double getPortfolioValue() { return portfolioValue; }
+    public double getPortfolioVolatility() { return portfolioVolatility; }
+    public double getPortfolioBeta() { return portfolioBeta; }
+    public double getHistoricalVar95() { return historicalVar95; }
+    public double getHistoricalVar99() { return historicalVar99; }
+    public double getParametricVar95() { return parametricVar95; }
+    public double getParametricVar99() { return parametricVar99; }
+
+    // Holdings left out for lack of price history
+    public List<String> getExcluded() { return excluded; }
+}
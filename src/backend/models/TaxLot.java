@@ -0,0 +1,44 @@
+package backend.models;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Shares bought in one trade that are still held. A sale shrinks or removes lots, so only
+ * open lots are ever stored; realized results are kept as running totals per symbol.
+ */
+public class TaxLot {
+    private final long id;
+    private final String symbol;
+    private final LocalDateTime openedAt;
+    private final int quantity;
+    private final double costPerShare;
+
+    public TaxLot(long id, String symbol, LocalDateTime openedAt, int quantity, double costPerShare) {
+        this.id = id;
+        this.symbol = symbol;
+        this.openedAt = openedAt;
+        this.quantity = quantity;
+        this.costPerShare = costPerShare;
+    }
+
+    public long getId() { return id; }
+    public String getSymbol() { return symbol; }
+    public LocalDateTime getOpenedAt() { return openedAt; }
+    // Shares remaining in the lot
+    public int getQuantity() { return quantity; }
+    public double getCostPerShare() { return costPerShare; }
+
+    public double getCostBasis() {
+        return quantity * costPerShare;
+    }
+
+    public double getUnrealizedGain(double price) {
+        return quantity * (price - costPerShare);
+    }
+
+    /** Fractional days between two instants, never negative. */
+    public static double daysHeld(LocalDateTime from, LocalDateTime to) {
+        return Math.max(0, Duration.between(from, to).toMillis() / 86_400_000.0);
+    }
+}
@@ -0,0 +1,29 @@
+package backend.models;
+
+/**
+ * How long a LIMIT order stays working. IOC and FOK never rest: they execute on arrival or
+ * are cancelled. DAY orders expire at the session close; GTC orders rest until filled or
+ * cancelled, across restarts.
+ */
+public enum TimeInForce {
+    IOC,
+    FOK,
+    DAY,
+    GTC;
+
+    /** Parses a duration field; blank means DAY. Returns null if it is not recognised. */
+    public static TimeInForce parse(String duration) {
+        if (duration == null || duration.isBlank()) {
+            return DAY;
+        }
+        try {
+            return valueOf(duration.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public boolean isImmediate() {
+        return this == IOC || this == FOK;
+    }
+}
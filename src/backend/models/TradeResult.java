@@ -0,0 +1,67 @@
+package backend.models;
+
+/**
+ * Outcome of an atomically applied trade. On success it carries the account and
+ * position state as of the commit, so callers don't need to read them back.
+ */
+public class TradeResult {
+    private final boolean success;
+    private final boolean indeterminate;
+    private final String message;
+    private final double balance;
+    private final String email;
+    private final int positionId;
+    private final int positionQuantity;
+    private final double averagePrice;
+    private final double totalAmount;
+    private final double realizedGain;
+
+    private TradeResult(boolean success, boolean indeterminate, String message, double balance, String email,
+                        int positionId, int positionQuantity, double averagePrice, double totalAmount,
+                        double realizedGain) {
+        this.success = success;
+        this.indeterminate = indeterminate;
+        this.message = message;
+        this.balance = balance;
+        this.email = email;
+        this.positionId = positionId;
+        this.positionQuantity = positionQuantity;
+        this.averagePrice = averagePrice;
+        this.totalAmount = totalAmount;
+        this.realizedGain = realizedGain;
+    }
+
+    public static TradeResult executed(String message, double balance, String email, int positionId,
+                                       int positionQuantity, double averagePrice, double totalAmount,
+                                       double realizedGain) {
+        return new TradeResult(true, false, message, balance, email, positionId, positionQuantity, averagePrice, totalAmount,
+                realizedGain);
+    }
+
+    public static TradeResult rejected(String message) {
+        return new TradeResult(false, false, message, 0, null, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * The trade may or may not survive a crash (it committed, but its durability record
+     * did not reach disk). Not a success: callers must not acknowledge it, and any cached
+     * account state has to be reloaded.
+     */
+    public static TradeResult indeterminate(String message) {
+        return new TradeResult(false, true, message, 0, null, 0, 0, 0, 0, 0);
+    }
+
+    public boolean isSuccess() { return success; }
+    public boolean isIndeterminate() { return indeterminate; }
+    public String getMessage() { return message; }
+    public double getBalance() { return balance; }
+    public String getEmail() { return email; }
+    // Portfolio row id of the position; 0 when a sell closed it
+    public int getPositionId() { return positionId; }
+    // Shares held after the trade; 0 when a sell closed the position
+    public int getPositionQuantity() { return positionQuantity; }
+    public double getAveragePrice() { return averagePrice; }
+    public double getTotalAmount() { return totalAmount; }
+    // Gain realized by a sale against the lots it closed; 0 for buys
+    public double getRealizedGain() { return realizedGain; }
+}
@@ -0,0 +1,60 @@
+package backend.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a user's transactions, newest first. The cursor names the last row of the
+ * page by its (transaction_date, id) key; the next page starts strictly after it, so a
+ * page costs the same however deep into the history it is.
+ */
+public class TransactionPage {
+    private final List<Transaction> transactions;
+    private final String nextCursor;
+
+    public TransactionPage(List<Transaction> transactions, String nextCursor) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transaction> getTransactions() { return transactions; }
+    // Null on the last page
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != null; }
+
+    /** Decoded cursor position: rows before this key come next. */
+    public static class Cursor {
+        private final String transactionDate;
+        private final long id;
+
+        public Cursor(String transactionDate, long id) {
+            this.transactionDate = transactionDate;
+            this.id = id;
+        }
+
+        public String getTransactionDate() { return transactionDate; }
+        public long getId() { return id; }
+
+        // Opaque to clients: base64url of "date|id"
+        public String encode() {
+            String raw = transactionDate + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** Throws IllegalArgumentException if the cursor was not produced by {@link #encode()}. */
+        public static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int bar = raw.lastIndexOf('|');
+                if (bar <= 0) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                return new Cursor(raw.substring(0, bar), Long.parseLong(raw.substring(bar + 1)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
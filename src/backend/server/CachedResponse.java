@@ -0,0 +1,120 @@
+package backend.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An immutable, pre-serialized JSON response with a gzipped variant and strong ETags.
+ * Serving it is a header check plus a memory copy: conditional requests get 304 and
+ * clients that accept gzip get the compressed bytes.
+ */
+public final class CachedResponse {
+    private final byte[] body;
+    private final byte[] gzipped;
+    private final String etag;
+    private final String gzipEtag;
+
+    private CachedResponse(byte[] body, byte[] gzipped, String hash) {
+        this.body = body;
+        this.gzipped = gzipped;
+        // Strong ETags are per representation, so the gzipped bytes get their own tag
+        this.etag = "\"" + hash + "\"";
+        this.gzipEtag = "\"" + hash + "-gz\"";
+    }
+
+    public static CachedResponse of(byte[] body) {
+        byte[] gzipped = gzip(body);
+        return new CachedResponse(body, gzipped.length < body.length ? gzipped : null, hash(body));
+    }
+
+    public void send(HttpExchange exchange) throws IOException {
+        try {
+            Headers request = exchange.getRequestHeaders();
+            boolean useGzip = gzipped != null && acceptsGzip(request.getFirst("Accept-Encoding"));
+            String tag = useGzip ? gzipEtag : etag;
+
+            Headers response = exchange.getResponseHeaders();
+            response.set("ETag", tag);
+            response.set("Cache-Control", "no-cache");
+            response.set("Vary", "Accept-Encoding");
+
+            if (matches(request.getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            byte[] payload = useGzip ? gzipped : body;
+            response.set("Content-Type", "application/json; charset=UTF-8");
+            if (useGzip) {
+                response.set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, payload.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(payload);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public String getEtag() { return etag; }
+    public int getSize() { return body.length; }
+    public int getGzippedSize() { return gzipped != null ? gzipped.length : body.length; }
+
+    // Either representation's tag counts as a match, since both carry the same content
+    private boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (tokens[0].trim().equalsIgnoreCase("gzip")) {
+                return tokens.length < 2 || !tokens[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to gzip response", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error: SHA-256 algorithm not found.", e);
+        }
+    }
+}
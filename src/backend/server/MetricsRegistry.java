@@ -0,0 +1,125 @@
+package backend.server;
+
+import com.sun.net.httpserver.HttpHandler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-context request metrics for the embedded HttpServer: latency histogram,
+ * status-code counters and an in-flight gauge, exported in Prometheus text format.
+ * All recording paths are lock-free.
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> counters = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface Gauge {
+        double value();
+    }
+
+    /** Wraps a handler so every exchange on the given context is recorded. */
+    public HttpHandler instrument(String context, HttpHandler handler) {
+        EndpointMetrics metrics = endpoint(context);
+        return exchange -> {
+            long start = System.nanoTime();
+            metrics.inFlight.incrementAndGet();
+            try {
+                handler.handle(exchange);
+            } finally {
+                metrics.inFlight.decrementAndGet();
+                metrics.latency.recordNanos(System.nanoTime() - start);
+                metrics.recordStatus(exchange.getResponseCode());
+            }
+        };
+    }
+
+    /** Registers a process-wide gauge exported under the given metric name. */
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /** Registers a process-wide monotonically increasing counter. */
+    public void registerCounter(String name, Gauge counter) {
+        counters.put(name, counter);
+    }
+
+    public EndpointMetrics endpoint(String context) {
+        return endpoints.computeIfAbsent(context, c -> new EndpointMetrics());
+    }
+
+    public String toPrometheusText() {
+        Map<String, EndpointMetrics> sorted = new TreeMap<>(endpoints);
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP http_request_duration_seconds Request latency per context\n");
+        out.append("# TYPE http_request_duration_seconds summary\n");
+        for (Map.Entry<String, EndpointMetrics> entry : sorted.entrySet()) {
+            String context = entry.getKey();
+            LatencyHistogram latency = entry.getValue().latency;
+            for (double quantile : QUANTILES) {
+                out.append("http_request_duration_seconds{context=\"").append(context)
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(latency.percentile(quantile) / 1_000_000.0).append('\n');
+            }
+            out.append("http_request_duration_seconds_sum{context=\"").append(context).append("\"} ")
+                    .append(latency.getSumMicros() / 1_000_000.0).append('\n');
+            out.append("http_request_duration_seconds_count{context=\"").append(context).append("\"} ")
+                    .append(latency.getCount()).append('\n');
+        }
+
+        out.append("# HELP http_requests_total Completed requests per context and status code\n");
+        out.append("# TYPE http_requests_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry : sorted.entrySet()) {
+            AtomicLongArray statusCounts = entry.getValue().statusCounts;
+            for (int status = 0; status < statusCounts.length(); status++) {
+                long count = statusCounts.get(status);
+                if (count > 0) {
+                    out.append("http_requests_total{context=\"").append(entry.getKey())
+                            .append("\",status=\"").append(status == 0 ? "none" : String.valueOf(status))
+                            .append("\"} ").append(count).append('\n');
+                }
+            }
+        }
+
+        out.append("# HELP http_requests_in_flight Requests currently being handled per context\n");
+        out.append("# TYPE http_requests_in_flight gauge\n");
+        for (Map.Entry<String, EndpointMetrics> entry : sorted.entrySet()) {
+            out.append("http_requests_in_flight{context=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().inFlight.get()).append('\n');
+        }
+
+        appendSamples(out, "gauge", gauges);
+        appendSamples(out, "counter", counters);
+        return out.toString();
+    }
+
+    private static void appendSamples(StringBuilder out, String type, Map<String, Gauge> samples) {
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(samples).entrySet()) {
+            out.append("# TYPE ").append(entry.getKey()).append(' ').append(type).append('\n');
+            out.append(entry.getKey()).append(' ').append(entry.getValue().value()).append('\n');
+        }
+    }
+
+    public static class EndpointMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // Index 0 counts exchanges that finished without a response code being sent
+        private final AtomicLongArray statusCounts = new AtomicLongArray(600);
+
+        void recordStatus(int status) {
+            statusCounts.incrementAndGet(status >= 100 && status < 600 ? status : 0);
+        }
+
+        public LatencyHistogram getLatency() { return latency; }
+        public int getInFlight() { return inFlight.get(); }
+        public long getStatusCount(int status) { return statusCounts.get(status); }
+    }
+}
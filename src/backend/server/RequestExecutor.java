@@ -0,0 +1,158 @@
+package backend.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for the embedded HttpServer. Requests run either on a virtual thread each
+ * or on a fixed platform pool, and at most {@code maxInFlight} requests are admitted
+ * (running plus queued). Anything beyond that is answered with 503 and Retry-After by
+ * the {@link #admissionFilter()} instead of waiting behind the backlog.
+ */
+public class RequestExecutor implements Executor {
+
+    public enum Mode { VIRTUAL, PLATFORM }
+
+    private static final byte[] BUSY_BODY =
+            "{\"success\":false,\"error\":\"Server busy, please retry\"}".getBytes(StandardCharsets.UTF_8);
+
+    // Set on the thread that runs a task which was over capacity when it was submitted
+    private static final ThreadLocal<Boolean> SHED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final Mode mode;
+    private final int threads;
+    private final int maxInFlight;
+    private final int retryAfterSeconds;
+    private final ExecutorService workers;
+    private final ExecutorService rejector;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public RequestExecutor(Mode mode, int threads, int maxInFlight, int retryAfterSeconds) {
+        this.mode = mode;
+        this.threads = Math.max(1, threads);
+        this.maxInFlight = Math.max(this.threads, maxInFlight);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+        if (mode == Mode.VIRTUAL) {
+            this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-vt-", 0).factory());
+        } else {
+            this.workers = Executors.newFixedThreadPool(this.threads, Thread.ofPlatform().name("http-worker-", 0).daemon(true).factory());
+        }
+        // Rejections get their own threads so a 503 never waits behind the queue it is shedding
+        this.rejector = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-reject-", 0).factory());
+    }
+
+    /**
+     * Reads SERVER_EXECUTOR (virtual|platform), SERVER_THREADS, SERVER_MAX_IN_FLIGHT and
+     * SERVER_RETRY_AFTER from the environment, falling back to sensible defaults.
+     */
+    public static RequestExecutor fromEnvironment() {
+        String modeValue = System.getenv("SERVER_EXECUTOR");
+        Mode mode = "platform".equalsIgnoreCase(modeValue) ? Mode.PLATFORM : Mode.VIRTUAL;
+        int threads = intFromEnv("SERVER_THREADS", Runtime.getRuntime().availableProcessors() * 4);
+        int maxInFlight = intFromEnv("SERVER_MAX_IN_FLIGHT", 1024);
+        int retryAfter = intFromEnv("SERVER_RETRY_AFTER", 1);
+        return new RequestExecutor(mode, threads, maxInFlight, retryAfter);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        boolean admitted = inFlight.incrementAndGet() <= maxInFlight;
+        Runnable wrapped = () -> {
+            SHED.set(!admitted);
+            try {
+                task.run();
+            } finally {
+                SHED.remove();
+                inFlight.decrementAndGet();
+            }
+        };
+        if (admitted) {
+            workers.execute(wrapped);
+        } else {
+            rejected.increment();
+            rejector.execute(wrapped);
+        }
+    }
+
+    /**
+     * Filter to add to every context. Requests that were over capacity when submitted
+     * are answered with 503 here and never reach the handler.
+     */
+    public Filter admissionFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (!SHED.get()) {
+                    chain.doFilter(exchange);
+                    return;
+                }
+                try {
+                    exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                    exchange.sendResponseHeaders(503, BUSY_BODY.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(BUSY_BODY);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Rejects requests with 503 when the server is over capacity";
+            }
+        };
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        rejector.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Mode getMode() { return mode; }
+    public int getThreads() { return threads; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public int getInFlight() { return inFlight.get(); }
+    public long getRejectedCount() { return rejected.sum(); }
+
+    @Override
+    public String toString() {
+        return mode == Mode.VIRTUAL
+                ? String.format("virtual threads, max %d in flight", maxInFlight)
+                : String.format("%d platform threads, max %d in flight", threads, maxInFlight);
+    }
+
+    private static int intFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println(" Invalid " + name + " value '" + value + "', using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
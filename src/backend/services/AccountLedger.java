@@ -0,0 +1,188 @@
+package backend.services;
+
+import backend.database.DatabaseHandler;
+import backend.models.Portfolio;
+import backend.models.TradeResult;
+import backend.models.Transaction;
+import backend.models.User;
+import backend.util.StripedLocks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cash, positions and lifetime investment per account. An account is loaded
+ * from SQLite the first time it is touched; after that every committed trade is applied
+ * to it, so pre-trade checks and portfolio reads need no SQL. Writes still go to SQLite
+ * first (write-through): the ledger only changes after the trade has committed, and it
+ * takes its numbers from the committed result.
+ *
+ * Each account is an immutable {@link Account} swapped on update, so readers never lock.
+ * Loads and updates for an account run under its stripe in the shared account locks,
+ * which is what keeps a load from racing a trade. Balance or position changes made
+ * outside {@link PortfolioService} must call {@link #invalidate}.
+ */
+public class AccountLedger {
+
+    /** A position as of the last committed trade. */
+    public static final class Position {
+        private final int id;
+        private final String symbol;
+        private final String stockName;
+        private final int quantity;
+        private final double averagePrice;
+        private final double lastPrice;
+        private final LocalDateTime openedAt;
+
+        Position(int id, String symbol, String stockName, int quantity, double averagePrice,
+                 double lastPrice, LocalDateTime openedAt) {
+            this.id = id;
+            this.symbol = symbol;
+            this.stockName = stockName;
+            this.quantity = quantity;
+            this.averagePrice = averagePrice;
+            this.lastPrice = lastPrice;
+            this.openedAt = openedAt;
+        }
+
+        public String getSymbol() { return symbol; }
+        public int getQuantity() { return quantity; }
+        public double getAveragePrice() { return averagePrice; }
+        public double getCostBasis() { return quantity * averagePrice; }
+    }
+
+    /** Immutable account state; replaced as a whole on every trade. */
+    public static final class Account {
+        private final String username;
+        private final String email;
+        private final double balance;
+        private final double totalInvestment;
+        private final Map<String, Position> positions;
+
+        Account(String username, String email, double balance, double totalInvestment, Map<String, Position> positions) {
+            this.username = username;
+            this.email = email;
+            this.balance = balance;
+            this.totalInvestment = totalInvestment;
+            this.positions = Collections.unmodifiableMap(positions);
+        }
+
+        public String getUsername() { return username; }
+        public String getEmail() { return email; }
+        public double getBalance() { return balance; }
+        // Sum of all BUY amounts, as getTotalInvestment computes it in SQL
+        public double getTotalInvestment() { return totalInvestment; }
+
+        public int getQuantity(String symbol) {
+            Position position = positions.get(symbol);
+            return position != null ? position.quantity : 0;
+        }
+
+        public double getTotalCost() {
+            double cost = 0;
+            for (Position position : positions.values()) {
+                cost += position.getCostBasis();
+            }
+            return cost;
+        }
+
+        public Map<String, Position> getPositions() { return positions; }
+
+        /** Fresh, mutable portfolio rows in symbol order, priced at the last trade price. */
+        public List<Portfolio> toPortfolio() {
+            List<Portfolio> items = new ArrayList<>(positions.size());
+            for (Position position : positions.values()) {
+                Portfolio item = new Portfolio(username, position.symbol, position.stockName, position.quantity,
+                        position.averagePrice, position.lastPrice);
+                item.setId(position.id);
+                item.setPurchaseDate(position.openedAt);
+                items.add(item);
+            }
+            return items;
+        }
+    }
+
+    private final DatabaseHandler dbHandler;
+    private final StripedLocks accountLocks;
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    public AccountLedger(DatabaseHandler dbHandler, StripedLocks accountLocks) {
+        this.dbHandler = dbHandler;
+        this.accountLocks = accountLocks;
+    }
+
+    /** The account, loading it on first use; null if the user does not exist. */
+    public Account get(String username) {
+        Account account = accounts.get(username);
+        if (account != null) {
+            hits.increment();
+            return account;
+        }
+        return accountLocks.withLock(username, () -> {
+            Account loaded = accounts.get(username);
+            if (loaded == null) {
+                loaded = load(username);
+                if (loaded != null) {
+                    accounts.put(username, loaded);
+                }
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Applies a committed trade. Balance, quantity and average price come from the
+     * result, which was read inside the trade's transaction. Callers hold the account's
+     * stripe lock.
+     */
+    public void apply(Transaction trade, TradeResult result) {
+        Account current = accounts.get(trade.getUsername());
+        if (current == null || !result.isSuccess()) {
+            return;
+        }
+        boolean buy = "BUY".equals(trade.getType());
+        Map<String, Position> positions = new TreeMap<>(current.positions);
+        if (result.getPositionQuantity() > 0) {
+            Position previous = positions.get(trade.getSymbol());
+            LocalDateTime openedAt = previous != null ? previous.openedAt : trade.getTransactionDate();
+            positions.put(trade.getSymbol(), new Position(result.getPositionId(), trade.getSymbol(), trade.getStockName(),
+                    result.getPositionQuantity(), result.getAveragePrice(), trade.getPrice(), openedAt));
+        } else {
+            positions.remove(trade.getSymbol());
+        }
+        double investment = current.totalInvestment + (buy ? trade.getTotalAmount() : 0);
+        accounts.put(trade.getUsername(), new Account(current.username, result.getEmail(), result.getBalance(),
+                investment, positions));
+    }
+
+    /** Drops the cached account so the next read reloads it from SQLite. */
+    public void invalidate(String username) {
+        accountLocks.withLock(username, () -> accounts.remove(username));
+    }
+
+    public int getAccountCount() { return accounts.size(); }
+    public long getHitCount() { return hits.sum(); }
+    public long getLoadCount() { return loads.sum(); }
+
+    private Account load(String username) {
+        User user = dbHandler.getUserByUsername(username);
+        if (user == null) {
+            return null;
+        }
+        loads.increment();
+        Map<String, Position> positions = new TreeMap<>();
+        for (Portfolio item : dbHandler.getPortfolioByUsername(username)) {
+            positions.put(item.getSymbol(), new Position(item.getId(), item.getSymbol(), item.getStockName(),
+                    item.getQuantity(), item.getPurchasePrice(), item.getCurrentPrice(), item.getPurchaseDate()));
+        }
+        return new Account(username, user.getEmail(), user.getBalance(), dbHandler.getTotalInvestment(username), positions);
+    }
+}
@@ -0,0 +1,136 @@
+package backend.services;
+
+import backend.models.PriceHistory;
+import backend.services.UpstreamScheduler.Priority;
+import backend.services.UpstreamScheduler.RateLimitedException;
+
+import org.json.JSONObject;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live AlphaVantage market data. Every call waits for quota on the shared
+ * {@link UpstreamScheduler} and goes through {@link UpstreamHttpClient}.
+ */
+public class AlphaVantageProvider implements MarketDataProvider {
+    private final String API_KEY = System.getenv("ALPHA_VANTAGE_API_KEY"); // Get from https://www.alphavantage.co/support/#api-key
+    private final String BASE_URL = "https://www.alphavantage.co/query";
+
+    private final UpstreamScheduler scheduler;
+
+    public AlphaVantageProvider(UpstreamScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Map<String, Object> getQuote(String symbol, Priority priority) {
+        try {
+            String urlString = String.format("%s?function=GLOBAL_QUOTE&symbol=%s&apikey=%s",
+                    BASE_URL, encode(symbol), API_KEY);
+
+            JSONObject jsonResponse = makeApiCall(urlString, priority);
+            JSONObject globalQuote = jsonResponse.getJSONObject("Global Quote");
+
+            return Map.of(
+                    "symbol", globalQuote.getString("01. symbol"),
+                    "name", getCompanyName(symbol),
+                    "exchange", "NYSE",
+                    "country", "United States",
+                    "currency", "USD",
+                    "mic", "XNYS",
+                    "price", globalQuote.getString("05. price"),
+                    "change", globalQuote.getString("09. change"),
+                    "changePercent", globalQuote.getString("10. change percent")
+            );
+        } catch (RateLimitedException e) {
+            // Callers answer 503 with Retry-After for this, so it must not be wrapped
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error fetching stock data: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> searchSymbols(String keywords) {
+        try {
+            String urlString = String.format("%s?function=SYMBOL_SEARCH&keywords=%s&apikey=%s",
+                    BASE_URL, encode(keywords), API_KEY);
+
+            JSONObject jsonResponse = makeApiCall(urlString, Priority.VALUATION);
+
+            return jsonResponse.toMap();
+        } catch (RateLimitedException e) {
+            // Callers answer 503 with Retry-After for this, so it must not be wrapped
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error searching stocks: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public PriceHistory getDailyHistory(String symbol, Priority priority) {
+        try {
+            String urlString = String.format("%s?function=TIME_SERIES_DAILY&symbol=%s&outputsize=full&apikey=%s",
+                    BASE_URL, encode(symbol), API_KEY);
+
+            JSONObject jsonResponse = makeApiCall(urlString, priority);
+            JSONObject series = jsonResponse.getJSONObject("Time Series (Daily)");
+
+            // The API returns newest first, keyed by ISO date
+            List<String> dates = new ArrayList<>(series.keySet());
+            Collections.sort(dates);
+
+            PriceHistory.Builder builder = new PriceHistory.Builder(symbol.trim().toUpperCase(), dates.size());
+            for (String date : dates) {
+                JSONObject bar = series.getJSONObject(date);
+                builder.add((int) LocalDate.parse(date).toEpochDay(),
+                        Double.parseDouble(bar.getString("1. open")),
+                        Double.parseDouble(bar.getString("2. high")),
+                        Double.parseDouble(bar.getString("3. low")),
+                        Double.parseDouble(bar.getString("4. close")),
+                        Long.parseLong(bar.getString("5. volume")));
+            }
+            return builder.build();
+        } catch (RateLimitedException e) {
+            // Callers answer 503 with Retry-After for this, so it must not be wrapped
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error fetching price history: " + e.getMessage());
+        }
+    }
+
+    public UpstreamScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Waits for rate-limit quota, then goes through the shared pooled client
+    private JSONObject makeApiCall(String urlString, Priority priority) {
+        scheduler.acquire(priority);
+        try {
+            return UpstreamHttpClient.getJson(urlString);
+        } catch (Exception e) {
+            throw new RuntimeException("API call failed: " + e.getMessage());
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private String getCompanyName(String symbol) {
+        Map<String, String> companyNames = Map.of(
+                "JPM", "JP Morgan Chase & Co",
+                "AAPL", "Apple Inc",
+                "GOOGL", "Alphabet Inc",
+                "MSFT", "Microsoft Corporation",
+                "TSLA", "Tesla Inc"
+        );
+        return companyNames.getOrDefault(symbol, symbol + " Company");
+    }
+}
@@ -1,88 +1,246 @@
 package backend.services;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Scanner;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.json.JSONObject;
-import org.json.JSONArray;
+import backend.models.PriceHistory;
+import backend.services.UpstreamScheduler.Priority;
 
 public class AlphaVantageService {
-    private final String API_KEY = System.getenv("ALPHA_VANTAGE_API_KEY"); // Get from https://www.alphavantage.co/support/#api-key
-    private final String BASE_URL = "https://www.alphavantage.co/query";
+    private static final Duration DEFAULT_QUOTE_TTL = Duration.ofSeconds(60);
+    private static final Duration DEFAULT_BATCH_DEADLINE = Duration.ofSeconds(8);
+
+    // Quote cache: fresh entries are served directly, concurrent misses share one upstream call
+    private final long quoteTtlNanos;
+    private final MarketDataProvider provider;
+    private final Map<String, CachedQuote> quoteCache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Map<String, Object>>> inFlightQuotes = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder coalescedRequests = new LongAdder();
+    private final List<QuoteListener> quoteListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService batchExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("quote-fetch-", 0).factory());
+
+    public AlphaVantageService() {
+        this(new AlphaVantageProvider(UpstreamScheduler.fromEnvironment()));
+    }
+
+    public AlphaVantageService(MarketDataProvider provider) {
+        this(quoteTtlFromEnv(), provider);
+    }
+
+    public AlphaVantageService(Duration quoteTtl, MarketDataProvider provider) {
+        this.quoteTtlNanos = quoteTtl.toNanos();
+        this.provider = provider;
+    }
 
     public Map<String, Object> getStockQuote(String symbol) {
+        return getStockQuote(symbol, Priority.VALUATION);
+    }
+
+    // The priority only matters on a cache miss, when this caller is the one going upstream
+    public Map<String, Object> getStockQuote(String symbol, Priority priority) {
+        String key = symbol.trim().toUpperCase();
+        CachedQuote cached = quoteCache.get(key);
+        if (cached != null && cached.isFresh(System.nanoTime())) {
+            cacheHits.increment();
+            return cached.quote;
+        }
+
+        CompletableFuture<Map<String, Object>> fetch = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> existing = inFlightQuotes.putIfAbsent(key, fetch);
+        if (existing != null) {
+            coalescedRequests.increment();
+            return awaitQuote(existing);
+        }
+
         try {
-            String urlString = String.format("%s?function=GLOBAL_QUOTE&symbol=%s&apikey=%s",
-                    BASE_URL, symbol, API_KEY);
-
-            String response = makeApiCall(urlString);
-            JSONObject jsonResponse = new JSONObject(response);
-            JSONObject globalQuote = jsonResponse.getJSONObject("Global Quote");
-
-            return Map.of(
-                    "symbol", globalQuote.getString("01. symbol"),
-                    "name", getCompanyName(symbol),
-                    "exchange", "NYSE",
-                    "country", "United States",
-                    "currency", "USD",
-                    "mic", "XNYS",
-                    "price", globalQuote.getString("05. price"),
-                    "change", globalQuote.getString("09. change"),
-                    "changePercent", globalQuote.getString("10. change percent")
-            );
-        } catch (Exception e) {
-            throw new RuntimeException("Error fetching stock data: " + e.getMessage());
+            // Another caller may have finished a fetch between our cache check and claiming the slot
+            cached = quoteCache.get(key);
+            if (cached != null && cached.isFresh(System.nanoTime())) {
+                cacheHits.increment();
+                fetch.complete(cached.quote);
+                return cached.quote;
+            }
+
+            cacheMisses.increment();
+            Map<String, Object> quote = provider.getQuote(symbol, priority);
+            quoteCache.put(key, new CachedQuote(quote, System.nanoTime() + quoteTtlNanos));
+            fetch.complete(quote);
+            notifyListeners(key, quote);
+            return quote;
+        } catch (RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightQuotes.remove(key, fetch);
         }
     }
 
-    public Map<String, Object> searchStocks(String keywords) {
+    /** Called on the fetching thread for every fresh upstream quote; listeners must not block. */
+    public interface QuoteListener {
+        void onQuote(String symbol, double price);
+    }
+
+    public void addQuoteListener(QuoteListener listener) {
+        quoteListeners.add(listener);
+    }
+
+    private void notifyListeners(String symbol, Map<String, Object> quote) {
+        if (quoteListeners.isEmpty()) {
+            return;
+        }
         try {
-            String urlString = String.format("%s?function=SYMBOL_SEARCH&keywords=%s&apikey=%s",
-                    BASE_URL, keywords, API_KEY);
+            double price = Double.parseDouble((String) quote.get("price"));
+            for (QuoteListener listener : quoteListeners) {
+                listener.onQuote(symbol, price);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Quote listener failed for " + symbol + ": " + e.getMessage());
+        }
+    }
+
+    public Map<String, QuoteResult> getQuotes(Collection<String> symbols) {
+        return getQuotes(symbols, Priority.VALUATION, DEFAULT_BATCH_DEADLINE);
+    }
 
-            String response = makeApiCall(urlString);
-            JSONObject jsonResponse = new JSONObject(response);
+    /**
+     * Fetches quotes for all symbols, going upstream concurrently for the ones not fresh in
+     * the cache. Whatever has not arrived by the deadline (or failed) falls back to the last
+     * known quote flagged as stale, or is returned with only an error. Never throws for a
+     * single symbol; the result has one entry per distinct symbol, in request order.
+     */
+    public Map<String, QuoteResult> getQuotes(Collection<String> symbols, Priority priority, Duration deadline) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        Map<String, QuoteResult> results = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Map<String, Object>>> pending = new LinkedHashMap<>();
+
+        for (String symbol : symbols) {
+            if (results.containsKey(symbol) || pending.containsKey(symbol)) {
+                continue;
+            }
+            CachedQuote cached = quoteCache.get(symbol.trim().toUpperCase());
+            if (cached != null && cached.isFresh(System.nanoTime())) {
+                cacheHits.increment();
+                results.put(symbol, new QuoteResult(symbol, cached.quote, false, null));
+            } else {
+                pending.put(symbol, CompletableFuture.supplyAsync(() -> getStockQuote(symbol, priority), batchExecutor));
+            }
+        }
 
-            return jsonResponse.toMap();
-        } catch (Exception e) {
-            throw new RuntimeException("Error searching stocks: " + e.getMessage());
+        for (Map.Entry<String, CompletableFuture<Map<String, Object>>> entry : pending.entrySet()) {
+            String symbol = entry.getKey();
+            try {
+                long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+                results.put(symbol, new QuoteResult(symbol, entry.getValue().get(remaining, TimeUnit.NANOSECONDS), false, null));
+            } catch (TimeoutException e) {
+                results.put(symbol, staleResult(symbol, "Timed out waiting for quote"));
+            } catch (ExecutionException e) {
+                results.put(symbol, staleResult(symbol, e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.put(symbol, staleResult(symbol, "Interrupted while waiting for quote"));
+            }
         }
+        return results;
+    }
+
+    private QuoteResult staleResult(String symbol, String error) {
+        CachedQuote last = quoteCache.get(symbol.trim().toUpperCase());
+        return new QuoteResult(symbol, last != null ? last.quote : null, true, error);
     }
 
-    private String makeApiCall(String urlString) {
+    public MarketDataProvider getProvider() { return provider; }
+    public long getCacheHits() { return cacheHits.sum(); }
+    public long getCacheMisses() { return cacheMisses.sum(); }
+    public long getCoalescedRequests() { return coalescedRequests.sum(); }
+
+    private Map<String, Object> awaitQuote(CompletableFuture<Map<String, Object>> fetch) {
         try {
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.connect();
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                throw new RuntimeException("HTTP Response Code: " + responseCode);
+            return fetch.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
+            throw new RuntimeException("Error fetching stock data: " + e.getCause().getMessage());
+        }
+    }
 
-            Scanner scanner = new Scanner(url.openStream());
-            StringBuilder response = new StringBuilder();
-            while (scanner.hasNext()) {
-                response.append(scanner.nextLine());
-            }
-            scanner.close();
-            return response.toString();
-        } catch (Exception e) {
-            throw new RuntimeException("API call failed: " + e.getMessage());
+    public Map<String, Object> searchStocks(String keywords) {
+        return provider.searchSymbols(keywords);
+    }
+
+    /** Daily bars straight from the provider; not cached here. */
+    public PriceHistory getDailyHistory(String symbol, Priority priority) {
+        return provider.getDailyHistory(symbol, priority);
+    }
+
+    private static Duration quoteTtlFromEnv() {
+        String value = System.getenv("QUOTE_CACHE_TTL_SECONDS");
+        if (value == null || value.isBlank()) {
+            return DEFAULT_QUOTE_TTL;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid QUOTE_CACHE_TTL_SECONDS '" + value + "', using " + DEFAULT_QUOTE_TTL.getSeconds() + "s");
+            return DEFAULT_QUOTE_TTL;
         }
     }
 
-    private String getCompanyName(String symbol) {
-        Map<String, String> companyNames = Map.of(
-                "JPM", "JP Morgan Chase & Co",
-                "AAPL", "Apple Inc",
-                "GOOGL", "Alphabet Inc",
-                "MSFT", "Microsoft Corporation",
-                "TSLA", "Tesla Inc"
-        );
-        return companyNames.getOrDefault(symbol, symbol + " Company");
+    public static class QuoteResult {
+        private final String symbol;
+        private final Map<String, Object> quote;
+        private final boolean stale;
+        private final String error;
+
+        public QuoteResult(String symbol, Map<String, Object> quote, boolean stale, String error) {
+            this.symbol = symbol;
+            this.quote = quote;
+            this.stale = stale;
+            this.error = error;
+        }
+
+        public String getSymbol() { return symbol; }
+        public Map<String, Object> getQuote() { return quote; }
+        public boolean isStale() { return stale; }
+        public String getError() { return error; }
+
+        public boolean hasPrice() {
+            return quote != null && quote.get("price") != null;
+        }
+
+        public double getPrice() {
+            return Double.parseDouble((String) quote.get("price"));
+        }
     }
-}
\ No newline at end of file
+
+    private static class CachedQuote {
+        final Map<String, Object> quote;
+        final long expiresAtNanos;
+
+        CachedQuote(Map<String, Object> quote, long expiresAtNanos) {
+            this.quote = quote;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isFresh(long nowNanos) {
+            return nowNanos - expiresAtNanos < 0;
+        }
+    }
+
+}
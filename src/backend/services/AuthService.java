@@ -6,13 +6,17 @@ import backend.util.HashUtil;
 
 public class AuthService {
     private final DatabaseHandler dbHandler;
+    // Owns the cached account state; null only for the standalone controller, which has no cache
+    private final PortfolioService portfolioService;
 
     public AuthService() {
         this.dbHandler = new DatabaseHandler();
+        this.portfolioService = null;
     }
 
-    public AuthService(DatabaseHandler dbHandler) {
+    public AuthService(DatabaseHandler dbHandler, PortfolioService portfolioService) {
         this.dbHandler = dbHandler;
+        this.portfolioService = portfolioService;
     }
     public User registerUser(String username, String password, String email) {
         User existingUser = dbHandler.getUserByUsername(username);
@@ -49,7 +53,11 @@ public class AuthService {
         return dbHandler.getUserByUsername(username);
     }
 
+    // Goes through PortfolioService so the account ledger does not keep serving the old balance
     public boolean updateUserBalance(String username, double newBalance) {
+        if (portfolioService != null) {
+            return portfolioService.updateUserBalance(username, newBalance);
+        }
         return dbHandler.updateUserBalance(username, newBalance);
     }
 }
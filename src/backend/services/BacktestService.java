@@ -0,0 +1,172 @@
+package backend.services;
+
+import backend.backtest.Simulation;
+import backend.backtest.Strategies;
+import backend.backtest.Strategy;
+import backend.models.BacktestResult;
+import backend.models.PriceHistory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Replays the built-in strategies over stored daily history. A sweep runs every
+ * combination of the given parameter values as an independent {@link Simulation} on the
+ * common fork-join pool; the histories are immutable and shared by all runs, so a sweep
+ * scales with cores and allocates little beyond each run's equity curve.
+ */
+public class BacktestService {
+    // Every sandbox account starts with this, so results compare with live accounts
+    public static final double DEFAULT_CASH = 100000.0;
+    public static final int MAX_SYMBOLS = 1000;
+    public static final int MAX_RUNS = 1000;
+
+    /** Results of one sweep, best Sharpe ratio first. */
+    public static final class Sweep {
+        private final String strategy;
+        private final List<String> symbols;
+        private final List<String> excluded;
+        private final List<BacktestResult> results;
+        private final long elapsedMillis;
+
+        Sweep(String strategy, List<String> symbols, List<String> excluded, List<BacktestResult> results, long elapsedMillis) {
+            this.strategy = strategy;
+            this.symbols = Collections.unmodifiableList(symbols);
+            this.excluded = Collections.unmodifiableList(excluded);
+            this.results = Collections.unmodifiableList(results);
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getStrategy() { return strategy; }
+        public List<String> getSymbols() { return symbols; }
+        // Symbols with no stored bars in the range
+        public List<String> getExcluded() { return excluded; }
+        public List<BacktestResult> getResults() { return results; }
+        public long getElapsedMillis() { return elapsedMillis; }
+    }
+
+    // Best first; runs without a defined Sharpe ratio (no volatility) go last
+    private static final Comparator<BacktestResult> BY_SHARPE = Comparator.comparingDouble(
+            (BacktestResult r) -> Double.isNaN(r.getSharpe()) ? Double.NEGATIVE_INFINITY : r.getSharpe()).reversed();
+
+    private final PriceHistoryService priceHistoryService;
+
+    public BacktestService(PriceHistoryService priceHistoryService) {
+        this.priceHistoryService = priceHistoryService;
+    }
+
+    /**
+     * Runs the strategy for every combination of parameter values in the grid; parameters
+     * missing from the grid take their defaults. Combinations the strategy rejects (such
+     * as a fast average longer than the slow one) are skipped. Throws
+     * IllegalArgumentException for an unknown strategy, an oversized grid, or when no
+     * symbol has history in the range.
+     */
+    public Sweep sweep(String strategy, List<String> symbols, LocalDate from, LocalDate to, double cash,
+                       Map<String, double[]> grid, int curvePoints) {
+        Map<String, Double> defaults = Strategies.defaults(strategy);
+        if (defaults == null) {
+            throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+        if (symbols.isEmpty() || symbols.size() > MAX_SYMBOLS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_SYMBOLS + " symbols are required");
+        }
+        long started = System.nanoTime();
+
+        List<String> included = new ArrayList<>();
+        List<String> excluded = new ArrayList<>();
+        List<PriceHistory> histories = new ArrayList<>();
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        for (String symbol : symbols) {
+            PriceHistory history = priceHistoryService.getStoredHistory(symbol).range(fromDay, toDay);
+            if (history.isEmpty()) {
+                excluded.add(symbol);
+            } else {
+                included.add(history.getSymbol());
+                histories.add(history);
+            }
+        }
+        if (histories.isEmpty()) {
+            throw new IllegalArgumentException("No stored price history in range for the requested symbols");
+        }
+        PriceHistory[] bars = histories.toArray(new PriceHistory[0]);
+
+        List<Map<String, Double>> combinations = combinations(defaults, grid);
+        List<Callable<BacktestResult>> runs = new ArrayList<>(combinations.size());
+        for (Map<String, Double> parameters : combinations) {
+            runs.add(() -> {
+                Strategy instance;
+                try {
+                    instance = Strategies.create(strategy, parameters);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                return new Simulation(bars, cash).run(strategy, parameters, instance, curvePoints);
+            });
+        }
+
+        List<BacktestResult> results = new ArrayList<>(runs.size());
+        try {
+            for (Future<BacktestResult> run : ForkJoinPool.commonPool().invokeAll(runs)) {
+                BacktestResult result = run.get();
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Backtest interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Backtest failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        if (results.isEmpty()) {
+            throw new IllegalArgumentException("No valid parameter combination in the grid");
+        }
+        results.sort(BY_SHARPE);
+
+        long elapsed = (System.nanoTime() - started) / 1_000_000;
+        System.out.println(" Backtest " + strategy + ": " + results.size() + " runs over " + bars.length
+                + " symbols in " + elapsed + " ms");
+        return new Sweep(strategy, included, excluded, results, elapsed);
+    }
+
+    // Cartesian product of the grid values, in the strategy's parameter order
+    private static List<Map<String, Double>> combinations(Map<String, Double> defaults, Map<String, double[]> grid) {
+        long count = 1;
+        for (String name : defaults.keySet()) {
+            double[] values = grid.get(name);
+            count *= values != null && values.length > 0 ? values.length : 1;
+            if (count > MAX_RUNS) {
+                throw new IllegalArgumentException("The parameter grid exceeds " + MAX_RUNS + " combinations");
+            }
+        }
+        List<Map<String, Double>> combinations = new ArrayList<>((int) count);
+        combinations.add(new LinkedHashMap<>());
+        for (Map.Entry<String, Double> parameter : defaults.entrySet()) {
+            double[] values = grid.get(parameter.getKey());
+            if (values == null || values.length == 0) {
+                values = new double[] {parameter.getValue()};
+            }
+            List<Map<String, Double>> expanded = new ArrayList<>(combinations.size() * values.length);
+            for (Map<String, Double> partial : combinations) {
+                for (double value : values) {
+                    Map<String, Double> next = new LinkedHashMap<>(partial);
+                    next.put(parameter.getKey(), value);
+                    expanded.add(next);
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+}
@@ -0,0 +1,312 @@
+package backend.services;
+
+import backend.database.DatabaseHandler;
+import backend.models.TradeResult;
+import backend.models.Transaction;
+import backend.util.OrderStatisticTree;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ranks every account by return on starting capital. Each account's NAV is kept up to date
+ * incrementally: a trade revalues that account, a price tick revalues only the holders of
+ * that symbol. Standings live in an {@link OrderStatisticTree}, so top-K costs O(log n + K)
+ * and a user's rank O(log n), however many accounts there are.
+ *
+ * Updates from trades and quotes are applied on one updater thread, so neither the trade
+ * path nor the quote fetcher waits for re-ranking. A copy of the top of the board is
+ * published every few seconds for readers that poll.
+ */
+public class LeaderboardService {
+    // Every sandbox account is funded with this at registration
+    private static final double STARTING_CAPITAL = 100000.0;
+    private static final int SNAPSHOT_SIZE = 100;
+    private static final long DEFAULT_SNAPSHOT_SECONDS = 30;
+
+    /** One account's place on the board; immutable, replaced whenever its NAV changes. */
+    public static final class Standing {
+        private final String username;
+        private final double nav;
+        private final double returnPercent;
+
+        Standing(String username, double nav) {
+            this.username = username;
+            this.nav = nav;
+            this.returnPercent = (nav - STARTING_CAPITAL) / STARTING_CAPITAL * 100;
+        }
+
+        public String getUsername() { return username; }
+        public double getNav() { return nav; }
+        public double getReturnPercent() { return returnPercent; }
+    }
+
+    /** The top of the board as of one instant. */
+    public static final class Snapshot {
+        private final Instant publishedAt;
+        private final int participants;
+        private final List<Standing> top;
+
+        Snapshot(Instant publishedAt, int participants, List<Standing> top) {
+            this.publishedAt = publishedAt;
+            this.participants = participants;
+            this.top = Collections.unmodifiableList(top);
+        }
+
+        public Instant getPublishedAt() { return publishedAt; }
+        public int getParticipants() { return participants; }
+        // Best first; rank is index + 1
+        public List<Standing> getTop() { return top; }
+    }
+
+    // Best return first; username breaks ties so every standing is distinct
+    private static final Comparator<Standing> BY_RETURN = Comparator
+            .comparingDouble((Standing s) -> -s.returnPercent)
+            .thenComparing(s -> s.username);
+
+    private final DatabaseHandler dbHandler;
+    private final AlphaVantageService alphaVantageService;
+    private final PortfolioService portfolioService;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final OrderStatisticTree<Standing> board = new OrderStatisticTree<>(BY_RETURN);
+    private final Map<String, Account> accounts = new HashMap<>();
+    private final Map<String, Set<Account>> holders = new HashMap<>();
+    private final Map<String, Double> prices = new HashMap<>();
+    private final ExecutorService updater = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "leaderboard-updater");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "leaderboard-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Snapshot snapshot = new Snapshot(Instant.now(), 0, new ArrayList<>());
+
+    public LeaderboardService(DatabaseHandler dbHandler, AlphaVantageService alphaVantageService,
+                              PortfolioService portfolioService) {
+        this.dbHandler = dbHandler;
+        this.alphaVantageService = alphaVantageService;
+        this.portfolioService = portfolioService;
+    }
+
+    /** Loads every account once, then follows trades and quotes. */
+    public void start() {
+        lock.lock();
+        try {
+            // Subscribe before the scan so nothing committed during it is missed. The updater
+            // cannot apply those events until the scan releases the lock, and a trade event
+            // carries absolute balance and position, so replaying one the scan already saw
+            // leaves the account where it was.
+            portfolioService.addTradeListener(this::onTrade);
+            alphaVantageService.addQuoteListener(this::onQuote);
+            dbHandler.scanAccounts(new DatabaseHandler.AccountScanHandler() {
+                @Override
+                public void account(String username, double balance) {
+                    accounts.put(username, new Account(username, balance));
+                }
+
+                @Override
+                public void position(String username, String symbol, int quantity, double lastPrice) {
+                    Account account = accounts.get(username);
+                    if (account != null) {
+                        String key = symbol.trim().toUpperCase();
+                        // Until a quote arrives, the first stored trade price stands in
+                        prices.putIfAbsent(key, lastPrice);
+                        setPosition(account, key, quantity);
+                    }
+                }
+
+                @Override
+                public void invested(String username, double totalBought) {
+                }
+            });
+            for (Account account : accounts.values()) {
+                revalue(account);
+            }
+        } finally {
+            lock.unlock();
+        }
+        publish();
+        System.out.println(" Leaderboard loaded " + accounts.size() + " accounts");
+
+        long seconds = snapshotSecondsFromEnv();
+        publisher.scheduleWithFixedDelay(this::publish, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        publisher.shutdownNow();
+        updater.shutdown();
+    }
+
+    /** The latest published top of the board. */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** The current top k standings, best first. */
+    public List<Standing> top(int k) {
+        lock.lock();
+        try {
+            return board.range(0, k);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 1-based rank of the user right now, or -1 if they are not on the board. */
+    public int rankOf(String username) {
+        lock.lock();
+        try {
+            Account account = accounts.get(username);
+            return account != null && account.standing != null ? board.rank(account.standing) + 1 : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The user's current standing, or null if they are not on the board. */
+    public Standing standingOf(String username) {
+        lock.lock();
+        try {
+            Account account = accounts.get(username);
+            return account != null ? account.standing : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getParticipants() {
+        lock.lock();
+        try {
+            return board.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onTrade(Transaction trade, TradeResult result) {
+        updater.execute(() -> {
+            lock.lock();
+            try {
+                Account account = accounts.computeIfAbsent(trade.getUsername(), u -> new Account(u, 0));
+                String symbol = trade.getSymbol().trim().toUpperCase();
+                // The fill price is the freshest price we have for the symbol
+                reprice(symbol, trade.getPrice());
+                account.cash = result.getBalance();
+                setPosition(account, symbol, result.getPositionQuantity());
+                revalue(account);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void onQuote(String symbol, double price) {
+        String key = symbol.trim().toUpperCase();
+        updater.execute(() -> {
+            lock.lock();
+            try {
+                reprice(key, price);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    // Moves every holder of the symbol by quantity x price change; O(holders x log n)
+    private void reprice(String symbol, double price) {
+        Double previous = prices.put(symbol, price);
+        if (previous == null || previous == price) {
+            return;
+        }
+        Set<Account> owners = holders.get(symbol);
+        if (owners == null) {
+            return;
+        }
+        double change = price - previous;
+        for (Account account : owners) {
+            rerank(account, account.standing.nav + account.positions.get(symbol) * change);
+        }
+    }
+
+    private void setPosition(Account account, String symbol, int quantity) {
+        if (quantity > 0) {
+            account.positions.put(symbol, quantity);
+            holders.computeIfAbsent(symbol, s -> Collections.newSetFromMap(new HashMap<>())).add(account);
+        } else {
+            account.positions.remove(symbol);
+            Set<Account> owners = holders.get(symbol);
+            if (owners != null) {
+                owners.remove(account);
+                if (owners.isEmpty()) {
+                    holders.remove(symbol);
+                }
+            }
+        }
+    }
+
+    // Full revaluation from cash and positions; also clears any drift from incremental updates
+    private void revalue(Account account) {
+        double nav = account.cash;
+        for (Map.Entry<String, Integer> position : account.positions.entrySet()) {
+            Double price = prices.get(position.getKey());
+            nav += position.getValue() * (price != null ? price : 0);
+        }
+        rerank(account, nav);
+    }
+
+    private void rerank(Account account, double nav) {
+        if (account.standing != null) {
+            board.remove(account.standing);
+        }
+        account.standing = new Standing(account.username, nav);
+        board.add(account.standing);
+    }
+
+    private void publish() {
+        lock.lock();
+        try {
+            snapshot = new Snapshot(Instant.now(), board.size(), board.range(0, SNAPSHOT_SIZE));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long snapshotSecondsFromEnv() {
+        String value = System.getenv("LEADERBOARD_SNAPSHOT_SECONDS");
+        if (value == null || value.isBlank()) {
+            return DEFAULT_SNAPSHOT_SECONDS;
+        }
+        try {
+            return Math.max(1, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid LEADERBOARD_SNAPSHOT_SECONDS '" + value + "', using " + DEFAULT_SNAPSHOT_SECONDS);
+            return DEFAULT_SNAPSHOT_SECONDS;
+        }
+    }
+
+    private static final class Account {
+        final String username;
+        final Map<String, Integer> positions = new HashMap<>();
+        double cash;
+        Standing standing;
+
+        Account(String username, double cash) {
+            this.username = username;
+            this.cash = cash;
+        }
+    }
+}
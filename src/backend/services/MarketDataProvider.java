@@ -0,0 +1,71 @@
+package backend.services;
+
+import backend.models.PriceHistory;
+import backend.services.UpstreamScheduler.Priority;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Source of raw market data: quotes, symbol search and daily history. Caching and
+ * batching live in {@link AlphaVantageService}; implementations only fetch.
+ *
+ * Selected with MARKET_DATA_MODE:
+ * <ul>
+ *   <li>{@code live} (default) - the AlphaVantage API</li>
+ *   <li>{@code record} - the AlphaVantage API, with every response appended to MARKET_DATA_FILE</li>
+ *   <li>{@code replay} - serves a recording from MARKET_DATA_FILE at REPLAY_SPEED, no network</li>
+ *   <li>{@code synthetic} - generated prices for any symbol, no network; used for load tests</li>
+ * </ul>
+ */
+public interface MarketDataProvider {
+
+    /** Quote map with at least "symbol", "name" and "price" (as a string), like GLOBAL_QUOTE. */
+    Map<String, Object> getQuote(String symbol, Priority priority);
+
+    Map<String, Object> searchSymbols(String keywords);
+
+    /** Daily bars, oldest first. */
+    PriceHistory getDailyHistory(String symbol, Priority priority);
+
+    static MarketDataProvider fromEnvironment(UpstreamScheduler scheduler) {
+        String mode = System.getenv("MARKET_DATA_MODE");
+        String file = System.getenv("MARKET_DATA_FILE");
+        Path recording = Path.of(file != null && !file.isBlank() ? file : "market-data.rec");
+
+        if ("replay".equalsIgnoreCase(mode)) {
+            String speed = System.getenv("REPLAY_SPEED");
+            double replaySpeed = 1.0;
+            if (speed != null && !speed.isBlank()) {
+                try {
+                    replaySpeed = Double.parseDouble(speed.trim());
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid REPLAY_SPEED '" + speed + "', using 1.0");
+                }
+            }
+            System.out.println(" Market data: replaying " + recording + " at speed " + replaySpeed);
+            return ReplayMarketDataProvider.load(recording, replaySpeed);
+        }
+
+        if ("synthetic".equalsIgnoreCase(mode)) {
+            String latency = System.getenv("SYNTHETIC_LATENCY_MS");
+            long latencyMillis = 0;
+            if (latency != null && !latency.isBlank()) {
+                try {
+                    latencyMillis = Long.parseLong(latency.trim());
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid SYNTHETIC_LATENCY_MS '" + latency + "', using 0");
+                }
+            }
+            System.out.println(" Market data: synthetic prices, " + latencyMillis + " ms simulated latency");
+            return new SyntheticMarketDataProvider(latencyMillis);
+        }
+
+        MarketDataProvider live = new AlphaVantageProvider(scheduler);
+        if ("record".equalsIgnoreCase(mode)) {
+            System.out.println(" Market data: recording AlphaVantage responses to " + recording);
+            return new RecordingMarketDataProvider(live, recording);
+        }
+        return live;
+    }
+}
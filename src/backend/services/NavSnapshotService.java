@@ -0,0 +1,192 @@
+package backend.services;
+
+import backend.database.DatabaseHandler;
+import backend.models.NavHistory;
+import backend.services.UpstreamScheduler.Priority;
+import backend.util.MarketHours;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-of-day NAV snapshots for every account. After each session close the job scans all
+ * accounts in three sequential queries, prices each distinct symbol once, values every
+ * account in primitive arrays and writes one row per account in a single transaction.
+ * The work is linear in accounts plus positions, so 100k accounts take seconds; the only
+ * part that grows with the market is the one quote per held symbol.
+ */
+public class NavSnapshotService {
+    private static final long DEFAULT_DELAY_MINUTES = 15;
+    private static final Duration QUOTE_DEADLINE = Duration.ofMinutes(2);
+
+    private final DatabaseHandler dbHandler;
+    private final AlphaVantageService alphaVantageService;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "nav-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile int lastAccounts;
+    private volatile double lastRunSeconds;
+
+    public NavSnapshotService(DatabaseHandler dbHandler, AlphaVantageService alphaVantageService) {
+        this.dbHandler = dbHandler;
+        this.alphaVantageService = alphaVantageService;
+    }
+
+    /** Schedules the job for a few minutes after each session close. */
+    public void start() {
+        scheduleNext();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Values every account at current prices and stores the result under the given day.
+     * Returns the number of accounts written, or -1 if the scan or the write failed.
+     */
+    public int snapshot(LocalDate day) {
+        long start = System.nanoTime();
+        Accounts accounts = new Accounts();
+        if (!dbHandler.scanAccounts(accounts)) {
+            return -1;
+        }
+
+        // One price per distinct symbol; the last trade price stands in for any symbol not quoted in time
+        double[] prices = new double[accounts.symbols.size()];
+        Map<String, AlphaVantageService.QuoteResult> quotes =
+                alphaVantageService.getQuotes(accounts.symbols, Priority.BACKGROUND, QUOTE_DEADLINE);
+        for (int s = 0; s < prices.length; s++) {
+            AlphaVantageService.QuoteResult quote = quotes.get(accounts.symbols.get(s));
+            prices[s] = quote != null && quote.hasPrice() ? quote.getPrice() : Double.NaN;
+        }
+
+        int n = accounts.usernames.size();
+        double[] nav = Arrays.copyOf(accounts.cash, n);
+        for (int p = 0; p < accounts.positionCount; p++) {
+            double price = prices[accounts.positionSymbol[p]];
+            if (Double.isNaN(price)) {
+                price = accounts.positionLastPrice[p];
+            }
+            nav[accounts.positionAccount[p]] += accounts.positionQuantity[p] * price;
+        }
+
+        int written = dbHandler.appendNavSnapshots((int) day.toEpochDay(), accounts.usernames.toArray(new String[0]),
+                nav, accounts.cash, accounts.invested, n);
+        lastRunSeconds = (System.nanoTime() - start) / 1e9;
+        if (written >= 0) {
+            lastAccounts = written;
+            System.out.println(" NAV snapshot for " + day + ": " + written + " accounts, " + prices.length
+                    + " symbols in " + String.format("%.2f", lastRunSeconds) + "s");
+        }
+        return written;
+    }
+
+    /** Snapshots between the two dates, inclusive. */
+    public NavHistory getHistory(String username, LocalDate from, LocalDate to) {
+        return dbHandler.getNavHistory(username, (int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    public int getLastAccounts() { return lastAccounts; }
+    public double getLastRunSeconds() { return lastRunSeconds; }
+
+    private void scheduleNext() {
+        ZonedDateTime close = MarketHours.nextClose(ZonedDateTime.now(MarketHours.ZONE));
+        ZonedDateTime runAt = close.plusMinutes(delayMinutesFromEnv());
+        long delayMillis = Math.max(0, Duration.between(ZonedDateTime.now(MarketHours.ZONE), runAt).toMillis());
+        scheduler.schedule(() -> {
+            try {
+                snapshot(close.toLocalDate());
+            } catch (RuntimeException e) {
+                System.err.println("NAV snapshot failed: " + e.getMessage());
+            } finally {
+                scheduleNext();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long delayMinutesFromEnv() {
+        String value = System.getenv("NAV_SNAPSHOT_DELAY_MINUTES");
+        if (value == null || value.isBlank()) {
+            return DEFAULT_DELAY_MINUTES;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid NAV_SNAPSHOT_DELAY_MINUTES '" + value + "', using " + DEFAULT_DELAY_MINUTES);
+            return DEFAULT_DELAY_MINUTES;
+        }
+    }
+
+    // Accounts and positions from the scan, interned to indexes so valuation is array arithmetic
+    private static final class Accounts implements DatabaseHandler.AccountScanHandler {
+        final List<String> usernames = new ArrayList<>();
+        final Map<String, Integer> accountIndex = new HashMap<>();
+        final List<String> symbols = new ArrayList<>();
+        final Map<String, Integer> symbolIndex = new HashMap<>();
+        double[] cash = new double[1024];
+        double[] invested = new double[1024];
+        int[] positionAccount = new int[1024];
+        int[] positionSymbol = new int[1024];
+        int[] positionQuantity = new int[1024];
+        double[] positionLastPrice = new double[1024];
+        int positionCount;
+
+        @Override
+        public void account(String username, double balance) {
+            int i = usernames.size();
+            if (i == cash.length) {
+                cash = Arrays.copyOf(cash, i * 2);
+                invested = Arrays.copyOf(invested, i * 2);
+            }
+            usernames.add(username);
+            accountIndex.put(username, i);
+            cash[i] = balance;
+        }
+
+        @Override
+        public void position(String username, String symbol, int quantity, double lastPrice) {
+            Integer account = accountIndex.get(username);
+            if (account == null) {
+                return;
+            }
+            Integer s = symbolIndex.get(symbol);
+            if (s == null) {
+                s = symbols.size();
+                symbols.add(symbol);
+                symbolIndex.put(symbol, s);
+            }
+            int p = positionCount;
+            if (p == positionAccount.length) {
+                positionAccount = Arrays.copyOf(positionAccount, p * 2);
+                positionSymbol = Arrays.copyOf(positionSymbol, p * 2);
+                positionQuantity = Arrays.copyOf(positionQuantity, p * 2);
+                positionLastPrice = Arrays.copyOf(positionLastPrice, p * 2);
+            }
+            positionAccount[p] = account;
+            positionSymbol[p] = s;
+            positionQuantity[p] = quantity;
+            positionLastPrice[p] = lastPrice;
+            positionCount++;
+        }
+
+        @Override
+        public void invested(String username, double totalBought) {
+            Integer account = accountIndex.get(username);
+            if (account != null) {
+                invested[account] = totalBought;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package backend.services;
+
+import backend.models.Order;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resting LIMIT orders for one symbol with price-time priority. Each side keeps its price
+ * levels in a sorted primitive array with the best level last, so a tick only touches the
+ * levels it crosses: O(levels crossed + orders filled), never a scan of the whole book.
+ *
+ * Not thread-safe; callers hold {@link #lock}.
+ */
+class OrderBook {
+    final ReentrantLock lock = new ReentrantLock();
+
+    private final String symbol;
+    // Bids keyed by price ticks, asks by negated ticks, so "best" is the largest key on both sides
+    private final PriceLevels bids = new PriceLevels();
+    private final PriceLevels asks = new PriceLevels();
+    private final Map<Long, Order> resting = new HashMap<>();
+
+    OrderBook(String symbol) {
+        this.symbol = symbol;
+    }
+
+    String getSymbol() {
+        return symbol;
+    }
+
+    void add(Order order) {
+        PriceLevels side = order.isBuy() ? bids : asks;
+        long key = order.isBuy() ? order.getLimitTicks() : -order.getLimitTicks();
+        Level level = side.getOrCreate(key);
+        level.orders.addLast(order);
+        level.live++;
+        resting.put(order.getId(), order);
+    }
+
+    /** Removes a resting order; returns false if it was not in the book (already filled or cancelled). */
+    boolean remove(long orderId) {
+        Order order = resting.remove(orderId);
+        if (order == null) {
+            return false;
+        }
+        PriceLevels side = order.isBuy() ? bids : asks;
+        long key = order.isBuy() ? order.getLimitTicks() : -order.getLimitTicks();
+        Level level = side.get(key);
+        if (level == null) {
+            return true;
+        }
+        if (--level.live == 0) {
+            side.remove(key);
+        } else if (level.orders.size() > 2 * level.live) {
+            // Cancelled orders stay queued and are skipped on drain; once they outnumber the
+            // live ones, drop them so a level with heavy cancel traffic cannot grow without
+            // bound. Each compaction at least halves the queue, so this is amortized O(1).
+            level.orders.removeIf(queued -> !resting.containsKey(queued.getId()));
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns every order that executes at the given market price: bids at or
+     * above it and asks at or below it, each best price first and FIFO within a price.
+     */
+    List<Order> takeMarketable(double marketPrice) {
+        long ticks = Math.round(marketPrice * 100);
+        List<Order> marketable = new ArrayList<>();
+        drain(bids, ticks, marketable);
+        drain(asks, -ticks, marketable);
+        return marketable;
+    }
+
+    int size() {
+        return resting.size();
+    }
+
+    boolean isEmpty() {
+        return resting.isEmpty();
+    }
+
+    /** Best bid in price units, or NaN if there are no bids. */
+    double bestBid() {
+        return bids.size > 0 ? bids.keys[bids.size - 1] / 100.0 : Double.NaN;
+    }
+
+    /** Best ask in price units, or NaN if there are no asks. */
+    double bestAsk() {
+        return asks.size > 0 ? -asks.keys[asks.size - 1] / 100.0 : Double.NaN;
+    }
+
+    private void drain(PriceLevels side, long threshold, List<Order> out) {
+        while (side.size > 0 && side.keys[side.size - 1] >= threshold) {
+            Level level = side.levels[side.size - 1];
+            for (Order order : level.orders) {
+                if (resting.remove(order.getId()) != null) {
+                    out.add(order);
+                }
+            }
+            side.removeBest();
+        }
+    }
+
+    private static final class Level {
+        final ArrayDeque<Order> orders = new ArrayDeque<>();
+        int live;
+    }
+
+    private static final class PriceLevels {
+        long[] keys = new long[16];
+        Level[] levels = new Level[16];
+        int size;
+
+        Level get(long key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            return index >= 0 ? levels[index] : null;
+        }
+
+        Level getOrCreate(long key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index >= 0) {
+                return levels[index];
+            }
+            index = -index - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                levels = Arrays.copyOf(levels, size * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(levels, index, levels, index + 1, size - index);
+            Level level = new Level();
+            keys[index] = key;
+            levels[index] = level;
+            size++;
+            return level;
+        }
+
+        void remove(long key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(levels, index + 1, levels, index, size - index - 1);
+            levels[--size] = null;
+        }
+
+        void removeBest() {
+            levels[--size] = null;
+        }
+    }
+}
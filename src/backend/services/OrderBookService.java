@@ -0,0 +1,320 @@
+package backend.services;
+
+import backend.database.DatabaseHandler;
+import backend.models.Order;
+import backend.models.TimeInForce;
+import backend.models.TradeResult;
+import backend.services.UpstreamScheduler.Priority;
+import backend.util.MarketHours;
+import backend.util.TimerWheel;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sandbox matching for LIMIT orders. There is no counterparty: an order executes against
+ * the market quote once the quote reaches its limit. Marketable orders fill on submission;
+ * the rest are persisted and rest in a per-symbol {@link OrderBook} until a later quote
+ * crosses them. Every fresh quote is fed in, and symbols with resting orders are polled
+ * in the background so orders still fill when nobody is looking at them.
+ *
+ * Time in force: IOC and FOK orders that are not marketable on arrival are cancelled, never
+ * rested. DAY orders get a timeout on a {@link TimerWheel} for the next session close, so
+ * expiry costs nothing per resting order until it is due. GTC orders rest until filled or
+ * cancelled and are reloaded from the orders table on restart.
+ */
+public class OrderBookService {
+    private static final long DEFAULT_POLL_SECONDS = 60;
+
+    /** Executes a fill through the normal trade path at the given price. */
+    public interface FillHandler {
+        TradeResult fill(Order order, double price);
+    }
+
+    /** Result of a submission: the order's state, plus the trade if it filled immediately. */
+    public static class Submission {
+        private final Order order;
+        private final TradeResult trade;
+
+        Submission(Order order, TradeResult trade) {
+            this.order = order;
+            this.trade = trade;
+        }
+
+        public Order getOrder() { return order; }
+        public TradeResult getTrade() { return trade; }
+    }
+
+    private final DatabaseHandler dbHandler;
+    private final AlphaVantageService alphaVantageService;
+    private final FillHandler fillHandler;
+    private final Map<String, OrderBook> books = new ConcurrentHashMap<>();
+    private final Map<Long, Order> openOrders = new ConcurrentHashMap<>();
+    // One matcher thread keeps fills in tick order and off the quote-fetching thread
+    private final ExecutorService matcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "order-matcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "order-quote-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Expiry tasks run on the matcher, so an expiry and a fill of the same order never race
+    private final TimerWheel expiryWheel = new TimerWheel("order-expiry", 1, TimeUnit.SECONDS, 512, matcher);
+    private final Map<Long, TimerWheel.Timeout> expiries = new ConcurrentHashMap<>();
+    private final LongAdder filled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public OrderBookService(DatabaseHandler dbHandler, AlphaVantageService alphaVantageService, FillHandler fillHandler) {
+        this.dbHandler = dbHandler;
+        this.alphaVantageService = alphaVantageService;
+        this.fillHandler = fillHandler;
+    }
+
+    /** Rebuilds the books from persisted OPEN orders and starts listening for quotes. */
+    public void start() {
+        List<Order> open = dbHandler.getOpenOrders();
+        int closed = 0;
+        for (Order order : open) {
+            TimeInForce tif = timeInForce(order);
+            if (tif.isImmediate()) {
+                // Left open by an older build; immediate orders never rest
+                finish(order, Order.CANCELLED, tif + " order cancelled on restart");
+                closed++;
+            } else if (tif == TimeInForce.DAY && !expiryTime(order).isAfter(ZonedDateTime.now())) {
+                finish(order, Order.EXPIRED, "Day order expired at session close");
+                expired.increment();
+                closed++;
+            } else {
+                rest(order);
+            }
+        }
+        System.out.println(" Order book loaded " + (open.size() - closed) + " resting orders, closed " + closed);
+
+        alphaVantageService.addQuoteListener(this::onQuote);
+        long pollSeconds = pollSecondsFromEnv();
+        poller.scheduleWithFixedDelay(this::pollRestingSymbols, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        poller.shutdownNow();
+        expiryWheel.shutdown();
+        matcher.shutdown();
+    }
+
+    public Submission submit(Order order) {
+        Map<String, Object> quote = alphaVantageService.getStockQuote(order.getSymbol(), Priority.TRADE);
+        double price = Double.parseDouble((String) quote.get("price"));
+
+        if (order.isMarketable(price)) {
+            TradeResult trade = fillHandler.fill(order, price);
+            complete(order, trade, price);
+            return new Submission(order, trade);
+        }
+
+        TimeInForce tif = timeInForce(order);
+        if (tif.isImmediate()) {
+            // Recorded for the order history, but never rested
+            order.setStatus(Order.CANCELLED);
+            order.setStatusMessage(tif + " limit " + order.getLimitPrice() + " not marketable at " + price + "; cancelled");
+            long id = dbHandler.insertOrder(order);
+            if (id >= 0) {
+                order.setId(id);
+            }
+            return new Submission(order, null);
+        }
+
+        long id = dbHandler.insertOrder(order);
+        if (id < 0) {
+            order.setStatus(Order.REJECTED);
+            order.setStatusMessage("Failed to place order");
+            return new Submission(order, null);
+        }
+        order.setId(id);
+        rest(order);
+        return new Submission(order, null);
+    }
+
+    /** Cancels a resting order owned by the user; false if it is not open (or not theirs). */
+    public boolean cancel(String username, long orderId) {
+        Order order = openOrders.get(orderId);
+        if (order == null || !order.getUsername().equals(username)) {
+            return false;
+        }
+        return close(order, Order.CANCELLED, "Cancelled by user");
+    }
+
+    public List<Order> getOrders(String username) {
+        return dbHandler.getOrdersByUsername(username);
+    }
+
+    public int getRestingCount() { return openOrders.size(); }
+    public long getFilledCount() { return filled.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getExpiredCount() { return expired.sum(); }
+    public int getPendingExpiries() { return expiryWheel.getOutstanding(); }
+
+    // Takes the order out of its book and records a final non-fill status
+    boolean close(Order order, String status, String message) {
+        OrderBook book = books.get(order.getSymbol());
+        if (book == null) {
+            return false;
+        }
+        book.lock.lock();
+        try {
+            if (!book.remove(order.getId())) {
+                return false;
+            }
+        } finally {
+            book.lock.unlock();
+        }
+        openOrders.remove(order.getId());
+        cancelExpiry(order);
+        finish(order, status, message);
+        return true;
+    }
+
+    private void finish(Order order, String status, String message) {
+        order.setStatus(status);
+        order.setStatusMessage(message);
+        order.setUpdatedAt(LocalDateTime.now());
+        dbHandler.updateOrderStatus(order);
+    }
+
+    private void rest(Order order) {
+        OrderBook book = books.computeIfAbsent(order.getSymbol(), OrderBook::new);
+        book.lock.lock();
+        try {
+            book.add(order);
+        } finally {
+            book.lock.unlock();
+        }
+        openOrders.put(order.getId(), order);
+        if (timeInForce(order) == TimeInForce.DAY) {
+            scheduleExpiry(order);
+        }
+    }
+
+    private void scheduleExpiry(Order order) {
+        long delayMillis = Math.max(0, Duration.between(ZonedDateTime.now(), expiryTime(order)).toMillis());
+        TimerWheel.Timeout timeout = expiryWheel.schedule(() -> {
+            if (close(order, Order.EXPIRED, "Day order expired at session close")) {
+                expired.increment();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        expiries.put(order.getId(), timeout);
+    }
+
+    private void cancelExpiry(Order order) {
+        TimerWheel.Timeout timeout = expiries.remove(order.getId());
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    // A DAY order works until the first session close after it was placed
+    private static ZonedDateTime expiryTime(Order order) {
+        return MarketHours.nextClose(order.getCreatedAt().atZone(ZoneId.systemDefault()));
+    }
+
+    // Unrecognised durations on old rows are treated as DAY, the conservative choice
+    private static TimeInForce timeInForce(Order order) {
+        TimeInForce tif = TimeInForce.parse(order.getDuration());
+        return tif != null ? tif : TimeInForce.DAY;
+    }
+
+    private void onQuote(String symbol, double price) {
+        if (books.containsKey(symbol)) {
+            matcher.execute(() -> match(symbol, price));
+        }
+    }
+
+    private void match(String symbol, double price) {
+        OrderBook book = books.get(symbol);
+        if (book == null) {
+            return;
+        }
+        List<Order> marketable;
+        book.lock.lock();
+        try {
+            marketable = book.takeMarketable(price);
+        } finally {
+            book.lock.unlock();
+        }
+
+        for (Order order : marketable) {
+            openOrders.remove(order.getId());
+            cancelExpiry(order);
+            TradeResult trade;
+            try {
+                trade = fillHandler.fill(order, price);
+            } catch (RuntimeException e) {
+                trade = TradeResult.rejected("Fill failed: " + e.getMessage());
+            }
+            complete(order, trade, price);
+            dbHandler.updateOrderStatus(order);
+            System.out.println(" Limit order " + order.getId() + " " + order.getSide() + " " + order.getQuantity() + " "
+                    + symbol + " @ " + order.getLimitPrice() + ": " + order.getStatus() + " at " + price);
+        }
+    }
+
+    private void complete(Order order, TradeResult trade, double price) {
+        if (trade.isSuccess()) {
+            filled.increment();
+            order.setStatus(Order.FILLED);
+            order.setFillPrice(price);
+            order.setStatusMessage(trade.getMessage());
+        } else {
+            // e.g. a resting buy whose cash was spent elsewhere in the meantime
+            rejected.increment();
+            order.setStatus(Order.REJECTED);
+            order.setStatusMessage(trade.getMessage());
+        }
+        order.setUpdatedAt(LocalDateTime.now());
+    }
+
+    private void pollRestingSymbols() {
+        List<String> symbols = new ArrayList<>();
+        books.forEach((symbol, book) -> {
+            if (!book.isEmpty()) {
+                symbols.add(symbol);
+            }
+        });
+        for (String symbol : symbols) {
+            try {
+                Map<String, Object> quote = alphaVantageService.getStockQuote(symbol, Priority.BACKGROUND);
+                // Fresh fetches already notified us; a cached quote still needs matching
+                onQuote(symbol, Double.parseDouble((String) quote.get("price")));
+            } catch (RuntimeException e) {
+                System.err.println("Order book quote poll failed for " + symbol + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static long pollSecondsFromEnv() {
+        String value = System.getenv("ORDER_BOOK_POLL_SECONDS");
+        if (value == null || value.isBlank()) {
+            return DEFAULT_POLL_SECONDS;
+        }
+        try {
+            return Math.max(1, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid ORDER_BOOK_POLL_SECONDS '" + value + "', using " + DEFAULT_POLL_SECONDS);
+            return DEFAULT_POLL_SECONDS;
+        }
+    }
+}
@@ -1,170 +1,269 @@
 package backend.services;
 
 import backend.database.DatabaseHandler;
+import backend.models.LotMethod;
+import backend.models.Order;
+import backend.models.PnlReport;
+import backend.models.TimeInForce;
 import backend.models.Portfolio;
+import backend.models.PortfolioSnapshot;
+import backend.models.TradeResult;
 import backend.models.Transaction;
-import backend.models.User;
-
+import backend.models.TransactionPage;
+import backend.services.UpstreamScheduler.Priority;
+import backend.services.UpstreamScheduler.RateLimitedException;
+import backend.util.StripedLocks;
+import java.io.IOException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class PortfolioService {
+    /** Called after every committed trade while the account lock is held; listeners must not block. */
+    public interface TradeListener {
+        void onTrade(Transaction trade, TradeResult result);
+    }
+
     private final DatabaseHandler dbHandler;
     private final AlphaVantageService alphaVantageService;
+    // Serializes trades per account; different accounts only meet at the SQLite commit
+    private final StripedLocks accountLocks = new StripedLocks(64);
+    private final AccountLedger ledger;
+    private final OrderBookService orderBookService;
+    private final List<TradeListener> tradeListeners = new CopyOnWriteArrayList<>();
 
     public PortfolioService(DatabaseHandler dbHandler) {
+        this(dbHandler, new AlphaVantageService());
+    }
+
+    public PortfolioService(DatabaseHandler dbHandler, AlphaVantageService alphaVantageService) {
         this.dbHandler = dbHandler;
-        this.alphaVantageService = new AlphaVantageService();
+        this.alphaVantageService = alphaVantageService;
+        this.ledger = new AccountLedger(dbHandler, accountLocks);
+        this.orderBookService = new OrderBookService(dbHandler, alphaVantageService, this::fillOrder);
     }
 
     public Map<String, Object> buyStock(String username, String symbol, String stockName, int quantity, String orderType, String duration) {
-        Map<String, Object> response = new HashMap<>();
-        try {
-            // Get current stock price
-            Map<String, Object> stockData = alphaVantageService.getStockQuote(symbol);
-            double currentPrice = Double.parseDouble((String) stockData.get("price"));
+        return buyStock(username, symbol, stockName, quantity, orderType, duration, null);
+    }
 
-            // Get user balance
-            User user = dbHandler.getUserByUsername(username);
-            if (user == null) {
-                response.put("success", false);
-                response.put("message", "User not found");
-                return response;
-            }
+    public Map<String, Object> sellStock(String username, String symbol, String stockName, int quantity, String orderType, String duration) {
+        return sellStock(username, symbol, stockName, quantity, orderType, duration, null);
+    }
+
+    // limitPrice is required for LIMIT orders and ignored for MARKET orders
+    public Map<String, Object> buyStock(String username, String symbol, String stockName, int quantity,
+                                        String orderType, String duration, Double limitPrice) {
+        return placeOrder("BUY", username, symbol, stockName, quantity, orderType, duration, limitPrice);
+    }
 
-            double totalCost = currentPrice * quantity;
+    public Map<String, Object> sellStock(String username, String symbol, String stockName, int quantity,
+                                         String orderType, String duration, Double limitPrice) {
+        return placeOrder("SELL", username, symbol, stockName, quantity, orderType, duration, limitPrice);
+    }
 
-            if (user.getBalance() < totalCost) {
-                response.put("success", false);
-                response.put("message", "Insufficient balance");
-                return response;
+    private Map<String, Object> placeOrder(String type, String username, String symbol, String stockName, int quantity,
+                                           String orderType, String duration, Double limitPrice) {
+        if (quantity <= 0) {
+            return rejection("Quantity must be positive");
+        }
+        if ("LIMIT".equalsIgnoreCase(orderType)) {
+            if (limitPrice == null || !(limitPrice > 0)) {
+                return rejection("Limit price required for LIMIT orders");
+            }
+            TimeInForce tif = TimeInForce.parse(duration);
+            if (tif == null) {
+                return rejection("Unsupported duration: " + duration);
             }
+            return submitLimitOrder(new Order(username, type, symbol.trim().toUpperCase(), stockName, quantity, limitPrice, tif.name()));
+        }
+        return executeTrade(type, username, symbol, stockName, quantity, orderType, duration);
+    }
+
+    // Prices the order outside the account lock (the quote may wait on the rate limiter),
+    // then applies balance, position and transaction record atomically under it
+    private Map<String, Object> executeTrade(String type, String username, String symbol, String stockName,
+                                             int quantity, String orderType, String duration) {
+        String action = "BUY".equals(type) ? "buying" : "selling";
+        try {
+            // Get current stock price
+            Map<String, Object> stockData = alphaVantageService.getStockQuote(symbol, Priority.TRADE);
+            double currentPrice = Double.parseDouble((String) stockData.get("price"));
 
-            // Update user balance
-            double newBalance = user.getBalance() - totalCost;
-            boolean balanceUpdated = dbHandler.updateUserBalance(username, newBalance);
+            Transaction transaction = new Transaction(username, type, symbol, stockName, quantity, currentPrice, orderType, duration);
+            TradeResult result = commitTrade(transaction);
+            return tradeResponse(type, result, currentPrice);
+
+        } catch (RateLimitedException e) {
+            return rateLimited(e);
+        } catch (Exception e) {
+            return rejection("Error " + action + " stock: " + e.getMessage());
+        }
+    }
 
-            if (!balanceUpdated) {
-                response.put("success", false);
-                response.put("message", "Failed to update balance");
+    private Map<String, Object> submitLimitOrder(Order order) {
+        try {
+            OrderBookService.Submission submission = orderBookService.submit(order);
+            if (submission.getTrade() != null) {
+                // Marketable on arrival: filled at the current quote, which is at or better than the limit
+                Map<String, Object> response = tradeResponse(order.getSide(), submission.getTrade(), order.getFillPrice());
+                response.put("orderStatus", order.getStatus());
                 return response;
             }
-
-            // Check if stock already exists in portfolio
-            List<Portfolio> portfolio = dbHandler.getPortfolioByUsername(username);
-            Portfolio existingStock = portfolio.stream()
-                    .filter(p -> p.getSymbol().equals(symbol))
-                    .findFirst()
-                    .orElse(null);
-
-            if (existingStock != null) {
-                // Update existing stock
-                int newQuantity = existingStock.getQuantity() + quantity;
-                double avgPrice = ((existingStock.getPurchasePrice() * existingStock.getQuantity()) + (currentPrice * quantity)) / newQuantity;
-
-                existingStock.setQuantity(newQuantity);
-                existingStock.setPurchasePrice(avgPrice);
-                existingStock.setCurrentPrice(currentPrice);
-
-                // Remove old entry and add updated one
-                dbHandler.removeFromPortfolio(username, symbol);
-                dbHandler.addToPortfolio(existingStock);
-            } else {
-                // Add new stock to portfolio
-                Portfolio newPortfolio = new Portfolio(username, symbol, stockName, quantity, currentPrice, currentPrice);
-                dbHandler.addToPortfolio(newPortfolio);
+            if (!order.isOpen()) {
+                return rejection(order.getStatusMessage());
             }
-
-            // Record transaction
-            Transaction transaction = new Transaction(username, "BUY", symbol, stockName, quantity, currentPrice, orderType, duration);
-            dbHandler.addTransaction(transaction);
-
+            Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("message", "Stock purchased successfully");
-            response.put("totalCost", totalCost);
+            response.put("message", "Limit order placed");
+            response.put("orderId", order.getId());
+            response.put("orderStatus", order.getStatus());
             return response;
-
+        } catch (RateLimitedException e) {
+            return rateLimited(e);
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("message", "Error buying stock: " + e.getMessage());
-            return response;
+            return rejection("Error placing limit order: " + e.getMessage());
         }
     }
 
-    public Map<String, Object> sellStock(String username, String symbol, String stockName, int quantity, String orderType, String duration) {
-        Map<String, Object> response = new HashMap<>();
-        try {
-            // Get current stock price
-            Map<String, Object> stockData = alphaVantageService.getStockQuote(symbol);
-            double currentPrice = Double.parseDouble((String) stockData.get("price"));
+    // Fills from the order book take the same locked, single-transaction path as market orders
+    private TradeResult fillOrder(Order order, double price) {
+        Transaction transaction = new Transaction(order.getUsername(), order.getSide(), order.getSymbol(), order.getStockName(),
+                order.getQuantity(), price, "LIMIT", order.getDuration());
+        return commitTrade(transaction);
+    }
 
-            // Check if user has enough stocks
-            List<Portfolio> portfolio = dbHandler.getPortfolioByUsername(username);
-            Portfolio existingStock = portfolio.stream()
-                    .filter(p -> p.getSymbol().equals(symbol))
-                    .findFirst()
-                    .orElse(null);
+    // Rejects from the ledger without touching SQLite; otherwise commits and applies the result.
+    // The guarded UPDATEs in executeTrade still have the final say.
+    private TradeResult commitTrade(Transaction transaction) {
+        String username = transaction.getUsername();
+        return accountLocks.withLock(username, () -> {
+            AccountLedger.Account account = ledger.get(username);
+            if (account == null) {
+                return TradeResult.rejected("User not found");
+            }
+            if ("BUY".equals(transaction.getType())) {
+                if (account.getBalance() < transaction.getTotalAmount()) {
+                    return TradeResult.rejected("Insufficient balance");
+                }
+            } else if (account.getQuantity(transaction.getSymbol()) < transaction.getQuantity()) {
+                return TradeResult.rejected("Insufficient stocks");
+            }
+            TradeResult result = dbHandler.executeTrade(transaction);
+            if (result.isIndeterminate()) {
+                // SQLite may hold the trade even though it was not acknowledged
+                ledger.invalidate(username);
+            }
+            ledger.apply(transaction, result);
+            if (result.isSuccess()) {
+                for (TradeListener listener : tradeListeners) {
+                    listener.onTrade(transaction, result);
+                }
+            }
+            return result;
+        });
+    }
 
-            if (existingStock == null || existingStock.getQuantity() < quantity) {
-                response.put("success", false);
-                response.put("message", "Insufficient stocks");
-                return response;
+    private Map<String, Object> tradeResponse(String type, TradeResult result, double price) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", result.isSuccess());
+        response.put("message", result.getMessage());
+        if (result.isIndeterminate()) {
+            response.put("indeterminate", true);
+        }
+        if (result.isSuccess()) {
+            response.put("BUY".equals(type) ? "totalCost" : "totalSale", result.getTotalAmount());
+            if (!"BUY".equals(type)) {
+                response.put("realizedGain", result.getRealizedGain());
             }
+            response.put("balance", result.getBalance());
+            response.put("email", result.getEmail());
+            response.put("price", price);
+            response.put("positionQuantity", result.getPositionQuantity());
+        }
+        return response;
+    }
 
-            // Calculate total sale amount
-            double totalSale = currentPrice * quantity;
+    private static Map<String, Object> rejection(String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        return response;
+    }
 
-            // Update user balance
-            User user = dbHandler.getUserByUsername(username);
-            double newBalance = user.getBalance() + totalSale;
-            boolean balanceUpdated = dbHandler.updateUserBalance(username, newBalance);
+    // Nothing was executed; retryAfter tells the HTTP layer to answer 503 rather than 400
+    private static Map<String, Object> rateLimited(RateLimitedException e) {
+        Map<String, Object> response = rejection(e.getMessage());
+        response.put("retryAfter", e.getRetryAfterSeconds());
+        return response;
+    }
 
-            if (!balanceUpdated) {
-                response.put("success", false);
-                response.put("message", "Failed to update balance");
-                return response;
-            }
+    /** Overwrites the cash balance outside any trade; the ledger reloads the account on next use. */
+    public boolean updateUserBalance(String username, double newBalance) {
+        return accountLocks.withLock(username, () -> {
+            boolean updated = dbHandler.updateUserBalance(username, newBalance);
+            ledger.invalidate(username);
+            return updated;
+        });
+    }
 
-            // Update portfolio
-            int newQuantity = existingStock.getQuantity() - quantity;
-            if (newQuantity == 0) {
-                // Remove from portfolio if quantity becomes zero
-                dbHandler.removeFromPortfolio(username, symbol);
-            } else {
-                // Update quantity
-                existingStock.setQuantity(newQuantity);
-                existingStock.setCurrentPrice(currentPrice);
-                dbHandler.removeFromPortfolio(username, symbol);
-                dbHandler.addToPortfolio(existingStock);
-            }
+    public boolean cancelOrder(String username, long orderId) {
+        return orderBookService.cancel(username, orderId);
+    }
 
-            // Record transaction
-            Transaction transaction = new Transaction(username, "SELL", symbol, stockName, quantity, currentPrice, orderType, duration);
-            dbHandler.addTransaction(transaction);
+    public List<Order> getOrders(String username) {
+        return orderBookService.getOrders(username);
+    }
 
-            response.put("success", true);
-            response.put("message", "Stock sold successfully");
-            response.put("totalSale", totalSale);
-            return response;
+    public OrderBookService getOrderBookService() {
+        return orderBookService;
+    }
 
-        } catch (Exception e) {
-            response.put("success", false);
-            response.put("message", "Error selling stock: " + e.getMessage());
-            return response;
-        }
+    public StripedLocks getAccountLocks() {
+        return accountLocks;
+    }
+
+    public void addTradeListener(TradeListener listener) {
+        tradeListeners.add(listener);
+    }
+
+    public AccountLedger getLedger() {
+        return ledger;
     }
 
     public List<Portfolio> getPortfolio(String username) {
-        List<Portfolio> portfolio = dbHandler.getPortfolioByUsername(username);
+        AccountLedger.Account account = ledger.get(username);
+        return account != null ? price(account.toPortfolio()) : new ArrayList<>();
+    }
 
-        // Update current prices for all portfolio items
+    private List<Portfolio> price(List<Portfolio> portfolio) {
+
+        // Update current prices for all portfolio items in one concurrent batch
+        List<String> symbols = new ArrayList<>(portfolio.size());
+        for (Portfolio item : portfolio) {
+            symbols.add(item.getSymbol());
+        }
+        Map<String, AlphaVantageService.QuoteResult> quotes = alphaVantageService.getQuotes(symbols);
         for (Portfolio item : portfolio) {
+            AlphaVantageService.QuoteResult quote = quotes.get(item.getSymbol());
             try {
-                Map<String, Object> stockData = alphaVantageService.getStockQuote(item.getSymbol());
-                double currentPrice = Double.parseDouble((String) stockData.get("price"));
-                item.setCurrentPrice(currentPrice);
+                if (quote != null && quote.hasPrice()) {
+                    item.setCurrentPrice(quote.getPrice());
+                    item.setPriceStale(quote.isStale());
+                } else {
+                    // Keep the stored price
+                    item.setPriceStale(true);
+                }
+                if (quote != null && quote.getError() != null) {
+                    System.out.println("Error updating price for " + item.getSymbol() + ": " + quote.getError());
+                }
             } catch (Exception e) {
+                item.setPriceStale(true);
                 System.out.println("Error updating price for " + item.getSymbol() + ": " + e.getMessage());
             }
         }
@@ -176,37 +275,81 @@ public class PortfolioService {
         return dbHandler.getTransactionsByUsername(username);
     }
 
+    /** A keyset page of the user's history, newest first; null filters are ignored. */
+    public TransactionPage getTransactionPage(String username, String symbol, String type, LocalDate from, LocalDate to,
+                                              TransactionPage.Cursor cursor, int limit) {
+        return dbHandler.getTransactionPage(username, symbol, type, from, to, cursor, limit);
+    }
+
+    /** Streams the user's whole history, oldest first; returns rows written or -1 on a database error. */
+    public long exportTransactions(String username, DatabaseHandler.RowVisitor<Transaction> visitor) throws IOException {
+        return dbHandler.forEachTransaction(username, visitor);
+    }
+
+    /** Streams the user's open positions at their stored prices; returns rows written or -1 on a database error. */
+    public long exportPositions(String username, DatabaseHandler.RowVisitor<Portfolio> visitor) throws IOException {
+        return dbHandler.forEachPosition(username, visitor);
+    }
+
     public List<Transaction> getTransactionsByType(String username, String type) {
         return dbHandler.getTransactionsByType(username, type);
     }
 
+    /**
+     * Holdings, prices and the lifetime investment fetched once, with all totals derived
+     * from that one read. Handlers that need more than one figure should use this.
+     */
+    public PortfolioSnapshot getPortfolioSnapshot(String username) {
+        AccountLedger.Account account = ledger.get(username);
+        if (account == null) {
+            return PortfolioSnapshot.of(username, new ArrayList<>(), 0);
+        }
+        return PortfolioSnapshot.of(username, price(account.toPortfolio()), account.getTotalInvestment());
+    }
+
     public double getPortfolioValue(String username) {
-        List<Portfolio> portfolio = getPortfolio(username);
-        return portfolio.stream()
-                .mapToDouble(p -> p.getCurrentPrice() * p.getQuantity())
-                .sum();
+        return getPortfolioSnapshot(username).getTotalValue();
     }
 
     public double getTotalGainLoss(String username) {
-        List<Portfolio> portfolio = getPortfolio(username);
-        return portfolio.stream()
-                .mapToDouble(p -> (p.getCurrentPrice() - p.getPurchasePrice()) * p.getQuantity())
-                .sum();
+        return getPortfolioSnapshot(username).getTotalGainLoss();
     }
 
     public Map<String, Object> getPortfolioStats(String username) {
-        List<Portfolio> portfolio = getPortfolio(username);
-        double totalValue = getPortfolioValue(username);
-        double totalGainLoss = getTotalGainLoss(username);
-        double totalInvestment = dbHandler.getTotalInvestment(username);
+        PortfolioSnapshot snapshot = getPortfolioSnapshot(username);
+        PnlReport pnl = pnlFor(username, snapshot);
 
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalValue", totalValue);
-        stats.put("totalGainLoss", totalGainLoss);
-        stats.put("totalInvestment", totalInvestment);
-        stats.put("holdingsCount", portfolio.size());
-        stats.put("annualReturn", totalInvestment > 0 ? (totalGainLoss / totalInvestment) * 100 : 0);
+        stats.put("totalValue", snapshot.getTotalValue());
+        stats.put("totalGainLoss", snapshot.getTotalGainLoss());
+        stats.put("totalInvestment", snapshot.getTotalInvestment());
+        stats.put("totalCost", snapshot.getTotalCost());
+        stats.put("holdingsCount", snapshot.getHoldingsCount());
+        stats.put("annualReturn", pnl.getAnnualReturn());
+        stats.put("realizedGainLoss", pnl.getTotalRealized());
 
         return stats;
     }
-}
\ No newline at end of file
+
+    /**
+     * Realized and unrealized P&L per lot and symbol, from the open lots and the running
+     * realized totals. Prices are the same ones the portfolio view uses.
+     */
+    public PnlReport getPnl(String username) {
+        return pnlFor(username, getPortfolioSnapshot(username));
+    }
+
+    private PnlReport pnlFor(String username, PortfolioSnapshot snapshot) {
+        Map<String, Double> prices = new HashMap<>();
+        for (Portfolio item : snapshot.getHoldings()) {
+            prices.put(item.getSymbol(), item.getCurrentPrice());
+        }
+        double[] realizedCost = dbHandler.getRealizedCost(username);
+        return PnlReport.of(username, dbHandler.getLotMethod(username), dbHandler.getOpenLots(username),
+                prices, dbHandler.getRealizedGains(username), realizedCost[0], realizedCost[1], LocalDateTime.now());
+    }
+
+    public boolean setLotMethod(String username, LotMethod method) {
+        return dbHandler.setLotMethod(username, method);
+    }
+}
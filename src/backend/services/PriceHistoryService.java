@@ -0,0 +1,126 @@
+package backend.services;
+
+import backend.database.DatabaseHandler;
+import backend.models.PriceHistory;
+import backend.services.UpstreamScheduler.Priority;
+import backend.util.MarketHours;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Daily price history backed by the price_history table. Each symbol's bars are held in
+ * memory as primitive columns; when the newest stored bar is older than the last completed
+ * trading day, the missing bars are fetched from the market data provider and appended.
+ */
+public class PriceHistoryService {
+    // Holidays never produce the "expected" bar, so don't retry upstream more often than this
+    private static final long RECHECK_INTERVAL_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final DatabaseHandler dbHandler;
+    private final AlphaVantageService alphaVantageService;
+    private final Map<String, Entry> histories = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> refreshLocks = new ConcurrentHashMap<>();
+
+    public PriceHistoryService(DatabaseHandler dbHandler, AlphaVantageService alphaVantageService) {
+        this.dbHandler = dbHandler;
+        this.alphaVantageService = alphaVantageService;
+    }
+
+    /** Full stored history for the symbol, oldest first; throws if none is stored or fetchable. */
+    public PriceHistory getHistory(String symbol) {
+        String key = symbol.trim().toUpperCase();
+        Entry entry = histories.get(key);
+        if (entry != null && !entry.needsRefresh(System.nanoTime())) {
+            return requireBars(key, entry.history);
+        }
+
+        ReentrantLock lock = refreshLocks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            entry = histories.get(key);
+            if (entry != null && !entry.needsRefresh(System.nanoTime())) {
+                return requireBars(key, entry.history);
+            }
+            PriceHistory stored = entry != null ? entry.history : dbHandler.getPriceHistory(key, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            PriceHistory history = refresh(key, stored);
+            histories.put(key, new Entry(history, System.nanoTime()));
+            return requireBars(key, history);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bars between two dates inclusive. */
+    public PriceHistory getHistory(String symbol, LocalDate from, LocalDate to) {
+        return getHistory(symbol).range((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /**
+     * Whatever is already stored for the symbol, possibly empty, without going upstream.
+     * For bulk readers such as backtests that must not queue hundreds of provider calls.
+     */
+    public PriceHistory getStoredHistory(String symbol) {
+        String key = symbol.trim().toUpperCase();
+        Entry entry = histories.get(key);
+        if (entry != null) {
+            return entry.history;
+        }
+        PriceHistory stored = dbHandler.getPriceHistory(key, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        // Cached as already due for a check, so the next getHistory still refreshes it
+        histories.putIfAbsent(key, new Entry(stored, System.nanoTime() - RECHECK_INTERVAL_NANOS));
+        return stored;
+    }
+
+    /** The most recent {@code count} closes, oldest first. */
+    public double[] getRecentCloses(String symbol, int count) {
+        return getHistory(symbol).lastCloses(count);
+    }
+
+    private static PriceHistory requireBars(String symbol, PriceHistory history) {
+        if (history.isEmpty()) {
+            throw new RuntimeException("No price history available for " + symbol);
+        }
+        return history;
+    }
+
+    private PriceHistory refresh(String symbol, PriceHistory stored) {
+        int lastStored = stored.getLastEpochDay();
+        if (!stored.isEmpty() && lastStored >= MarketHours.lastCompletedTradingDay()) {
+            return stored;
+        }
+        try {
+            PriceHistory fetched = alphaVantageService.getDailyHistory(symbol, Priority.VALUATION);
+            // Re-write the last stored bar too, in case it was captured intraday
+            int written = dbHandler.appendPriceHistory(fetched, stored.isEmpty() ? Integer.MIN_VALUE : lastStored);
+            if (written > 0) {
+                System.out.println(" Stored " + written + " daily bars for " + symbol);
+                return dbHandler.getPriceHistory(symbol, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            }
+            return written < 0 && stored.isEmpty() ? fetched : stored;
+        } catch (RuntimeException e) {
+            System.err.println("Failed to refresh price history for " + symbol + ": " + e.getMessage());
+            return stored;
+        }
+    }
+
+    private static class Entry {
+        final PriceHistory history;
+        final long checkedAtNanos;
+
+        Entry(PriceHistory history, long checkedAtNanos) {
+            this.history = history;
+            this.checkedAtNanos = checkedAtNanos;
+        }
+
+        boolean needsRefresh(long nowNanos) {
+            if (nowNanos - checkedAtNanos < RECHECK_INTERVAL_NANOS) {
+                return false;
+            }
+            return history.isEmpty() || history.getLastEpochDay() < MarketHours.lastCompletedTradingDay();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package backend.services;
+
+import backend.models.PriceHistory;
+import backend.services.UpstreamScheduler.Priority;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Passes calls through to another provider and appends every successful response to a
+ * local recording that {@link ReplayMarketDataProvider} can serve later.
+ *
+ * The file is a short header followed by self-contained frames, one per response:
+ * compressed length, raw length, CRC32 of the compressed bytes, then the deflated record
+ * (type byte, wall-clock millis, key, typed payload). Quotes are string pairs, history
+ * is raw primitive bars, and search results are kept as JSON. Every session appends to
+ * the same file, and each frame goes out in one write, so a crash leaves at most one torn
+ * frame at the end. The next session cuts that frame off before appending, and replay
+ * stops cleanly at it, so a crash loses at most the record being written.
+ */
+public class RecordingMarketDataProvider implements MarketDataProvider, AutoCloseable {
+    static final byte TYPE_QUOTE = 1;
+    static final byte TYPE_SEARCH = 2;
+    static final byte TYPE_HISTORY = 3;
+
+    private static final int MAGIC = 0x534D4452; // "SMDR"
+    private static final byte FORMAT_VERSION = 2;
+    private static final int FILE_HEADER_BYTES = 5;
+    private static final int FRAME_HEADER_BYTES = 12;
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final MarketDataProvider delegate;
+    private final Path file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private OutputStream out;
+    // Reused for every record, under the lock
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(8192);
+    private final DataOutputStream data = new DataOutputStream(body);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+    private byte[] compressed = new byte[8192];
+
+    public RecordingMarketDataProvider(MarketDataProvider delegate, Path file) {
+        this.delegate = delegate;
+        this.file = file;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                if (channel.size() == 0) {
+                    channel.write(ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).put(FORMAT_VERSION).flip());
+                } else {
+                    long valid = validLength(file);
+                    if (valid < channel.size()) {
+                        System.err.println("Market data recording " + file + " ends in a torn record, cutting "
+                                + (channel.size() - valid) + " bytes before appending");
+                        channel.truncate(valid);
+                    }
+                }
+                channel.position(channel.size());
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            this.out = Channels.newOutputStream(channel);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open market data recording " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getQuote(String symbol, Priority priority) {
+        Map<String, Object> quote = delegate.getQuote(symbol, priority);
+        record(TYPE_QUOTE, symbol.trim().toUpperCase(), data -> {
+            data.writeShort(quote.size());
+            for (Map.Entry<String, Object> entry : quote.entrySet()) {
+                data.writeUTF(entry.getKey());
+                data.writeUTF(String.valueOf(entry.getValue()));
+            }
+        });
+        return quote;
+    }
+
+    @Override
+    public Map<String, Object> searchSymbols(String keywords) {
+        Map<String, Object> result = delegate.searchSymbols(keywords);
+        record(TYPE_SEARCH, searchKey(keywords), data -> {
+            byte[] json = new JSONObject(result).toString().getBytes(StandardCharsets.UTF_8);
+            data.writeInt(json.length);
+            data.write(json);
+        });
+        return result;
+    }
+
+    @Override
+    public PriceHistory getDailyHistory(String symbol, Priority priority) {
+        PriceHistory history = delegate.getDailyHistory(symbol, priority);
+        record(TYPE_HISTORY, symbol.trim().toUpperCase(), data -> {
+            data.writeInt(history.size());
+            for (int i = 0; i < history.size(); i++) {
+                data.writeInt(history.getEpochDay(i));
+                data.writeDouble(history.getOpen(i));
+                data.writeDouble(history.getHigh(i));
+                data.writeDouble(history.getLow(i));
+                data.writeDouble(history.getClose(i));
+                data.writeLong(history.getVolume(i));
+            }
+        });
+        return history;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            deflater.end();
+        } catch (IOException e) {
+            System.err.println("Failed to close market data recording: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String searchKey(String keywords) {
+        return keywords.trim().toLowerCase();
+    }
+
+    /**
+     * Reads the next record, or returns null at a clean end of file. Throws EOFException
+     * for a frame cut short and IOException for one that fails its checksum.
+     */
+    static DataInputStream readRecord(DataInputStream in, Inflater inflater) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] frame;
+        int rawLength;
+        int checksum;
+        try {
+            rawLength = in.readInt();
+            checksum = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || rawLength <= 0 || rawLength > MAX_RECORD_BYTES) {
+                throw new IOException("Corrupt record header");
+            }
+            frame = new byte[length];
+            in.readFully(frame);
+        } catch (EOFException e) {
+            throw new EOFException("Record cut short");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(frame);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Record checksum mismatch");
+        }
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(frame);
+        try {
+            if (inflater.inflate(raw) != rawLength || !inflater.finished()) {
+                throw new IOException("Record does not inflate to its recorded length");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt record: " + e.getMessage(), e);
+        }
+        return new DataInputStream(new ByteArrayInputStream(raw));
+    }
+
+    /** Opens a recording for reading, positioned after the header. */
+    static DataInputStream openForReading(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 65536));
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IOException("not a market data recording in the current format");
+            }
+        } catch (EOFException e) {
+            in.close();
+            throw new IOException("missing recording header", e);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    // Header plus every complete, intact frame
+    private static long validLength(Path file) throws IOException {
+        long valid = FILE_HEADER_BYTES;
+        try (DataInputStream in = openForReading(file)) {
+            Inflater inflater = new Inflater();
+            try {
+                while (true) {
+                    in.mark(FRAME_HEADER_BYTES);
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        return valid;
+                    }
+                    in.reset();
+                    if (readRecord(in, inflater) == null) {
+                        return valid;
+                    }
+                    valid += FRAME_HEADER_BYTES + length;
+                }
+            } catch (IOException e) {
+                return valid;
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException e) {
+            throw new IOException(file + " is " + e.getMessage() + "; record to a new file", e);
+        }
+    }
+
+    private interface Payload {
+        void write(DataOutputStream data) throws IOException;
+    }
+
+    // A failed write stops recording but never fails the live call it was capturing
+    private void record(byte type, String key, Payload payload) {
+        lock.lock();
+        try {
+            if (out == null) {
+                return;
+            }
+            body.reset();
+            data.writeByte(type);
+            data.writeLong(System.currentTimeMillis());
+            data.writeUTF(key);
+            payload.write(data);
+            data.flush();
+
+            deflater.reset();
+            deflater.setInput(body.toByteArray());
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            crc.reset();
+            crc.update(compressed, 0, length);
+
+            // One write per frame, so a crash tears at most this one
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + length);
+            frame.putInt(length).putInt(body.size()).putInt((int) crc.getValue()).put(compressed, 0, length);
+            out.write(frame.array());
+        } catch (IOException e) {
+            System.err.println("Market data recording to " + file + " failed, recording stopped: " + e.getMessage());
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // already failing
+            }
+            out = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
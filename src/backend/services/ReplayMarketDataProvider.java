@@ -0,0 +1,228 @@
+package backend.services;
+
+import backend.models.PriceHistory;
+import backend.services.UpstreamScheduler.Priority;
+
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * Serves a file written by {@link RecordingMarketDataProvider} without touching the network.
+ *
+ * With a positive speed the recording plays back on a clock: at speed 1 a quote recorded
+ * ten minutes into the session is served ten minutes after startup, at speed 60 after ten
+ * seconds, and the recording loops once it runs out. With speed 0 every call for a key
+ * steps to that key's next recorded response, which keeps tests deterministic.
+ */
+public class ReplayMarketDataProvider implements MarketDataProvider {
+    private final Map<String, Timeline> quotes;
+    private final Map<String, Timeline> searches;
+    private final Map<String, Timeline> histories;
+    private final double speed;
+    private final long firstRecordedMillis;
+    private final long spanMillis;
+    private final long startNanos = System.nanoTime();
+
+    private ReplayMarketDataProvider(Map<String, TimelineBuilder> quotes, Map<String, TimelineBuilder> searches,
+                                     Map<String, TimelineBuilder> histories, double speed, long first, long last) {
+        this.quotes = build(quotes);
+        this.searches = build(searches);
+        this.histories = build(histories);
+        this.speed = speed;
+        this.firstRecordedMillis = first;
+        this.spanMillis = Math.max(1, last - first + 1);
+    }
+
+    public static ReplayMarketDataProvider load(Path file, double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Replay speed must be >= 0, got " + speed);
+        }
+        Map<String, TimelineBuilder> quotes = new HashMap<>();
+        Map<String, TimelineBuilder> searches = new HashMap<>();
+        Map<String, TimelineBuilder> histories = new HashMap<>();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        int records = 0;
+
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = RecordingMarketDataProvider.openForReading(file)) {
+            while (true) {
+                DataInputStream record;
+                try {
+                    record = RecordingMarketDataProvider.readRecord(in, inflater);
+                } catch (IOException e) {
+                    // The recorder was killed mid-record; everything before it is still usable
+                    System.err.println("Market data recording " + file + " ends in a torn record (" + e.getMessage()
+                            + "), replaying " + records + " complete records");
+                    break;
+                }
+                if (record == null) {
+                    break;
+                }
+                int type = record.readByte();
+                long recordedAt = record.readLong();
+                String key = record.readUTF();
+                switch (type) {
+                    case RecordingMarketDataProvider.TYPE_QUOTE ->
+                            quotes.computeIfAbsent(key, k -> new TimelineBuilder()).add(recordedAt, readQuote(record));
+                    case RecordingMarketDataProvider.TYPE_SEARCH ->
+                            searches.computeIfAbsent(key, k -> new TimelineBuilder()).add(recordedAt, readSearch(record));
+                    case RecordingMarketDataProvider.TYPE_HISTORY ->
+                            histories.computeIfAbsent(key, k -> new TimelineBuilder()).add(recordedAt, readHistory(key, record));
+                    default -> throw new IOException("Unknown record type " + type + " after " + records + " records");
+                }
+                first = Math.min(first, recordedAt);
+                last = Math.max(last, recordedAt);
+                records++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load market data recording " + file + ": " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+
+        if (records == 0) {
+            throw new RuntimeException("Market data recording " + file + " has no records");
+        }
+        System.out.println(" Loaded " + records + " recorded market data responses (" + quotes.size()
+                + " quote symbols, " + histories.size() + " histories, " + searches.size() + " searches)");
+        return new ReplayMarketDataProvider(quotes, searches, histories, speed, first, last);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getQuote(String symbol, Priority priority) {
+        Timeline timeline = quotes.get(symbol.trim().toUpperCase());
+        if (timeline == null) {
+            throw new RuntimeException("Error fetching stock data: no recorded quote for " + symbol);
+        }
+        return (Map<String, Object>) current(timeline);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> searchSymbols(String keywords) {
+        Timeline timeline = searches.get(RecordingMarketDataProvider.searchKey(keywords));
+        if (timeline == null) {
+            throw new RuntimeException("Error searching stocks: no recorded search for '" + keywords + "'");
+        }
+        return (Map<String, Object>) current(timeline);
+    }
+
+    @Override
+    public PriceHistory getDailyHistory(String symbol, Priority priority) {
+        Timeline timeline = histories.get(symbol.trim().toUpperCase());
+        if (timeline == null) {
+            throw new RuntimeException("Error fetching price history: no recorded history for " + symbol);
+        }
+        return (PriceHistory) current(timeline);
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    private Object current(Timeline timeline) {
+        return speed == 0 ? timeline.next() : timeline.at(replayMillis());
+    }
+
+    // Position in the recording's own wall-clock time, wrapping at the end
+    private long replayMillis() {
+        long elapsed = (long) ((System.nanoTime() - startNanos) / 1_000_000L * speed);
+        return firstRecordedMillis + Math.floorMod(elapsed, spanMillis);
+    }
+
+    private static Map<String, Object> readQuote(DataInputStream in) throws IOException {
+        int fields = in.readUnsignedShort();
+        Map<String, Object> quote = new LinkedHashMap<>(fields * 2);
+        for (int i = 0; i < fields; i++) {
+            quote.put(in.readUTF(), in.readUTF());
+        }
+        return Collections.unmodifiableMap(quote);
+    }
+
+    private static Map<String, Object> readSearch(DataInputStream in) throws IOException {
+        byte[] json = new byte[in.readInt()];
+        in.readFully(json);
+        return new JSONObject(new String(json, StandardCharsets.UTF_8)).toMap();
+    }
+
+    private static PriceHistory readHistory(String symbol, DataInputStream in) throws IOException {
+        int bars = in.readInt();
+        PriceHistory.Builder builder = new PriceHistory.Builder(symbol, bars);
+        for (int i = 0; i < bars; i++) {
+            builder.add(in.readInt(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readLong());
+        }
+        return builder.build();
+    }
+
+    private static Map<String, Timeline> build(Map<String, TimelineBuilder> builders) {
+        Map<String, Timeline> timelines = new HashMap<>(builders.size() * 2);
+        builders.forEach((key, builder) -> timelines.put(key, builder.build()));
+        return timelines;
+    }
+
+    private static class TimelineBuilder {
+        private final List<Long> times = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+
+        void add(long recordedAt, Object value) {
+            times.add(recordedAt);
+            values.add(value);
+        }
+
+        // Sessions appended to the same file can interleave, so sort once by time
+        Timeline build() {
+            Integer[] order = new Integer[times.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(times.get(a), times.get(b)));
+            long[] sortedTimes = new long[order.length];
+            Object[] sortedValues = new Object[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedTimes[i] = times.get(order[i]);
+                sortedValues[i] = values.get(order[i]);
+            }
+            return new Timeline(sortedTimes, sortedValues);
+        }
+    }
+
+    /** All recorded responses for one key, oldest first. */
+    private static class Timeline {
+        private final long[] times;
+        private final Object[] values;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        Timeline(long[] times, Object[] values) {
+            this.times = times;
+            this.values = values;
+        }
+
+        Object next() {
+            return values[Math.floorMod(cursor.getAndIncrement(), values.length)];
+        }
+
+        // Latest response recorded at or before the given time; before the first one, serve the first
+        Object at(long recordedMillis) {
+            int index = Arrays.binarySearch(times, recordedMillis);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return values[Math.max(0, index)];
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package backend.services;
+
+import backend.models.Portfolio;
+import backend.models.PortfolioSnapshot;
+import backend.models.PriceHistory;
+import backend.models.RiskReport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Portfolio risk from daily close-to-close returns over the last year: per-holding
+ * volatility and beta, the correlation matrix, and one-day historical and parametric VaR.
+ *
+ * Closes are aligned on the days every symbol traded, then each return series is
+ * standardized once so a correlation is a plain dot product. Those dot products, one per
+ * symbol pair, are split across the common fork-join pool. Everything stays in primitive
+ * arrays; histories come from {@link PriceHistoryService}, which keeps them in memory.
+ */
+public class RiskService {
+    private static final int LOOKBACK_DAYS = 252;
+    private static final int MIN_OBSERVATIONS = 30;
+    private static final double TRADING_DAYS = 252.0;
+    private static final double Z_95 = 1.6448536269514722;
+    private static final double Z_99 = 2.3263478740408408;
+    // Multiply-adds per fork-join leaf; smaller leaves cost more to schedule than to run
+    private static final int LEAF_WORK = 16_384;
+
+    private final PortfolioService portfolioService;
+    private final PriceHistoryService priceHistoryService;
+    private final String benchmark;
+
+    public RiskService(PortfolioService portfolioService, PriceHistoryService priceHistoryService) {
+        this(portfolioService, priceHistoryService, benchmarkFromEnv());
+    }
+
+    public RiskService(PortfolioService portfolioService, PriceHistoryService priceHistoryService, String benchmark) {
+        this.portfolioService = portfolioService;
+        this.priceHistoryService = priceHistoryService;
+        this.benchmark = benchmark;
+    }
+
+    public RiskReport analyze(String username) {
+        PortfolioSnapshot snapshot = portfolioService.getPortfolioSnapshot(username);
+
+        // Value by symbol; histories are fetched once per symbol
+        Map<String, Double> values = new LinkedHashMap<>();
+        List<Portfolio> holdings = snapshot.getHoldings();
+        for (int i = 0; i < holdings.size(); i++) {
+            values.merge(holdings.get(i).getSymbol().trim().toUpperCase(), snapshot.getMarketValue(i), Double::sum);
+        }
+
+        List<String> symbols = new ArrayList<>();
+        List<PriceHistory> histories = new ArrayList<>();
+        List<String> excluded = new ArrayList<>();
+        for (String symbol : values.keySet()) {
+            PriceHistory history = historyOrNull(symbol);
+            if (history != null && history.size() > MIN_OBSERVATIONS) {
+                symbols.add(symbol);
+                histories.add(history);
+            } else {
+                excluded.add(symbol);
+            }
+        }
+        if (symbols.isEmpty()) {
+            return RiskReport.empty(username, benchmark, excluded);
+        }
+
+        PriceHistory benchmarkHistory = historyOrNull(benchmark);
+        boolean hasBenchmark = benchmarkHistory != null && benchmarkHistory.size() > MIN_OBSERVATIONS;
+        if (hasBenchmark) {
+            histories.add(benchmarkHistory);
+        }
+
+        // Row per series (holdings, then the benchmark if any), column per common day
+        double[][] returns = alignedReturns(histories, LOOKBACK_DAYS);
+        int observations = returns[0].length;
+        if (observations < MIN_OBSERVATIONS) {
+            throw new RuntimeException("Not enough overlapping price history to assess risk");
+        }
+
+        int n = symbols.size();
+        int series = returns.length;
+        double[] mean = new double[series];
+        double[] stdDev = new double[series];
+        double[][] standardized = new double[series][];
+        for (int s = 0; s < series; s++) {
+            mean[s] = mean(returns[s]);
+            stdDev[s] = stdDev(returns[s], mean[s]);
+            standardized[s] = standardize(returns[s], mean[s], stdDev[s]);
+        }
+        double[][] correlation = correlationMatrix(standardized);
+
+        double[] weights = new double[n];
+        double value = 0;
+        for (int i = 0; i < n; i++) {
+            weights[i] = values.get(symbols.get(i));
+            value += weights[i];
+        }
+        for (int i = 0; i < n; i++) {
+            weights[i] = value > 0 ? weights[i] / value : 1.0 / n;
+        }
+
+        double[] volatility = new double[n];
+        double[] beta = new double[n];
+        int b = n;
+        for (int i = 0; i < n; i++) {
+            volatility[i] = stdDev[i] * Math.sqrt(TRADING_DAYS);
+            beta[i] = hasBenchmark && stdDev[b] > 0 ? correlation[i][b] * stdDev[i] / stdDev[b] : Double.NaN;
+        }
+
+        // sigma_p^2 = w' (D C D) w, from the same matrix the page shows
+        double variance = 0;
+        double portfolioMean = 0;
+        double portfolioBeta = hasBenchmark ? 0 : Double.NaN;
+        for (int i = 0; i < n; i++) {
+            portfolioMean += weights[i] * mean[i];
+            if (hasBenchmark) {
+                portfolioBeta += weights[i] * beta[i];
+            }
+            for (int j = 0; j < n; j++) {
+                variance += weights[i] * weights[j] * stdDev[i] * stdDev[j] * correlation[i][j];
+            }
+        }
+        double dailySigma = Math.sqrt(Math.max(0, variance));
+
+        double[] portfolioReturns = new double[observations];
+        for (int i = 0; i < n; i++) {
+            double w = weights[i];
+            double[] r = returns[i];
+            for (int t = 0; t < observations; t++) {
+                portfolioReturns[t] += w * r[t];
+            }
+        }
+        Arrays.sort(portfolioReturns);
+
+        double[][] holdingCorrelation = new double[n][];
+        for (int i = 0; i < n; i++) {
+            holdingCorrelation[i] = Arrays.copyOf(correlation[i], n);
+        }
+        return new RiskReport(username, benchmark, observations, symbols.toArray(new String[0]), weights, volatility,
+                beta, holdingCorrelation, value, dailySigma * Math.sqrt(TRADING_DAYS), portfolioBeta,
+                historicalLoss(portfolioReturns, 0.05) * value, historicalLoss(portfolioReturns, 0.01) * value,
+                Math.max(0, Z_95 * dailySigma - portfolioMean) * value,
+                Math.max(0, Z_99 * dailySigma - portfolioMean) * value, excluded);
+    }
+
+    public String getBenchmark() {
+        return benchmark;
+    }
+
+    private PriceHistory historyOrNull(String symbol) {
+        try {
+            return priceHistoryService.getHistory(symbol);
+        } catch (RuntimeException e) {
+            System.err.println("Risk: no history for " + symbol + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Simple daily returns over the last {@code lookback} days on which every series has a
+     * bar, oldest first. Walks the first series backwards and binary-searches the others.
+     */
+    static double[][] alignedReturns(List<PriceHistory> histories, int lookback) {
+        int series = histories.size();
+        PriceHistory reference = histories.get(0);
+        double[][] closes = new double[series][lookback + 1];
+        int[] cursor = new int[series];
+        int count = 0;
+        for (int k = reference.size() - 1; k >= 0 && count <= lookback; k--) {
+            int day = reference.getEpochDay(k);
+            boolean everywhere = true;
+            for (int s = 1; s < series && everywhere; s++) {
+                PriceHistory history = histories.get(s);
+                int index = history.indexOnOrAfter(day);
+                everywhere = index < history.size() && history.getEpochDay(index) == day;
+                cursor[s] = index;
+            }
+            if (!everywhere) {
+                continue;
+            }
+            int slot = lookback - count;
+            closes[0][slot] = reference.getClose(k);
+            for (int s = 1; s < series; s++) {
+                closes[s][slot] = histories.get(s).getClose(cursor[s]);
+            }
+            count++;
+        }
+
+        int observations = Math.max(0, count - 1);
+        int first = lookback + 1 - count;
+        double[][] returns = new double[series][observations];
+        for (int s = 0; s < series; s++) {
+            double[] c = closes[s];
+            double[] r = returns[s];
+            for (int t = 0; t < observations; t++) {
+                double previous = c[first + t];
+                r[t] = previous > 0 ? c[first + t + 1] / previous - 1 : 0;
+            }
+        }
+        return returns;
+    }
+
+    static double[][] correlationMatrix(double[][] standardized) {
+        int n = standardized.length;
+        double[][] correlation = new double[n][n];
+        int pairs = n * (n - 1) / 2;
+        int[] left = new int[pairs];
+        int[] right = new int[pairs];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            correlation[i][i] = 1.0;
+            for (int j = i + 1; j < n; j++) {
+                left[p] = i;
+                right[p] = j;
+                p++;
+            }
+        }
+        if (pairs > 0) {
+            int leafPairs = Math.max(1, LEAF_WORK / Math.max(1, standardized[0].length));
+            ForkJoinPool.commonPool().invoke(new PairTask(standardized, correlation, left, right, 0, pairs, leafPairs));
+        }
+        return correlation;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return values.length > 0 ? sum / values.length : 0;
+    }
+
+    // Sample standard deviation
+    private static double stdDev(double[] values, double mean) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double sum = 0;
+        for (double v : values) {
+            double d = v - mean;
+            sum += d * d;
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    // Scaled so the dot product of two rows is their correlation; a flat series stays all zeros
+    private static double[] standardize(double[] values, double mean, double stdDev) {
+        double[] z = new double[values.length];
+        if (stdDev > 0 && values.length > 1) {
+            double scale = 1.0 / (stdDev * Math.sqrt(values.length - 1));
+            for (int t = 0; t < values.length; t++) {
+                z[t] = (values[t] - mean) * scale;
+            }
+        }
+        return z;
+    }
+
+    // Loss at the given tail probability from sorted returns, as a positive fraction
+    private static double historicalLoss(double[] sortedReturns, double tail) {
+        int index = Math.min(sortedReturns.length - 1, (int) Math.floor(tail * sortedReturns.length));
+        return Math.max(0, -sortedReturns[index]);
+    }
+
+    private static String benchmarkFromEnv() {
+        String value = System.getenv("RISK_BENCHMARK");
+        return value == null || value.isBlank() ? "SPY" : value.trim().toUpperCase();
+    }
+
+    // Computes correlations for pairs [from, to); each pair writes its own two cells
+    private static final class PairTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] z;
+        private final double[][] out;
+        private final int[] left;
+        private final int[] right;
+        private final int from;
+        private final int to;
+        private final int leafPairs;
+
+        PairTask(double[][] z, double[][] out, int[] left, int[] right, int from, int to, int leafPairs) {
+            this.z = z;
+            this.out = out;
+            this.left = left;
+            this.right = right;
+            this.from = from;
+            this.to = to;
+            this.leafPairs = leafPairs;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafPairs) {
+                for (int p = from; p < to; p++) {
+                    double[] a = z[left[p]];
+                    double[] b = z[right[p]];
+                    double dot = 0;
+                    for (int t = 0; t < a.length; t++) {
+                        dot += a[t] * b[t];
+                    }
+                    // Clamp rounding drift so downstream math never sees |rho| > 1
+                    dot = Math.max(-1.0, Math.min(1.0, dot));
+                    out[left[p]][right[p]] = dot;
+                    out[right[p]][left[p]] = dot;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new PairTask(z, out, left, right, from, mid, leafPairs),
+                    new PairTask(z, out, left, right, mid, to, leafPairs));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package backend.services;
+
+import backend.models.PriceHistory;
+import backend.services.UpstreamScheduler.Priority;
+import backend.util.MarketHours;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates market data locally so the server can run with no API key and no network,
+ * which is what the load generator runs against. Every symbol is accepted: its reference
+ * price and daily history are derived from a hash of the symbol, so two runs see the
+ * same history, and the quote drifts around the last close as a function of wall-clock
+ * time so trades do not all execute at one price.
+ *
+ * SYNTHETIC_LATENCY_MS adds a fixed delay to every call to stand in for the upstream
+ * round trip; the default is 0.
+ */
+public class SyntheticMarketDataProvider implements MarketDataProvider {
+    private static final int HISTORY_DAYS = 2520; // ten years of trading days
+    private static final double DAILY_VOLATILITY = 0.015;
+
+    private final long latencyNanos;
+
+    public SyntheticMarketDataProvider(long latencyMillis) {
+        this.latencyNanos = Math.max(0, latencyMillis) * 1_000_000L;
+    }
+
+    @Override
+    public Map<String, Object> getQuote(String symbol, Priority priority) {
+        simulateLatency();
+        String key = symbol.trim().toUpperCase();
+        double previousClose = referencePrice(key);
+        double price = round(previousClose * Math.exp(intradayMove(key, System.currentTimeMillis() / 1000)));
+        double change = round(price - previousClose);
+        return Map.of(
+                "symbol", key,
+                "name", key + " Company",
+                "exchange", "NYSE",
+                "country", "United States",
+                "currency", "USD",
+                "mic", "XNYS",
+                "price", format(price),
+                "change", format(change),
+                "changePercent", String.format(Locale.ROOT, "%.4f%%", change / previousClose * 100)
+        );
+    }
+
+    @Override
+    public Map<String, Object> searchSymbols(String keywords) {
+        simulateLatency();
+        String key = keywords.trim().toUpperCase();
+        Map<String, Object> match = Map.of(
+                "1. symbol", key,
+                "2. name", key + " Company",
+                "3. type", "Equity",
+                "4. region", "United States",
+                "8. currency", "USD",
+                "9. matchScore", "1.0000");
+        return Map.of("bestMatches", List.of(match));
+    }
+
+    @Override
+    public PriceHistory getDailyHistory(String symbol, Priority priority) {
+        simulateLatency();
+        String key = symbol.trim().toUpperCase();
+
+        // Walk backwards from the reference price so the last bar always closes at it
+        int[] days = new int[HISTORY_DAYS];
+        LocalDate day = LocalDate.ofEpochDay(MarketHours.lastCompletedTradingDay());
+        for (int i = HISTORY_DAYS - 1; i >= 0; i--) {
+            while (!MarketHours.isTradingDay(day)) {
+                day = day.minusDays(1);
+            }
+            days[i] = (int) day.toEpochDay();
+            day = day.minusDays(1);
+        }
+
+        SplittableRandom random = new SplittableRandom(seed(key));
+        double[] closes = new double[HISTORY_DAYS];
+        closes[HISTORY_DAYS - 1] = referencePrice(key);
+        for (int i = HISTORY_DAYS - 2; i >= 0; i--) {
+            closes[i] = closes[i + 1] / Math.exp(gaussian(random) * DAILY_VOLATILITY);
+        }
+
+        PriceHistory.Builder builder = new PriceHistory.Builder(key, HISTORY_DAYS);
+        for (int i = 0; i < HISTORY_DAYS; i++) {
+            double close = round(closes[i]);
+            double open = round(i > 0 ? closes[i - 1] * Math.exp(gaussian(random) * DAILY_VOLATILITY / 4) : close);
+            double high = round(Math.max(open, close) * (1 + random.nextDouble() * DAILY_VOLATILITY / 2));
+            double low = round(Math.min(open, close) * (1 - random.nextDouble() * DAILY_VOLATILITY / 2));
+            builder.add(days[i], open, high, low, close, 100_000 + random.nextLong(10_000_000));
+        }
+        return builder.build();
+    }
+
+    // Last close: between 10 and 510, fixed per symbol
+    private static double referencePrice(String symbol) {
+        return round(10 + new SplittableRandom(seed(symbol)).nextDouble() * 500);
+    }
+
+    // A slow swing of about +-2% over ten minutes plus per-second noise, both deterministic in time
+    private static double intradayMove(String symbol, long epochSecond) {
+        long seed = seed(symbol);
+        double phase = (seed & 0xFFFF) / 65536.0 * 2 * Math.PI;
+        double swing = 0.02 * Math.sin(2 * Math.PI * epochSecond / 600.0 + phase);
+        double noise = gaussian(new SplittableRandom(seed ^ epochSecond)) * 0.001;
+        return swing + noise;
+    }
+
+    private static long seed(String symbol) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < symbol.length(); i++) {
+            h = 31 * h + symbol.charAt(i);
+        }
+        return h;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; nextDouble() can return 0, which log() cannot take
+        double u = 1.0 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static double round(double price) {
+        return Math.round(price * 100) / 100.0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private void simulateLatency() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+}
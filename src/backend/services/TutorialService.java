@@ -12,7 +12,8 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 public class TutorialService {
-    private Map<String, TutorialSection> tutorials = new HashMap<>();
+    private volatile Map<String, TutorialSection> tutorials = new HashMap<>();
+    private volatile long contentVersion;
     private TutorialDatabaseHandler dbHandler;
 
     public TutorialService() {
@@ -20,6 +21,16 @@ public class TutorialService {
         initializeStockMarketTutorials();
     }
 
+    // Rebuilds the tutorial content; bumping the version tells response caches to re-serialize
+    public synchronized void reloadTutorials() {
+        initializeStockMarketTutorials();
+        contentVersion++;
+    }
+
+    public long getContentVersion() {
+        return contentVersion;
+    }
+
     // Basic tutorial operations
     public List<TutorialSection> getAllTutorials() {
         return new ArrayList<>(tutorials.values());
@@ -383,6 +394,9 @@ public class TutorialService {
 
     // Stock Market Tutorials Initialization
     private void initializeStockMarketTutorials() {
+        // Built aside and published in one assignment so readers never see a partial catalog
+        Map<String, TutorialSection> loaded = new HashMap<>();
+
         // BEGINNER LEVEL TUTORIALS
 
         // Tutorial 1: Stock Market Fundamentals
@@ -429,7 +443,7 @@ public class TutorialService {
         fundamentals.addGlossaryTerm("Dividend", "A portion of a company's earnings paid to shareholders");
         fundamentals.addGlossaryTerm("IPO", "Initial Public Offering - when a company first sells shares to the public");
 
-        tutorials.put(fundamentals.getId(), fundamentals);
+        loaded.put(fundamentals.getId(), fundamentals);
 
         // Tutorial 2: Reading Stock Charts
         TutorialSection chartReading = new TutorialSection(
@@ -464,7 +478,7 @@ public class TutorialService {
 
 
 
-        tutorials.put(chartReading.getId(), chartReading);
+        loaded.put(chartReading.getId(), chartReading);
 
         // Tutorial 3: Risk Management
         TutorialSection riskManagement = new TutorialSection(
@@ -514,7 +528,7 @@ public class TutorialService {
         riskManagement.setQuiz(QuizData.getInvestmentRiskManagementQuiz());
         riskManagement.setHasQuiz(true);
 
-        tutorials.put(riskManagement.getId(), riskManagement);
+        loaded.put(riskManagement.getId(), riskManagement);
 
         // INTERMEDIATE LEVEL TUTORIALS
 
@@ -570,7 +584,7 @@ public class TutorialService {
         appleCase.setAnalysis("Apple demonstrates strong profitability with consistent revenue growth...");
         fundamentalAnalysis.addCaseStudy(appleCase);
 
-        tutorials.put(fundamentalAnalysis.getId(), fundamentalAnalysis);
+        loaded.put(fundamentalAnalysis.getId(), fundamentalAnalysis);
 
         // Tutorial 5: Options Trading Basics
         TutorialSection optionsTrading = new TutorialSection(
@@ -622,7 +636,7 @@ public class TutorialService {
         optionsTrading.setVideoUrl("https://www.youtube.com/embed/4HMm6mBvGKE?si=weBTcVwvhdOc4tlo");
         optionsTrading.setHasVideo(true);
 
-        tutorials.put(optionsTrading.getId(), optionsTrading);
+        loaded.put(optionsTrading.getId(), optionsTrading);
 
         // ADVANCED LEVEL TUTORIALS
 
@@ -670,7 +684,7 @@ public class TutorialService {
         advancedTechnical.addKeyPoint("Fibonacci Retracement Levels use ratios to identify potential support and resistance zones");
         advancedTechnical.addKeyPoint("Elliott Wave Theory posits that markets move in repetitive wave patterns");
         advancedTechnical.addKeyPoint("Ichimoku Cloud is a multi-faceted indicator that reveals dynamic support/resistance, trend direction, and momentum");
-        tutorials.put(advancedTechnical.getId(), advancedTechnical);
+        loaded.put(advancedTechnical.getId(), advancedTechnical);
 
         // Tutorial 7: Portfolio Management
         TutorialSection portfolioManagement = new TutorialSection(
@@ -717,7 +731,7 @@ public class TutorialService {
         portfolioManagement.addKeyPoint("Portfolio Rebalancing: Adjusts holdings periodically to maintain target risk levels.");
         portfolioManagement.addKeyPoint("Sharpe Ratio: Measures risk-adjusted returns to evaluate portfolio efficiency.");
         portfolioManagement.addKeyPoint("Behavioral Finance: Mitigates investor biases for rational decision-making.");
-        tutorials.put(portfolioManagement.getId(), portfolioManagement);
+        loaded.put(portfolioManagement.getId(), portfolioManagement);
 
         // Set up tutorial relationships
         fundamentals.addNextTutorial("chart-reading");
@@ -726,6 +740,7 @@ public class TutorialService {
         riskManagement.addNextTutorial("options-trading");
         fundamentalAnalysis.addNextTutorial("advanced-technical");
         fundamentalAnalysis.addNextTutorial("portfolio-management");
+        tutorials = loaded;
 
         // Initialize sample progress in database
         try {
@@ -0,0 +1,150 @@
+package backend.services;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shared HTTP client for third-party APIs (AlphaVantage, NewsAPI). One pooled
+ * {@link HttpClient} keeps connections alive between calls, every request has a connect
+ * timeout and a deadline covering the whole exchange, and JSON bodies are parsed straight
+ * off the response stream.
+ */
+public final class UpstreamHttpClient {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("upstream-http-", 0).factory());
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .executor(EXECUTOR)
+            .build();
+
+    private UpstreamHttpClient() {}
+
+    /** GETs the URL and parses the body as a JSON object; completes exceptionally on non-200. */
+    public static CompletableFuture<JSONObject> getJsonAsync(String url) {
+        CompletableFuture<HttpResponse<InputStream>> exchange =
+                CLIENT.sendAsync(request(url), HttpResponse.BodyHandlers.ofInputStream());
+        // Parsed on its own virtual thread so a slow body never blocks the client's subscriber chain
+        return withDeadline(exchange, exchange.thenApplyAsync(response -> {
+            if (response.statusCode() != 200) {
+                closeQuietly(response.body()); // error bodies are discarded unread
+                throw new UpstreamStatusException(response.statusCode());
+            }
+            return parseJson(response.body());
+        }, EXECUTOR));
+    }
+
+    /** GETs the URL and returns the body as a string; completes exceptionally on non-200. */
+    public static CompletableFuture<String> getStringAsync(String url) {
+        CompletableFuture<HttpResponse<String>> exchange =
+                CLIENT.sendAsync(request(url), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        return withDeadline(exchange, exchange.thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new UpstreamStatusException(response.statusCode());
+            }
+            return response.body();
+        }));
+    }
+
+    public static JSONObject getJson(String url) {
+        return join(getJsonAsync(url));
+    }
+
+    public static String getString(String url) {
+        return join(getStringAsync(url));
+    }
+
+    public static class UpstreamStatusException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        public UpstreamStatusException(int statusCode) {
+            super("HTTP Response Code: " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    private static HttpRequest request(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+    }
+
+    // HttpRequest.timeout only bounds the wait for response headers. This puts the same
+    // deadline on the whole exchange, body included, and aborts it when the deadline passes.
+    private static <T> CompletableFuture<T> withDeadline(CompletableFuture<? extends HttpResponse<?>> exchange,
+                                                         CompletableFuture<T> result) {
+        return result.orTimeout(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((value, error) -> {
+                    if (error instanceof TimeoutException) {
+                        exchange.cancel(true);
+                        exchange.thenAccept(response -> {
+                            if (response.body() instanceof Closeable body) {
+                                closeQuietly(body);
+                            }
+                        });
+                    }
+                });
+    }
+
+    private static JSONObject parseJson(InputStream body) {
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            return new JSONObject(new JSONTokener(reader));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing left to read from it either way
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof TimeoutException) {
+                throw new RuntimeException("Upstream request timed out after " + REQUEST_TIMEOUT.toSeconds() + "s", cause);
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package backend.services;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket in front of the market data API. Callers wait in priority lanes, so when
+ * the quota is nearly spent trades get tokens before portfolio valuation, and valuation
+ * before background refreshes. A caller whose deadline cannot be met given the queue
+ * ahead of it is rejected immediately instead of waiting only to time out.
+ */
+public class UpstreamScheduler {
+
+    public enum Priority {
+        TRADE(Duration.ofSeconds(15)),
+        VALUATION(Duration.ofSeconds(5)),
+        BACKGROUND(Duration.ofSeconds(1));
+
+        private final Duration defaultMaxWait;
+
+        Priority(Duration defaultMaxWait) {
+            this.defaultMaxWait = defaultMaxWait;
+        }
+
+        public Duration getDefaultMaxWait() {
+            return defaultMaxWait;
+        }
+    }
+
+    public static class RateLimitedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterSeconds;
+
+        public RateLimitedException(String message) {
+            this(message, 1);
+        }
+
+        public RateLimitedException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+        }
+
+        /** Whole seconds until quota is expected to be free again, for a Retry-After header. */
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    private static final int MAX_WAITERS_PER_LANE = 256;
+
+    private final double capacity;
+    private final long nanosPerToken;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition tokenAvailable = lock.newCondition();
+    private final ArrayDeque<Thread>[] lanes;
+    private final LongAdder[] granted;
+    private final LongAdder[] rejected;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public UpstreamScheduler(int callsPerMinute, int burst) {
+        this.capacity = Math.max(1, burst);
+        this.nanosPerToken = TimeUnit.MINUTES.toNanos(1) / Math.max(1, callsPerMinute);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+
+        int laneCount = Priority.values().length;
+        this.lanes = newLanes(laneCount);
+        this.granted = new LongAdder[laneCount];
+        this.rejected = new LongAdder[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ArrayDeque<>();
+            granted[i] = new LongAdder();
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /** Reads ALPHA_VANTAGE_CALLS_PER_MINUTE (default 5, the free tier) and ALPHA_VANTAGE_BURST. */
+    public static UpstreamScheduler fromEnvironment() {
+        int callsPerMinute = intFromEnv("ALPHA_VANTAGE_CALLS_PER_MINUTE", 5);
+        int burst = intFromEnv("ALPHA_VANTAGE_BURST", callsPerMinute);
+        return new UpstreamScheduler(callsPerMinute, burst);
+    }
+
+    public void acquire(Priority priority) {
+        acquire(priority, priority.getDefaultMaxWait());
+    }
+
+    /**
+     * Blocks until a token is granted to this caller, or throws {@link RateLimitedException}
+     * if that cannot happen within {@code maxWait}.
+     */
+    public void acquire(Priority priority, Duration maxWait) {
+        int lane = priority.ordinal();
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        Thread self = Thread.currentThread();
+
+        lock.lock();
+        try {
+            refill();
+            int ahead = waitersAtOrAbove(lane);
+            if (ahead == 0 && tokens >= 1) {
+                take(lane);
+                return;
+            }
+
+            // Tokens needed before ours arrives, assuming nobody of higher priority shows up
+            double deficit = ahead + 1 - tokens;
+            long expectedWait = (long) (deficit * nanosPerToken);
+            if (expectedWait > maxWait.toNanos() || lanes[lane].size() >= MAX_WAITERS_PER_LANE) {
+                rejected[lane].increment();
+                throw rateLimited(expectedWait);
+            }
+
+            lanes[lane].addLast(self);
+            try {
+                while (true) {
+                    refill();
+                    if (isNext(lane, self) && tokens >= 1) {
+                        lanes[lane].removeFirst();
+                        take(lane);
+                        return;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        lanes[lane].remove(self);
+                        rejected[lane].increment();
+                        throw rateLimited((long) ((waitersAtOrAbove(lane) + 1 - tokens) * nanosPerToken));
+                    }
+                    long untilToken = tokens >= 1 ? remaining : (long) ((1 - tokens) * nanosPerToken);
+                    tokenAvailable.awaitNanos(Math.max(1, Math.min(remaining, untilToken)));
+                }
+            } catch (InterruptedException e) {
+                lanes[lane].remove(self);
+                Thread.currentThread().interrupt();
+                throw new RateLimitedException("Interrupted while waiting for market data quota");
+            } finally {
+                // Whoever is next in line now needs to re-check
+                tokenAvailable.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getAvailableTokens() {
+        lock.lock();
+        try {
+            refill();
+            return tokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount(Priority priority) {
+        lock.lock();
+        try {
+            return lanes[priority.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getGrantedCount(Priority priority) {
+        return granted[priority.ordinal()].sum();
+    }
+
+    public long getRejectedCount(Priority priority) {
+        return rejected[priority.ordinal()].sum();
+    }
+
+    // Java cannot create a generic array; every slot is filled with an ArrayDeque<Thread> before use
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayDeque<Thread>[] newLanes(int count) {
+        return new ArrayDeque[count];
+    }
+
+    private static RateLimitedException rateLimited(long expectedWaitNanos) {
+        long seconds = (TimeUnit.NANOSECONDS.toMillis(expectedWaitNanos) + 999) / 1000;
+        return new RateLimitedException("Market data rate limit reached, please retry shortly", seconds);
+    }
+
+    private void take(int lane) {
+        tokens -= 1;
+        granted[lane].increment();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + (double) elapsed / nanosPerToken);
+            lastRefillNanos = now;
+        }
+    }
+
+    private boolean isNext(int lane, Thread self) {
+        for (int i = 0; i < lane; i++) {
+            if (!lanes[i].isEmpty()) {
+                return false;
+            }
+        }
+        return lanes[lane].peekFirst() == self;
+    }
+
+    private int waitersAtOrAbove(int lane) {
+        int count = 0;
+        for (int i = 0; i <= lane; i++) {
+            count += lanes[i].size();
+        }
+        return count;
+    }
+
+    private static int intFromEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + name + " '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package backend.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Streaming RFC 4180 CSV writer that UTF-8 encodes into a fixed buffer and hands it to the
+ * stream whenever it fills, like {@link JsonWriter} in streaming mode. A slow reader blocks
+ * the write of a full buffer, which in turn stops the caller producing more rows.
+ *
+ * Text cells that a spreadsheet would read as a formula are prefixed with a quote.
+ */
+public class CsvWriter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private boolean rowStarted;
+
+    public CsvWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /** Writes a header or data row of text cells. */
+    public CsvWriter row(String... cells) throws IOException {
+        for (String cell : cells) {
+            cell(cell);
+        }
+        return endRow();
+    }
+
+    /** Writes a text cell; null is written as an empty cell. */
+    public CsvWriter cell(String value) throws IOException {
+        separate();
+        if (value == null || value.isEmpty()) {
+            return this;
+        }
+        char first = value.charAt(0);
+        boolean formula = first == '=' || first == '+' || first == '-' || first == '@';
+        boolean quote = formula;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writeString(value);
+            return this;
+        }
+        writeByte('"');
+        if (formula) {
+            writeByte('\'');
+        }
+        int start = 0;
+        for (int i = value.indexOf('"'); i >= 0; i = value.indexOf('"', i + 1)) {
+            writeString(value.substring(start, i + 1));
+            writeByte('"');
+            start = i + 1;
+        }
+        writeString(value.substring(start));
+        writeByte('"');
+        return this;
+    }
+
+    public CsvWriter cell(long value) throws IOException {
+        separate();
+        writeString(Long.toString(value));
+        return this;
+    }
+
+    /** Writes the value rounded to two decimal places, matching the JSON API. */
+    public CsvWriter money(double value) throws IOException {
+        separate();
+        if (Double.isFinite(value)) {
+            writeString(String.format(Locale.ROOT, "%.2f", value));
+        }
+        return this;
+    }
+
+    public CsvWriter endRow() throws IOException {
+        writeByte('\r');
+        writeByte('\n');
+        rowStarted = false;
+        return this;
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void separate() throws IOException {
+        if (rowStarted) {
+            writeByte(',');
+        }
+        rowStarted = true;
+    }
+
+    private void writeString(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?');
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+        if (position + needed > buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
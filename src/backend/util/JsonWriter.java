@@ -0,0 +1,352 @@
+package backend.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Single-pass JSON writer that escapes and UTF-8 encodes straight into a byte buffer.
+ *
+ * In buffered mode (no-arg constructor) the whole document stays in the buffer and can
+ * be sent with a fixed Content-Length. In streaming mode the buffer is flushed to the
+ * given stream whenever it fills, so memory stays constant regardless of response size.
+ */
+public class JsonWriter {
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int position;
+
+    // needsComma[depth] is true once the current container has at least one element
+    private boolean[] needsComma = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter() {
+        this(1024);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        this.out = null;
+        this.buffer = new byte[Math.max(64, initialCapacity)];
+    }
+
+    public JsonWriter(OutputStream out) {
+        this.out = out;
+        this.buffer = new byte[STREAM_BUFFER_SIZE];
+    }
+
+    // ---------- structure ----------
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        if (needsComma[depth]) {
+            writeByte(',');
+        }
+        needsComma[depth] = true;
+        writeQuoted(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    /** Ends a top-level value with a newline, so the next one starts a new NDJSON line. */
+    public JsonWriter endLine() throws IOException {
+        writeByte('\n');
+        needsComma[0] = false;
+        return this;
+    }
+
+    // ---------- values ----------
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeQuoted(value);
+        return this;
+    }
+
+    /** Writes the string, or "" when it is null. */
+    public JsonWriter valueOrEmpty(String value) throws IOException {
+        return value(value == null ? "" : value);
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        if (!Double.isFinite(value)) {
+            return nullValue();
+        }
+        beforeValue();
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            writeLong((long) value);
+            writeByte('.');
+            writeByte('0');
+        } else {
+            writeAscii(Double.toString(value));
+        }
+        return this;
+    }
+
+    /** Writes the value rounded to two decimal places, as the API has always returned money. */
+    public JsonWriter money(double value) throws IOException {
+        if (!Double.isFinite(value) || Math.abs(value) >= 1e15) {
+            return value(value);
+        }
+        beforeValue();
+        long cents = Math.round(Math.abs(value) * 100);
+        if (value < 0 && cents > 0) {
+            writeByte('-');
+        }
+        writeLong(cents / 100);
+        writeByte('.');
+        long fraction = cents % 100;
+        writeByte('0' + (int) (fraction / 10));
+        writeByte('0' + (int) (fraction % 10));
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /** Writes maps, collections, arrays of strings, numbers, booleans and strings; anything else as its toString. */
+    public JsonWriter value(Object value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof String s) {
+            return value(s);
+        } else if (value instanceof Boolean b) {
+            return value(b.booleanValue());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        } else if (value instanceof Number n) {
+            return value(n.doubleValue());
+        } else if (value instanceof Map<?, ?> map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                name(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+            return endObject();
+        } else if (value instanceof Collection<?> collection) {
+            beginArray();
+            for (Object item : collection) {
+                value(item);
+            }
+            return endArray();
+        } else if (value instanceof Object[] array) {
+            return value(Arrays.asList(array));
+        }
+        return value(value.toString());
+    }
+
+    public JsonWriter stringArray(Collection<String> values) throws IOException {
+        beginArray();
+        if (values != null) {
+            for (String value : values) {
+                valueOrEmpty(value);
+            }
+        }
+        return endArray();
+    }
+
+    // ---------- output ----------
+
+    public int size() {
+        return position;
+    }
+
+    /** Returns a copy of the buffered document. Only meaningful in buffered mode. */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /** Writes the buffered bytes to the stream without copying them. */
+    public void writeTo(OutputStream target) throws IOException {
+        target.write(buffer, 0, position);
+    }
+
+    /** Discards the current document so the buffer can be reused. */
+    public void reset() {
+        position = 0;
+        depth = 0;
+        afterName = false;
+        Arrays.fill(needsComma, false);
+    }
+
+    public void flush() throws IOException {
+        if (out != null) {
+            out.write(buffer, 0, position);
+            position = 0;
+            out.flush();
+        }
+    }
+
+    // ---------- internals ----------
+
+    private void push() {
+        depth++;
+        if (depth == needsComma.length) {
+            needsComma = Arrays.copyOf(needsComma, depth * 2);
+        }
+        needsComma[depth] = false;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (needsComma[depth]) {
+            writeByte(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"': writeByte('\\'); writeByte('"'); break;
+                    case '\\': writeByte('\\'); writeByte('\\'); break;
+                    case '\n': writeByte('\\'); writeByte('n'); break;
+                    case '\r': writeByte('\\'); writeByte('r'); break;
+                    case '\t': writeByte('\\'); writeByte('t'); break;
+                    default:
+                        if (c < 0x20) {
+                            ensureCapacity(6);
+                            buffer[position++] = '\\';
+                            buffer[position++] = 'u';
+                            buffer[position++] = '0';
+                            buffer[position++] = '0';
+                            buffer[position++] = HEX[c >> 4];
+                            buffer[position++] = HEX[c & 0xF];
+                        } else {
+                            writeByte(c);
+                        }
+                }
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?');
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    private void writeAscii(String ascii) throws IOException {
+        ensureCapacity(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[position++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+        if (position + needed <= buffer.length) {
+            return;
+        }
+        if (out != null) {
+            out.write(buffer, 0, position);
+            position = 0;
+        } else {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + needed));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package backend.util;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * US equity session calendar: weekdays, closing at 16:00 New York time. Exchange
+ * holidays are not modelled, which is acceptable for the sandbox.
+ */
+public final class MarketHours {
+    public static final ZoneId ZONE = ZoneId.of("America/New_York");
+    public static final LocalTime CLOSE = LocalTime.of(16, 0);
+
+    private MarketHours() {}
+
+    public static boolean isTradingDay(LocalDate day) {
+        return day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY;
+    }
+
+    /** The most recent trading day strictly before today, as an epoch day. */
+    public static int lastCompletedTradingDay() {
+        LocalDate day = LocalDate.now(ZONE).minusDays(1);
+        while (!isTradingDay(day)) {
+            day = day.minusDays(1);
+        }
+        return (int) day.toEpochDay();
+    }
+
+    /** The first session close strictly after the given time. */
+    public static ZonedDateTime nextClose(ZonedDateTime after) {
+        ZonedDateTime local = after.withZoneSameInstant(ZONE);
+        LocalDate day = local.toLocalDate();
+        if (!local.toLocalTime().isBefore(CLOSE)) {
+            day = day.plusDays(1);
+        }
+        while (!isTradingDay(day)) {
+            day = day.plusDays(1);
+        }
+        return day.atTime(CLOSE).atZone(ZONE);
+    }
+}
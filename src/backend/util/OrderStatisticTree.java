@@ -0,0 +1,198 @@
+package backend.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A sorted set that also answers "what position is this element at" and "which element is
+ * at position k" in O(log n). Implemented as a treap (a binary search tree kept balanced
+ * in expectation by random heap priorities) with subtree sizes in every node.
+ *
+ * Elements must not change their ordering while in the set; remove, update, re-add.
+ * Not thread-safe.
+ */
+public class OrderStatisticTree<T> {
+    private final Comparator<? super T> comparator;
+    private final SplittableRandom random = new SplittableRandom();
+    private Node<T> root;
+
+    public OrderStatisticTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /** Adds the element; returns false if an equal element is already present. */
+    public boolean add(T value) {
+        if (contains(value)) {
+            return false;
+        }
+        Node<T> node = new Node<>(value, random.nextInt());
+        Node<T>[] parts = split(root, value);
+        root = merge(merge(parts[0], node), parts[1]);
+        return true;
+    }
+
+    /** Removes the element; returns false if it was not present. */
+    public boolean remove(T value) {
+        int before = size(root);
+        root = remove(root, value);
+        return size(root) < before;
+    }
+
+    public boolean contains(T value) {
+        Node<T> node = root;
+        while (node != null) {
+            int cmp = comparator.compare(value, node.value);
+            if (cmp == 0) {
+                return true;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /** Number of elements ordered strictly before the value (its 0-based position if present). */
+    public int rank(T value) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int cmp = comparator.compare(value, node.value);
+            if (cmp <= 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /** The element at 0-based position k. */
+    public T get(int k) {
+        if (k < 0 || k >= size(root)) {
+            throw new IndexOutOfBoundsException("Index " + k + " out of bounds for size " + size(root));
+        }
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (k < leftSize) {
+                node = node.left;
+            } else if (k == leftSize) {
+                return node.value;
+            } else {
+                k -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /** Up to count elements starting at 0-based position from, in order. */
+    public List<T> range(int from, int count) {
+        List<T> out = new ArrayList<>(Math.max(0, Math.min(count, size(root) - from)));
+        collect(root, Math.max(0, from), Math.max(0, from) + Math.max(0, count), 0, out);
+        return out;
+    }
+
+    // In-order walk that skips subtrees entirely outside [from, to)
+    private void collect(Node<T> node, int from, int to, int offset, List<T> out) {
+        if (node == null || offset >= to || offset + node.size <= from) {
+            return;
+        }
+        collect(node.left, from, to, offset, out);
+        int position = offset + size(node.left);
+        if (position >= from && position < to) {
+            out.add(node.value);
+        }
+        collect(node.right, from, to, position + 1, out);
+    }
+
+    private Node<T> remove(Node<T> node, T value) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = comparator.compare(value, node.value);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            node.left = remove(node.left, value);
+        } else {
+            node.right = remove(node.right, value);
+        }
+        node.update();
+        return node;
+    }
+
+    // Splits into elements strictly before the value and the rest
+    private Node<T>[] split(Node<T> node, T value) {
+        if (node == null) {
+            return emptyPair();
+        }
+        if (comparator.compare(node.value, value) < 0) {
+            Node<T>[] parts = split(node.right, value);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        }
+        Node<T>[] parts = split(node.left, value);
+        node.left = parts[1];
+        node.update();
+        parts[1] = node;
+        return parts;
+    }
+
+    // Java cannot create a generic array; both slots only ever hold Node<T>
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Node<T>[] emptyPair() {
+        return new Node[2];
+    }
+
+    // Every element of a orders before every element of b
+    private Node<T> merge(Node<T> a, Node<T> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.update();
+        return b;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<T> {
+        final T value;
+        final int priority;
+        Node<T> left;
+        Node<T> right;
+        int size = 1;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = 1 + OrderStatisticTree.size(left) + OrderStatisticTree.size(right);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package backend.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of locks keyed by hash, so work for the same key is serialized while
+ * different keys (almost always on different stripes) run in parallel. Uses
+ * ReentrantLock rather than synchronized so virtual threads unmount while waiting.
+ *
+ * Tracks how often an acquisition had to wait and for how long.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /** @param stripes rounded up to a power of two */
+    public StripedLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public <T> T withLock(String key, Supplier<T> action) {
+        ReentrantLock lock = stripeFor(key);
+        acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getStripeCount() { return stripes.length; }
+    public long getAcquisitions() { return acquisitions.sum(); }
+    public long getContended() { return contended.sum(); }
+    public double getWaitSeconds() { return waitNanos.sum() / 1e9; }
+    public double getMaxWaitSeconds() { return maxWaitNanos.get() / 1e9; }
+
+    /** Threads currently blocked on any stripe. */
+    public int getQueueLength() {
+        int waiting = 0;
+        for (ReentrantLock lock : stripes) {
+            waiting += lock.getQueueLength();
+        }
+        return waiting;
+    }
+
+    private ReentrantLock stripeFor(String key) {
+        int h = key.hashCode();
+        // Spread the high bits so similar keys don't share a stripe
+        h ^= (h >>> 16);
+        return stripes[h & mask];
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+}
@@ -0,0 +1,205 @@
+package backend.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hashed timer wheel. One thread advances a fixed-size ring of buckets once per tick and
+ * only looks at the current bucket, so the cost per tick depends on what expires now, not
+ * on how many timeouts are outstanding. Scheduling and cancelling are O(1) and lock-free
+ * for callers; the worker applies them at the next tick. Deadlines are rounded up to the
+ * tick, so timeouts fire up to one tick late, never early.
+ *
+ * Expired tasks run on the supplied executor, never on the wheel thread.
+ */
+public class TimerWheel {
+
+    public interface Timeout {
+        /** Returns false if the timeout already fired or was already cancelled. */
+        boolean cancel();
+    }
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final Queue<Entry> toAdd = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> toCancel = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final LongAdder expired = new LongAdder();
+    private final long startNanos;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param tick          resolution of the wheel
+     * @param wheelSize     buckets, rounded up to a power of two; longer delays take extra rounds
+     * @param taskExecutor  runs expired tasks
+     */
+    public TimerWheel(String name, long tick, TimeUnit unit, int wheelSize, Executor taskExecutor) {
+        int size = wheelSize <= 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.taskExecutor = taskExecutor;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        Entry entry = new Entry(task, deadline);
+        outstanding.incrementAndGet();
+        toAdd.add(entry);
+        return entry;
+    }
+
+    public int getOutstanding() { return outstanding.get(); }
+    public long getExpiredCount() { return expired.sum(); }
+
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleepNanos = deadline - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferAdded();
+            processCancelled();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Entry entry;
+        while ((entry = toAdd.poll()) != null) {
+            if (entry.state.get() != PENDING) {
+                continue;
+            }
+            // Round up so nothing fires before its deadline; past deadlines go in the current bucket
+            long target = Math.max(tick, (entry.deadline + tickNanos - 1) / tickNanos);
+            entry.rounds = (target - tick) / wheel.length;
+            wheel[(int) (target & mask)].add(entry);
+        }
+    }
+
+    private void processCancelled() {
+        Entry entry;
+        while ((entry = toCancel.poll()) != null) {
+            if (entry.bucket != null) {
+                entry.bucket.remove(entry);
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Entry entry = bucket.head;
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.rounds <= 0) {
+                bucket.remove(entry);
+                if (entry.state.compareAndSet(PENDING, EXPIRED)) {
+                    outstanding.decrementAndGet();
+                    expired.increment();
+                    try {
+                        taskExecutor.execute(entry.task);
+                    } catch (RuntimeException e) {
+                        System.err.println("Timer task rejected: " + e.getMessage());
+                    }
+                }
+            } else {
+                entry.rounds--;
+            }
+            entry = next;
+        }
+    }
+
+    private final class Entry implements Timeout {
+        final Runnable task;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        long rounds;
+        Bucket bucket;
+        Entry prev;
+        Entry next;
+
+        Entry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            outstanding.decrementAndGet();
+            toCancel.add(this);
+            return true;
+        }
+    }
+
+    // Intrusive doubly-linked list, touched only by the worker thread
+    private static final class Bucket {
+        Entry head;
+        Entry tail;
+
+        void add(Entry entry) {
+            entry.bucket = this;
+            entry.prev = tail;
+            entry.next = null;
+            if (tail == null) {
+                head = entry;
+            } else {
+                tail.next = entry;
+            }
+            tail = entry;
+        }
+
+        void remove(Entry entry) {
+            if (entry.bucket != this) {
+                return;
+            }
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            } else {
+                head = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            } else {
+                tail = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+    }
+}
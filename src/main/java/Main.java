@@ -2,22 +2,44 @@ import backend.controllers.StockController;
 import backend.controllers.ForecastController;
 import backend.services.*;
 import backend.database.DatabaseHandler;
+import backend.database.TradeJournal;
+import backend.backtest.Strategies;
+import backend.models.BacktestResult;
 import backend.models.User;
 import backend.models.Portfolio;
+import backend.models.PortfolioSnapshot;
 import backend.models.Transaction;
+import backend.models.TransactionPage;
 import backend.models.TutorialSection;
 import backend.models.Quiz;
 import backend.models.Question;
 import backend.models.Exercise;
-import com.google.gson.Gson;
+import backend.models.Order;
+import backend.models.PriceHistory;
+import backend.models.NavHistory;
+import backend.models.RiskReport;
+import backend.models.LotMethod;
+import backend.models.PnlReport;
+import backend.models.TaxLot;
+import backend.server.CachedResponse;
+import backend.server.MetricsRegistry;
+import backend.server.RequestExecutor;
+import backend.util.CsvWriter;
+import backend.util.JsonWriter;
+import backend.util.StripedLocks;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpContext;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
@@ -28,8 +50,17 @@ public class Main {
     private static AuthService authService;
     private static PortfolioService portfolioService;
     private static TutorialService tutorialService;
-    private static final Gson gson = new Gson();
+    private static PriceHistoryService priceHistoryService;
+    private static NavSnapshotService navSnapshotService;
+    private static RiskService riskService;
+    private static LeaderboardService leaderboardService;
+    private static BacktestService backtestService;
+    private static TradeJournal tradeJournal;
     private static HttpServer server;
+    private static RequestExecutor requestExecutor;
+    private static MarketDataProvider marketDataProvider;
+    private static final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private static volatile TutorialCatalog tutorialCatalog;
 
     public static void main(String[] args) {
         try {
@@ -38,40 +69,101 @@ public class Main {
             // Initialize services
             System.out.println(" Initializing services...");
             DatabaseHandler dbHandler = new DatabaseHandler();
-            authService = new AuthService(dbHandler);
-            AlphaVantageService alphaVantageService = new AlphaVantageService();
+            tradeJournal = TradeJournal.fromEnvironment();
+            int replayed = dbHandler.attachJournal(tradeJournal);
+            System.out.println(" Trade journal at sequence " + tradeJournal.getLastSequence() + ", " + replayed + " trades replayed");
+            UpstreamScheduler upstreamScheduler = UpstreamScheduler.fromEnvironment();
+            marketDataProvider = MarketDataProvider.fromEnvironment(upstreamScheduler);
+            AlphaVantageService alphaVantageService = new AlphaVantageService(marketDataProvider);
             stockController = new StockController(alphaVantageService);
-            portfolioService = new PortfolioService(dbHandler);
+            portfolioService = new PortfolioService(dbHandler, alphaVantageService);
+            authService = new AuthService(dbHandler, portfolioService);
+            priceHistoryService = new PriceHistoryService(dbHandler, alphaVantageService);
+            portfolioService.getOrderBookService().start();
+            navSnapshotService = new NavSnapshotService(dbHandler, alphaVantageService);
+            navSnapshotService.start();
+            riskService = new RiskService(portfolioService, priceHistoryService);
+            backtestService = new BacktestService(priceHistoryService);
+            leaderboardService = new LeaderboardService(dbHandler, alphaVantageService, portfolioService);
+            leaderboardService.start();
             tutorialService = new TutorialService();
+            currentTutorialCatalog();
 
             // Create HTTP server
             System.out.println(" Creating HTTP server on port 8080...");
             server = HttpServer.create(new InetSocketAddress(8080), 0);
 
+            // Every context shares one admission-controlled executor
+            requestExecutor = RequestExecutor.fromEnvironment();
+            metricsRegistry.registerGauge("http_executor_in_flight", requestExecutor::getInFlight);
+            metricsRegistry.registerCounter("http_executor_rejected_total", requestExecutor::getRejectedCount);
+            metricsRegistry.registerCounter("quote_cache_hits_total", alphaVantageService::getCacheHits);
+            metricsRegistry.registerCounter("quote_cache_misses_total", alphaVantageService::getCacheMisses);
+            metricsRegistry.registerCounter("quote_cache_coalesced_total", alphaVantageService::getCoalescedRequests);
+            StripedLocks accountLocks = portfolioService.getAccountLocks();
+            metricsRegistry.registerCounter("trade_lock_acquisitions_total", accountLocks::getAcquisitions);
+            metricsRegistry.registerCounter("trade_lock_contended_total", accountLocks::getContended);
+            metricsRegistry.registerCounter("trade_lock_wait_seconds_total", accountLocks::getWaitSeconds);
+            metricsRegistry.registerGauge("trade_lock_wait_seconds_max", accountLocks::getMaxWaitSeconds);
+            metricsRegistry.registerGauge("trade_lock_waiting", accountLocks::getQueueLength);
+            AccountLedger ledger = portfolioService.getLedger();
+            metricsRegistry.registerGauge("ledger_accounts", ledger::getAccountCount);
+            metricsRegistry.registerCounter("ledger_hits_total", ledger::getHitCount);
+            metricsRegistry.registerCounter("ledger_loads_total", ledger::getLoadCount);
+            OrderBookService orderBook = portfolioService.getOrderBookService();
+            metricsRegistry.registerGauge("orders_resting", orderBook::getRestingCount);
+            metricsRegistry.registerCounter("orders_filled_total", orderBook::getFilledCount);
+            metricsRegistry.registerCounter("orders_rejected_total", orderBook::getRejectedCount);
+            metricsRegistry.registerCounter("orders_expired_total", orderBook::getExpiredCount);
+            metricsRegistry.registerGauge("orders_pending_expiries", orderBook::getPendingExpiries);
+            metricsRegistry.registerGauge("nav_snapshot_accounts", navSnapshotService::getLastAccounts);
+            metricsRegistry.registerGauge("nav_snapshot_seconds", navSnapshotService::getLastRunSeconds);
+            metricsRegistry.registerGauge("leaderboard_participants", leaderboardService::getParticipants);
+            metricsRegistry.registerCounter("trade_journal_records_total", tradeJournal::getRecordCount);
+            metricsRegistry.registerCounter("trade_journal_syncs_total", tradeJournal::getSyncCount);
+            metricsRegistry.registerGauge("trade_journal_segments", tradeJournal::getSegmentCount);
+            metricsRegistry.registerGauge("upstream_tokens_available", upstreamScheduler::getAvailableTokens);
+            for (UpstreamScheduler.Priority priority : UpstreamScheduler.Priority.values()) {
+                String lane = priority.name().toLowerCase();
+                metricsRegistry.registerGauge("upstream_" + lane + "_queued", () -> upstreamScheduler.getQueuedCount(priority));
+                metricsRegistry.registerCounter("upstream_" + lane + "_granted_total", () -> upstreamScheduler.getGrantedCount(priority));
+                metricsRegistry.registerCounter("upstream_" + lane + "_rejected_total", () -> upstreamScheduler.getRejectedCount(priority));
+            }
+
             // ========== TRADING SYSTEM ROUTES ==========
-            server.createContext("/api/stocks", new StockHandler());
-            server.createContext("/api/auth", new AuthHandler());
-            server.createContext("/api/portfolio", new PortfolioHandler());
-            server.createContext("/api/transactions", new TransactionsHandler());
-            server.createContext("/api/trade", new TradeHandler());
+            registerContext("/api/stocks", new StockHandler());
+            registerContext("/api/auth", new AuthHandler());
+            registerContext("/api/portfolio", new PortfolioHandler());
+            registerContext("/api/portfolio/history", new PortfolioHistoryHandler());
+            registerContext("/api/portfolio/risk", new PortfolioRiskHandler());
+            registerContext("/api/portfolio/lots", new PortfolioLotsHandler());
+            registerContext("/api/transactions", new TransactionsHandler());
+            registerContext("/api/export", new ExportHandler());
+            registerContext("/api/trade", new TradeHandler());
+            registerContext("/api/orders", new OrdersHandler());
+            registerContext("/api/leaderboard", new LeaderboardHandler());
+            registerContext("/api/backtest", new BacktestHandler());
 
             // ========== TUTORIAL SYSTEM ROUTES ==========
-            server.createContext("/api/tutorials", new TutorialsHandler());
-            server.createContext("/api/tutorial", new TutorialHandler());
-            server.createContext("/api/tutorials/search", new TutorialSearchHandler());
-            server.createContext("/api/tutorials/by-level", new TutorialsByLevelHandler());
-            server.createContext("/api/tutorials/by-category", new TutorialsByCategoryHandler());
-            server.createContext("/api/tutorials/progress", new TutorialProgressHandler());
-            server.createContext("/api/tutorial/quiz", new TutorialQuizHandler());
-            server.createContext("/api/tutorial/exercise", new TutorialExerciseHandler());
-            server.createContext("/api/tutorials/progress/complete", new TutorialProgressCompleteHandler());
-            server.createContext("/api/health", new HealthHandler());
+            registerContext("/api/tutorials", new TutorialsHandler());
+            registerContext("/api/tutorial", new TutorialHandler());
+            registerContext("/api/tutorials/search", new TutorialSearchHandler());
+            registerContext("/api/tutorials/by-level", new TutorialsByLevelHandler());
+            registerContext("/api/tutorials/by-category", new TutorialsByCategoryHandler());
+            registerContext("/api/tutorials/progress", new TutorialProgressHandler());
+            registerContext("/api/tutorial/quiz", new TutorialQuizHandler());
+            registerContext("/api/tutorial/exercise", new TutorialExerciseHandler());
+            registerContext("/api/tutorials/progress/complete", new TutorialProgressCompleteHandler());
+            registerContext("/api/health", new HealthHandler());
+            registerContext("/api/metrics", new MetricsHandler());
 
             // ========== FORECAST ENDPOINT ==========
-            server.createContext("/api/forecast", new ForecastHandler());
+            registerContext("/api/forecast", new ForecastHandler());
+            registerContext("/api/history", new HistoryHandler());
 
-            // Set executor to null (uses default)
-            server.setExecutor(null);
+            // Requests run off the dispatcher thread with bounded admission
+            server.setExecutor(requestExecutor);
+            System.out.println(" Request executor: " + requestExecutor);
 
             // Start the server
             server.start();
@@ -88,6 +180,28 @@ public class Main {
                 if (server != null) {
                     server.stop(0);
                 }
+                if (requestExecutor != null) {
+                    requestExecutor.shutdown();
+                }
+                if (portfolioService != null) {
+                    portfolioService.getOrderBookService().shutdown();
+                }
+                if (navSnapshotService != null) {
+                    navSnapshotService.shutdown();
+                }
+                if (leaderboardService != null) {
+                    leaderboardService.shutdown();
+                }
+                if (tradeJournal != null) {
+                    tradeJournal.close();
+                }
+                if (marketDataProvider instanceof AutoCloseable closeable) {
+                    try {
+                        closeable.close();
+                    } catch (Exception e) {
+                        System.err.println("Error closing market data provider: " + e.getMessage());
+                    }
+                }
                 System.out.println(" Server stopped.");
             }));
 
@@ -100,14 +214,18 @@ public class Main {
         }
     }
 
+    private static void registerContext(String path, HttpHandler handler) {
+        HttpContext context = server.createContext(path, metricsRegistry.instrument(path, handler));
+        context.getFilters().add(requestExecutor.admissionFilter());
+    }
+
     // ===================== FORECAST HANDLER =====================
     static class ForecastHandler implements HttpHandler {
         private final ForecastController forecastController;
-        private final Gson gson = new Gson();
 
         public ForecastHandler() {
             System.out.println(" Initializing ForecastHandler...");
-            this.forecastController = new ForecastController();
+            this.forecastController = new ForecastController(priceHistoryService);
         }
 
         @Override
@@ -174,22 +292,29 @@ public class Main {
                         Math.min(days, result.predictions.size())
                 );
 
-                Map<String, Object> response = new HashMap<>();
-                response.put("symbol", symbol);
-                response.put("historical", recentHistorical);
-                response.put("forecast", forecast);
-                response.put("confidence", result.confidence);
-                response.put("direction", result.direction);
-                response.put("modelType", "LSTM Neural Network");
+                JsonWriter json = new JsonWriter();
+                json.beginObject()
+                        .name("symbol").value(symbol)
+                        .name("historical").value(recentHistorical)
+                        .name("forecast").value(forecast)
+                        .name("confidence").value(result.confidence)
+                        .name("direction").value(result.direction)
+                        .name("modelType").value("LSTM Neural Network")
+                        .endObject();
 
-                String jsonResponse = gson.toJson(response);
                 System.out.println(" Forecast generated successfully for " + symbol);
-                sendResponse(exchange, 200, jsonResponse);
+                sendJson(exchange, 200, json);
 
+            } catch (RuntimeException e) {
+                // No stored history and the provider could not supply it
+                System.err.println(" Error in ForecastHandler: " + e.getMessage());
+                JsonWriter json = new JsonWriter(128);
+                json.beginObject().name("error").value(e.getMessage()).endObject();
+                sendJson(exchange, 503, json);
             } catch (Exception e) {
                 System.err.println(" Error in ForecastHandler: " + e.getMessage());
                 e.printStackTrace();
-                sendResponse(exchange, 500, "{\"error\": \"Internal server error: " + e.getMessage() + "\"}");
+                sendError(exchange, 500, "Internal server error: " + e.getMessage());
             } finally {
                 exchange.close();
             }
@@ -211,6 +336,87 @@ public class Main {
         }
     }
 
+    // ===================== HISTORY HANDLER =====================
+    // Daily OHLCV bars for charts: /api/history?symbol=AAPL&from=2024-01-01&to=2024-06-30
+    static class HistoryHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCorsHeaders(exchange);
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+                return;
+            }
+
+            try {
+                String query = exchange.getRequestURI().getQuery();
+                String symbol = getParamValue(query, "symbol");
+                if (symbol == null || symbol.isBlank()) {
+                    sendResponse(exchange, 400, "{\"error\": \"Symbol parameter required\"}");
+                    return;
+                }
+                String from = getParamValue(query, "from");
+                String to = getParamValue(query, "to");
+
+                PriceHistory history;
+                try {
+                    history = priceHistoryService.getHistory(symbol);
+                    if (from != null || to != null) {
+                        history = history.range(
+                                from != null ? (int) LocalDate.parse(from).toEpochDay() : Integer.MIN_VALUE,
+                                to != null ? (int) LocalDate.parse(to).toEpochDay() : Integer.MAX_VALUE - 1);
+                    }
+                } catch (DateTimeParseException e) {
+                    sendResponse(exchange, 400, "{\"error\": \"Dates must be YYYY-MM-DD\"}");
+                    return;
+                }
+
+                // Columnar arrays keep the payload small and map directly onto chart series
+                JsonWriter json = startJsonStream(exchange, 200);
+                json.beginObject().name("success").value(true)
+                        .name("symbol").value(history.getSymbol())
+                        .name("dates").beginArray();
+                for (int i = 0; i < history.size(); i++) {
+                    json.value(history.getDate(i).toString());
+                }
+                json.endArray().name("open").beginArray();
+                for (int i = 0; i < history.size(); i++) {
+                    json.value(history.getOpen(i));
+                }
+                json.endArray().name("high").beginArray();
+                for (int i = 0; i < history.size(); i++) {
+                    json.value(history.getHigh(i));
+                }
+                json.endArray().name("low").beginArray();
+                for (int i = 0; i < history.size(); i++) {
+                    json.value(history.getLow(i));
+                }
+                json.endArray().name("close").beginArray();
+                for (int i = 0; i < history.size(); i++) {
+                    json.value(history.getClose(i));
+                }
+                json.endArray().name("volume").beginArray();
+                for (int i = 0; i < history.size(); i++) {
+                    json.value(history.getVolume(i));
+                }
+                json.endArray().endObject();
+                json.flush();
+
+            } catch (RuntimeException e) {
+                System.err.println("Error in HistoryHandler: " + e.getMessage());
+                JsonWriter json = new JsonWriter(128);
+                json.beginObject().name("success").value(false).name("error").value(e.getMessage()).endObject();
+                sendJson(exchange, 503, json);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
     // ===================== STOCK HANDLER =====================
     static class StockHandler implements HttpHandler {
         @Override
@@ -239,14 +445,17 @@ public class Main {
 
                     System.out.println(" Fetching stock data for: " + symbol);
                     Map<String, Object> stockData = stockController.getStockQuote(symbol);
-                    String response = "{\"success\":true,\"data\":" + convertObjectToJson(stockData) + "}";
-                    sendResponse(exchange, 200, response);
+                    JsonWriter json = new JsonWriter();
+                    json.beginObject().name("success").value(true).name("data").value(stockData).endObject();
+                    sendJson(exchange, 200, json);
                 } else {
                     sendResponse(exchange, 404, "{\"error\": \"Endpoint not found\"}");
                 }
+            } catch (UpstreamScheduler.RateLimitedException e) {
+                sendRateLimited(exchange, e.getRetryAfterSeconds(), e.getMessage());
             } catch (Exception e) {
                 System.err.println("Error in StockHandler: " + e.getMessage());
-                sendResponse(exchange, 500, "{\"error\": \"Internal server error: " + e.getMessage() + "\"}");
+                sendError(exchange, 500, "Internal server error: " + e.getMessage());
             } finally {
                 exchange.close();
             }
@@ -302,13 +511,14 @@ public class Main {
                 System.out.println(" Login attempt for user: " + username);
                 User user = authService.loginUser(username, password);
                 if (user != null) {
-                    String response = String.format(
-                            "{\"success\":true,\"message\":\"Login successful\",\"data\":{\"username\":\"%s\",\"email\":\"%s\",\"balance\":%.2f}}",
-                            escapeJson(user.getUsername()),
-                            escapeJson(user.getEmail()),
-                            user.getBalance()
-                    );
-                    sendResponse(exchange, 200, response);
+                    JsonWriter json = new JsonWriter();
+                    json.beginObject()
+                            .name("success").value(true)
+                            .name("message").value("Login successful")
+                            .name("data");
+                    writeUser(json, user);
+                    json.endObject();
+                    sendJson(exchange, 200, json);
                 } else {
                     sendResponse(exchange, 401, "{\"success\":false,\"error\":\"Invalid credentials\"}");
                 }
@@ -331,13 +541,14 @@ public class Main {
                 System.out.println(" Registration attempt for user: " + username);
                 User newUser = authService.registerUser(username, password, email);
                 if (newUser != null) {
-                    String response = String.format(
-                            "{\"success\":true,\"message\":\"Registration successful\",\"data\":{\"username\":\"%s\",\"email\":\"%s\",\"balance\":%.2f}}",
-                            escapeJson(newUser.getUsername()),
-                            escapeJson(newUser.getEmail()),
-                            newUser.getBalance()
-                    );
-                    sendResponse(exchange, 200, response);
+                    JsonWriter json = new JsonWriter();
+                    json.beginObject()
+                            .name("success").value(true)
+                            .name("message").value("Registration successful")
+                            .name("data");
+                    writeUser(json, newUser);
+                    json.endObject();
+                    sendJson(exchange, 200, json);
                 } else {
                     sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Username already exists\"}");
                 }
@@ -374,16 +585,19 @@ public class Main {
                 }
 
                 System.out.println(" Fetching portfolio for user: " + username);
-                List<Portfolio> portfolio = portfolioService.getPortfolio(username);
-                String portfolioJson = convertPortfolioToJson(portfolio);
-                double totalValue = portfolioService.getPortfolioValue(username);
-                double totalGainLoss = portfolioService.getTotalGainLoss(username);
-
-                String response = String.format(
-                        "{\"success\":true,\"portfolio\":%s,\"totalValue\":%.2f,\"totalGainLoss\":%.2f}",
-                        portfolioJson, totalValue, totalGainLoss
-                );
-                sendResponse(exchange, 200, response);
+                PortfolioSnapshot snapshot = portfolioService.getPortfolioSnapshot(username);
+
+                JsonWriter json = new JsonWriter();
+                json.beginObject().name("success").value(true).name("portfolio");
+                writePortfolio(json, snapshot);
+                json.name("totalValue").money(snapshot.getTotalValue())
+                        .name("totalCost").money(snapshot.getTotalCost())
+                        .name("totalGainLoss").money(snapshot.getTotalGainLoss())
+                        .name("totalReturnPercent").money(snapshot.getTotalReturnPercent())
+                        .name("totalInvestment").money(snapshot.getTotalInvestment())
+                        .name("priceStale").value(snapshot.isAnyPriceStale())
+                        .endObject();
+                sendJson(exchange, 200, json);
 
             } catch (Exception e) {
                 System.err.println("Error in PortfolioHandler: " + e.getMessage());
@@ -394,8 +608,481 @@ public class Main {
         }
     }
 
+    static class PortfolioHistoryHandler implements HttpHandler {
+        private static final int DEFAULT_POINTS = 500;
+        private static final int MAX_POINTS = 5000;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCorsHeaders(exchange);
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+                return;
+            }
+
+            try {
+                String query = exchange.getRequestURI().getQuery();
+                String username = getParamValue(query, "username");
+                if (username == null || username.isBlank()) {
+                    sendResponse(exchange, 400, "{\"error\": \"Username parameter required\"}");
+                    return;
+                }
+
+                LocalDate from;
+                LocalDate to;
+                int points;
+                try {
+                    String toParam = getParamValue(query, "to");
+                    String fromParam = getParamValue(query, "from");
+                    String pointsParam = getParamValue(query, "points");
+                    to = toParam != null ? LocalDate.parse(toParam) : LocalDate.now();
+                    from = fromParam != null ? LocalDate.parse(fromParam) : to.minusYears(1);
+                    points = pointsParam != null ? Math.max(2, Math.min(MAX_POINTS, Integer.parseInt(pointsParam))) : DEFAULT_POINTS;
+                } catch (DateTimeParseException e) {
+                    sendResponse(exchange, 400, "{\"error\": \"Dates must be YYYY-MM-DD\"}");
+                    return;
+                } catch (NumberFormatException e) {
+                    sendResponse(exchange, 400, "{\"error\": \"points must be a number\"}");
+                    return;
+                }
+
+                NavHistory history = navSnapshotService.getHistory(username, from, to);
+                NavHistory series = history.downsample(points);
+
+                JsonWriter json = startJsonStream(exchange, 200);
+                json.beginObject().name("success").value(true)
+                        .name("username").value(username)
+                        .name("from").value(from.toString())
+                        .name("to").value(to.toString())
+                        .name("totalPoints").value(history.size())
+                        .name("dates").beginArray();
+                for (int i = 0; i < series.size(); i++) {
+                    json.value(series.getDate(i).toString());
+                }
+                json.endArray().name("nav").beginArray();
+                for (int i = 0; i < series.size(); i++) {
+                    json.money(series.getNav(i));
+                }
+                json.endArray().name("cash").beginArray();
+                for (int i = 0; i < series.size(); i++) {
+                    json.money(series.getCash(i));
+                }
+                json.endArray().name("invested").beginArray();
+                for (int i = 0; i < series.size(); i++) {
+                    json.money(series.getInvested(i));
+                }
+                json.endArray().endObject();
+                json.flush();
+
+            } catch (RuntimeException e) {
+                System.err.println("Error in PortfolioHistoryHandler: " + e.getMessage());
+                sendResponse(exchange, 500, "{\"error\": \"Internal server error\"}");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    static class PortfolioRiskHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCorsHeaders(exchange);
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+                return;
+            }
+
+            try {
+                String username = getParamValue(exchange.getRequestURI().getQuery(), "username");
+                if (username == null || username.isBlank()) {
+                    sendResponse(exchange, 400, "{\"error\": \"Username parameter required\"}");
+                    return;
+                }
+
+                RiskReport report = riskService.analyze(username);
+                JsonWriter json = new JsonWriter();
+                json.beginObject().name("success").value(true)
+                        .name("username").value(report.getUsername())
+                        .name("benchmark").value(report.getBenchmark())
+                        .name("observations").value(report.getObservations())
+                        .name("portfolioValue").money(report.getPortfolioValue())
+                        .name("volatility").value(report.getPortfolioVolatility())
+                        .name("beta").value(report.getPortfolioBeta())
+                        .name("historicalVar95").money(report.getHistoricalVar95())
+                        .name("historicalVar99").money(report.getHistoricalVar99())
+                        .name("parametricVar95").money(report.getParametricVar95())
+                        .name("parametricVar99").money(report.getParametricVar99())
+                        .name("holdings").beginArray();
+                for (int i = 0; i < report.size(); i++) {
+                    json.beginObject()
+                            .name("symbol").value(report.getSymbol(i))
+                            .name("weight").value(report.getWeight(i))
+                            .name("volatility").value(report.getVolatility(i))
+                            .name("beta").value(report.getBeta(i))
+                            .endObject();
+                }
+                json.endArray().name("correlation").beginArray();
+                for (int i = 0; i < report.size(); i++) {
+                    json.beginArray();
+                    for (int j = 0; j < report.size(); j++) {
+                        json.value(report.getCorrelation(i, j));
+                    }
+                    json.endArray();
+                }
+                json.endArray().name("excluded").stringArray(report.getExcluded()).endObject();
+                sendJson(exchange, 200, json);
+
+            } catch (RuntimeException e) {
+                System.err.println("Error in PortfolioRiskHandler: " + e.getMessage());
+                JsonWriter json = new JsonWriter(128);
+                json.beginObject().name("success").value(false).name("error").value(e.getMessage()).endObject();
+                sendJson(exchange, 503, json);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    // GET: lot-level P&L. POST {username, method}: choose FIFO, LIFO or AVERAGE for future sales.
+    static class PortfolioLotsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCorsHeaders(exchange);
+            String method = exchange.getRequestMethod();
+            if ("OPTIONS".equalsIgnoreCase(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+
+            try {
+                if ("GET".equalsIgnoreCase(method)) {
+                    String username = getParamValue(exchange.getRequestURI().getQuery(), "username");
+                    if (username == null || username.isBlank()) {
+                        sendResponse(exchange, 400, "{\"error\": \"Username parameter required\"}");
+                        return;
+                    }
+                    writePnl(exchange, portfolioService.getPnl(username));
+                } else if ("POST".equalsIgnoreCase(method)) {
+                    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                    String username = extractValue(body, "username");
+                    LotMethod lotMethod = LotMethod.parse(extractValue(body, "method"));
+                    if (username == null || username.isBlank()) {
+                        sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Missing required fields\"}");
+                        return;
+                    }
+                    if (lotMethod == null) {
+                        sendResponse(exchange, 400, "{\"success\":false,\"error\":\"method must be FIFO, LIFO or AVERAGE\"}");
+                        return;
+                    }
+                    boolean updated = portfolioService.setLotMethod(username, lotMethod);
+                    JsonWriter json = new JsonWriter(128);
+                    json.beginObject().name("success").value(updated).name("method").value(lotMethod.name()).endObject();
+                    sendJson(exchange, updated ? 200 : 500, json);
+                } else {
+                    sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error in PortfolioLotsHandler: " + e.getMessage());
+                sendResponse(exchange, 500, "{\"error\": \"Internal server error\"}");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private static void writePnl(HttpExchange exchange, PnlReport report) throws IOException {
+            JsonWriter json = new JsonWriter();
+            json.beginObject().name("success").value(true)
+                    .name("username").value(report.getUsername())
+                    .name("method").value(report.getMethod().name())
+                    .name("realized").money(report.getTotalRealized())
+                    .name("unrealized").money(report.getTotalUnrealized())
+                    .name("annualReturn").money(report.getAnnualReturn())
+                    .name("holdingDays").money(report.getHoldingDays())
+                    .name("positions").beginArray();
+            for (PnlReport.Line line : report.getLines()) {
+                json.beginObject()
+                        .name("symbol").value(line.getSymbol())
+                        .name("quantity").value(line.getQuantity())
+                        .name("price").money(line.getPrice())
+                        .name("costBasis").money(line.getCostBasis())
+                        .name("marketValue").money(line.getMarketValue())
+                        .name("unrealized").money(line.getUnrealized())
+                        .name("realized").money(line.getRealized())
+                        .name("lots").beginArray();
+                for (TaxLot lot : line.getLots()) {
+                    json.beginObject()
+                            .name("id").value(lot.getId())
+                            .name("openedAt").value(lot.getOpenedAt().toString())
+                            .name("quantity").value(lot.getQuantity())
+                            .name("costPerShare").money(lot.getCostPerShare())
+                            .name("unrealized").money(lot.getUnrealizedGain(line.getPrice()))
+                            .endObject();
+                }
+                json.endArray().endObject();
+            }
+            json.endArray().endObject();
+            sendJson(exchange, 200, json);
+        }
+    }
+
+    // ===================== LEADERBOARD HANDLER =====================
+    static class LeaderboardHandler implements HttpHandler {
+        private static final int DEFAULT_LIMIT = 10;
+        private static final int MAX_LIMIT = 500;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCorsHeaders(exchange);
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+                return;
+            }
+
+            try {
+                String query = exchange.getRequestURI().getQuery();
+                String username = getParamValue(query, "username");
+                String limitParam = getParamValue(query, "limit");
+                int limit;
+                try {
+                    limit = limitParam != null ? Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitParam))) : DEFAULT_LIMIT;
+                } catch (NumberFormatException e) {
+                    sendResponse(exchange, 400, "{\"error\": \"limit must be a number\"}");
+                    return;
+                }
+
+                // Small boards come from the published snapshot; deeper ones are read live
+                LeaderboardService.Snapshot snapshot = leaderboardService.getSnapshot();
+                List<LeaderboardService.Standing> top;
+                String asOf;
+                int participants;
+                if (limit <= snapshot.getTop().size() || snapshot.getTop().size() == snapshot.getParticipants()) {
+                    top = snapshot.getTop().subList(0, Math.min(limit, snapshot.getTop().size()));
+                    asOf = snapshot.getPublishedAt().toString();
+                    participants = snapshot.getParticipants();
+                } else {
+                    top = leaderboardService.top(limit);
+                    asOf = Instant.now().toString();
+                    participants = leaderboardService.getParticipants();
+                }
+
+                JsonWriter json = new JsonWriter();
+                json.beginObject().name("success").value(true)
+                        .name("asOf").value(asOf)
+                        .name("participants").value(participants)
+                        .name("top").beginArray();
+                for (int i = 0; i < top.size(); i++) {
+                    writeStanding(json, i + 1, top.get(i));
+                }
+                json.endArray();
+                if (username != null && !username.isBlank()) {
+                    LeaderboardService.Standing mine = leaderboardService.standingOf(username);
+                    json.name("me");
+                    if (mine != null) {
+                        writeStanding(json, leaderboardService.rankOf(username), mine);
+                    } else {
+                        json.nullValue();
+                    }
+                }
+                json.endObject();
+                sendJson(exchange, 200, json);
+
+            } catch (RuntimeException e) {
+                System.err.println("Error in LeaderboardHandler: " + e.getMessage());
+                sendResponse(exchange, 500, "{\"error\": \"Internal server error\"}");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private static void writeStanding(JsonWriter json, int rank, LeaderboardService.Standing standing) throws IOException {
+            json.beginObject()
+                    .name("rank").value(rank)
+                    .name("username").value(standing.getUsername())
+                    .name("nav").money(standing.getNav())
+                    .name("returnPercent").money(standing.getReturnPercent())
+                    .endObject();
+        }
+    }
+
+    // ===================== BACKTEST HANDLER =====================
+    /**
+     * GET /api/backtest?strategy=&symbols=AAPL,MSFT&from=&to=&cash=&points=&curves= plus any
+     * strategy parameter as a comma-separated list of values, e.g. fast=10,20&slow=50,100
+     * to sweep four combinations. Results are ordered best Sharpe ratio first; the top
+     * `curves` of them include their equity curve.
+     */
+    static class BacktestHandler implements HttpHandler {
+        private static final int DEFAULT_POINTS = 250;
+        private static final int MAX_POINTS = 2000;
+        private static final int MAX_CURVES = 20;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            System.out.println(" Received backtest request: " + exchange.getRequestMethod() + " " + exchange.getRequestURI());
+
+            setCorsHeaders(exchange);
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+                return;
+            }
+
+            try {
+                String query = exchange.getRequestURI().getRawQuery();
+                String strategy = decodedParam(query, "strategy");
+                String symbolsParam = decodedParam(query, "symbols");
+                strategy = strategy != null ? strategy.trim().toLowerCase() : Strategies.SMA_CROSSOVER;
+                Map<String, Double> defaults = Strategies.defaults(strategy);
+                if (defaults == null) {
+                    sendError(exchange, 400, "strategy must be one of " + String.join(", ", Strategies.names()));
+                    return;
+                }
+                if (symbolsParam == null || symbolsParam.isBlank()) {
+                    sendError(exchange, 400, "symbols parameter required");
+                    return;
+                }
+                List<String> symbols = new ArrayList<>();
+                for (String symbol : symbolsParam.split(",")) {
+                    if (!symbol.isBlank() && !symbols.contains(symbol.trim().toUpperCase())) {
+                        symbols.add(symbol.trim().toUpperCase());
+                    }
+                }
+
+                LocalDate from;
+                LocalDate to;
+                double cash;
+                int points;
+                int curves;
+                Map<String, double[]> grid = new HashMap<>();
+                try {
+                    String toParam = decodedParam(query, "to");
+                    String fromParam = decodedParam(query, "from");
+                    String cashParam = decodedParam(query, "cash");
+                    String pointsParam = decodedParam(query, "points");
+                    String curvesParam = decodedParam(query, "curves");
+                    to = toParam != null ? LocalDate.parse(toParam) : LocalDate.now();
+                    from = fromParam != null ? LocalDate.parse(fromParam) : to.minusYears(10);
+                    cash = cashParam != null ? Double.parseDouble(cashParam) : BacktestService.DEFAULT_CASH;
+                    points = pointsParam != null ? Math.max(2, Math.min(MAX_POINTS, Integer.parseInt(pointsParam))) : DEFAULT_POINTS;
+                    curves = curvesParam != null ? Math.max(0, Math.min(MAX_CURVES, Integer.parseInt(curvesParam))) : 1;
+                    for (String name : defaults.keySet()) {
+                        String values = decodedParam(query, name);
+                        if (values != null) {
+                            String[] parts = values.split(",");
+                            double[] parsed = new double[parts.length];
+                            for (int i = 0; i < parts.length; i++) {
+                                parsed[i] = Double.parseDouble(parts[i].trim());
+                            }
+                            grid.put(name, parsed);
+                        }
+                    }
+                } catch (DateTimeParseException e) {
+                    sendError(exchange, 400, "Dates must be YYYY-MM-DD");
+                    return;
+                } catch (NumberFormatException e) {
+                    sendError(exchange, 400, "cash, points, curves and strategy parameters must be numbers");
+                    return;
+                }
+                if (!(cash > 0) || from.isAfter(to)) {
+                    sendError(exchange, 400, "cash must be positive and from must not be after to");
+                    return;
+                }
+
+                BacktestService.Sweep sweep = backtestService.sweep(strategy, symbols, from, to, cash, grid, points);
+
+                JsonWriter json = startJsonStream(exchange, 200);
+                json.beginObject().name("success").value(true)
+                        .name("strategy").value(sweep.getStrategy())
+                        .name("from").value(from.toString())
+                        .name("to").value(to.toString())
+                        .name("startingCash").money(cash)
+                        .name("symbols").stringArray(sweep.getSymbols())
+                        .name("excluded").stringArray(sweep.getExcluded())
+                        .name("runs").value(sweep.getResults().size())
+                        .name("elapsedMillis").value(sweep.getElapsedMillis())
+                        .name("results").beginArray();
+                List<BacktestResult> results = sweep.getResults();
+                for (int i = 0; i < results.size(); i++) {
+                    writeBacktestResult(json, results.get(i), i < curves);
+                }
+                json.endArray().endObject();
+                json.flush();
+
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Error in BacktestHandler: " + e.getMessage());
+                sendResponse(exchange, 500, "{\"error\": \"Internal server error\"}");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private static String decodedParam(String rawQuery, String name) {
+            String value = getParamValue(rawQuery, name);
+            try {
+                return value != null ? URLDecoder.decode(value, StandardCharsets.UTF_8) : null;
+            } catch (IllegalArgumentException e) {
+                return value;
+            }
+        }
+
+        private static void writeBacktestResult(JsonWriter json, BacktestResult result, boolean withCurve) throws IOException {
+            json.beginObject().name("parameters").value(result.getParameters())
+                    .name("finalEquity").money(result.getFinalEquity())
+                    .name("totalReturn").money(result.getTotalReturn())
+                    .name("annualReturn").money(result.getAnnualReturn())
+                    .name("volatility").money(result.getVolatility())
+                    .name("sharpe").value(result.getSharpe())
+                    .name("maxDrawdown").money(result.getMaxDrawdown())
+                    .name("trades").value(result.getTrades())
+                    .name("rejected").value(result.getRejected())
+                    .name("winRate").money(result.getWinRate());
+            if (withCurve) {
+                NavHistory curve = result.getEquity();
+                json.name("equity").beginObject().name("dates").beginArray();
+                for (int i = 0; i < curve.size(); i++) {
+                    json.value(curve.getDate(i).toString());
+                }
+                json.endArray().name("equity").beginArray();
+                for (int i = 0; i < curve.size(); i++) {
+                    json.money(curve.getNav(i));
+                }
+                json.endArray().name("cash").beginArray();
+                for (int i = 0; i < curve.size(); i++) {
+                    json.money(curve.getCash(i));
+                }
+                json.endArray().endObject();
+            }
+            json.endObject();
+        }
+    }
+
     // ===================== TRANSACTIONS HANDLER =====================
     static class TransactionsHandler implements HttpHandler {
+        private static final int DEFAULT_PAGE_SIZE = 100;
+        private static final int MAX_PAGE_SIZE = 1000;
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             System.out.println(" Received transactions request: " + exchange.getRequestMethod() + " " + exchange.getRequestURI());
@@ -420,12 +1107,55 @@ public class Main {
                     return;
                 }
 
-                System.out.println(" Fetching transactions for user: " + username);
-                List<Transaction> transactions = portfolioService.getTransactions(username);
-                String transactionsJson = convertTransactionsToJson(transactions);
+                String symbol = getParamValue(query, "symbol");
+                String type = getParamValue(query, "type");
+                String cursorParam = getParamValue(query, "cursor");
+                String limitParam = getParamValue(query, "limit");
+                if (type != null) {
+                    type = type.trim().toUpperCase();
+                    if (!"BUY".equals(type) && !"SELL".equals(type)) {
+                        sendResponse(exchange, 400, "{\"error\": \"type must be BUY or SELL\"}");
+                        return;
+                    }
+                }
+                LocalDate from;
+                LocalDate to;
+                TransactionPage.Cursor cursor;
+                int limit;
+                try {
+                    String fromParam = getParamValue(query, "from");
+                    String toParam = getParamValue(query, "to");
+                    from = fromParam != null ? LocalDate.parse(fromParam) : null;
+                    to = toParam != null ? LocalDate.parse(toParam) : null;
+                    cursor = cursorParam != null && !cursorParam.isEmpty() ? TransactionPage.Cursor.decode(cursorParam) : null;
+                    limit = limitParam != null
+                            ? Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam))) : DEFAULT_PAGE_SIZE;
+                } catch (DateTimeParseException e) {
+                    sendResponse(exchange, 400, "{\"error\": \"Dates must be YYYY-MM-DD\"}");
+                    return;
+                } catch (NumberFormatException e) {
+                    sendResponse(exchange, 400, "{\"error\": \"limit must be a number\"}");
+                    return;
+                } catch (IllegalArgumentException e) {
+                    sendResponse(exchange, 400, "{\"error\": \"Invalid cursor\"}");
+                    return;
+                }
 
-                String response = "{\"success\":true,\"transactions\":" + transactionsJson + "}";
-                sendResponse(exchange, 200, response);
+                System.out.println(" Fetching transactions for user: " + username);
+                TransactionPage page = portfolioService.getTransactionPage(username,
+                        symbol != null ? symbol.trim().toUpperCase() : null, type, from, to, cursor, limit);
+
+                JsonWriter json = startJsonStream(exchange, 200);
+                json.beginObject().name("success").value(true).name("transactions");
+                writeTransactions(json, page.getTransactions());
+                json.name("nextCursor");
+                if (page.hasMore()) {
+                    json.value(page.getNextCursor());
+                } else {
+                    json.nullValue();
+                }
+                json.endObject();
+                json.flush();
 
             } catch (Exception e) {
                 System.err.println("Error in TransactionsHandler: " + e.getMessage());
@@ -436,6 +1166,140 @@ public class Main {
         }
     }
 
+    // ===================== EXPORT HANDLER =====================
+    static class ExportHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            System.out.println(" Received export request: " + exchange.getRequestMethod() + " " + exchange.getRequestURI());
+
+            setCorsHeaders(exchange);
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "{\"error\": \"Method not allowed\"}");
+                return;
+            }
+
+            String query = exchange.getRequestURI().getQuery();
+            String username = getParamValue(query, "username");
+            String dataset = getParamValue(query, "dataset");
+            String format = getParamValue(query, "format");
+            dataset = dataset != null ? dataset.trim().toLowerCase() : "transactions";
+            format = format != null ? format.trim().toLowerCase() : "csv";
+
+            if (username == null) {
+                sendResponse(exchange, 400, "{\"error\": \"Username parameter required\"}");
+                return;
+            }
+            if (!"transactions".equals(dataset) && !"positions".equals(dataset)) {
+                sendResponse(exchange, 400, "{\"error\": \"dataset must be transactions or positions\"}");
+                return;
+            }
+            if (!"csv".equals(format) && !"ndjson".equals(format)) {
+                sendResponse(exchange, 400, "{\"error\": \"format must be csv or ndjson\"}");
+                return;
+            }
+
+            boolean csv = "csv".equals(format);
+            exchange.getResponseHeaders().set("Content-Type",
+                    csv ? "text/csv; charset=UTF-8" : "application/x-ndjson; charset=UTF-8");
+            exchange.getResponseHeaders().set("Content-Disposition",
+                    "attachment; filename=\"" + dataset + "." + format + "\"");
+            // Chunked, and rows are written as they are read, so memory is one batch of rows
+            // plus one writer buffer however long the history is
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+
+            long rows;
+            try {
+                if ("positions".equals(dataset)) {
+                    rows = csv ? exportPositionsCsv(username, body) : exportPositionsNdjson(username, body);
+                } else {
+                    rows = csv ? exportTransactionsCsv(username, body) : exportTransactionsNdjson(username, body);
+                }
+            } catch (IOException e) {
+                // The client went away; no more rows are read for it
+                System.err.println("Export aborted for user " + username + ": " + e.getMessage());
+                exchange.close();
+                return;
+            }
+            if (rows < 0) {
+                // Leaving the chunked body unterminated tells the client the file is incomplete
+                throw new IOException("Export failed for user: " + username);
+            }
+            System.out.println(" Exported " + rows + " " + dataset + " for user: " + username);
+            exchange.close();
+        }
+
+        // Each writer fills a fixed buffer and blocks handing it to a slow client, so rows
+        // are only read from the database as fast as the client takes them
+        private static long exportTransactionsCsv(String username, OutputStream body) throws IOException {
+            CsvWriter csv = new CsvWriter(body);
+            csv.row("id", "transactionDate", "type", "symbol", "stockName", "quantity", "price",
+                    "totalAmount", "orderType", "duration");
+            long rows = portfolioService.exportTransactions(username, t -> csv
+                    .cell(t.getId())
+                    .cell(t.getTransactionDate().toString())
+                    .cell(t.getType())
+                    .cell(t.getSymbol())
+                    .cell(t.getStockName())
+                    .cell(t.getQuantity())
+                    .money(t.getPrice())
+                    .money(t.getTotalAmount())
+                    .cell(t.getOrderType())
+                    .cell(t.getDuration())
+                    .endRow());
+            csv.flush();
+            return rows;
+        }
+
+        private static long exportTransactionsNdjson(String username, OutputStream body) throws IOException {
+            JsonWriter json = new JsonWriter(body);
+            long rows = portfolioService.exportTransactions(username, t -> {
+                writeTransaction(json, t);
+                json.endLine();
+            });
+            json.flush();
+            return rows;
+        }
+
+        private static long exportPositionsCsv(String username, OutputStream body) throws IOException {
+            CsvWriter csv = new CsvWriter(body);
+            csv.row("id", "symbol", "stockName", "quantity", "purchasePrice", "currentPrice", "purchaseDate");
+            long rows = portfolioService.exportPositions(username, p -> csv
+                    .cell(p.getId())
+                    .cell(p.getSymbol())
+                    .cell(p.getStockName())
+                    .cell(p.getQuantity())
+                    .money(p.getPurchasePrice())
+                    .money(p.getCurrentPrice())
+                    .cell(p.getPurchaseDate().toString())
+                    .endRow());
+            csv.flush();
+            return rows;
+        }
+
+        private static long exportPositionsNdjson(String username, OutputStream body) throws IOException {
+            JsonWriter json = new JsonWriter(body);
+            long rows = portfolioService.exportPositions(username, p -> json.beginObject()
+                    .name("id").value(p.getId())
+                    .name("symbol").valueOrEmpty(p.getSymbol())
+                    .name("stockName").valueOrEmpty(p.getStockName())
+                    .name("quantity").value(p.getQuantity())
+                    .name("purchasePrice").money(p.getPurchasePrice())
+                    .name("currentPrice").money(p.getCurrentPrice())
+                    .name("purchaseDate").valueOrEmpty(p.getPurchaseDate().toString())
+                    .endObject()
+                    .endLine());
+            json.flush();
+            return rows;
+        }
+    }
+
     // ===================== TRADE HANDLER =====================
     static class TradeHandler implements HttpHandler {
         @Override
@@ -472,6 +1336,36 @@ public class Main {
             }
         }
 
+        // The trade result already carries the committed balance, so no user lookup is needed
+        private void sendTradeResponse(HttpExchange exchange, Map<String, Object> result, String username) throws IOException {
+            if (result.get("balance") == null) {
+                // A LIMIT order that is now resting in the book; nothing has executed yet
+                JsonWriter json = new JsonWriter(128);
+                json.beginObject()
+                        .name("success").value(true)
+                        .name("message").value(String.valueOf(result.get("message")))
+                        .name("orderId").value(((Number) result.get("orderId")).longValue())
+                        .name("orderStatus").value(String.valueOf(result.get("orderStatus")))
+                        .endObject();
+                sendJson(exchange, 202, json);
+                return;
+            }
+            JsonWriter json = new JsonWriter();
+            json.beginObject()
+                    .name("success").value(true)
+                    .name("message").value(String.valueOf(result.get("message")))
+                    .name("user").beginObject()
+                    .name("username").valueOrEmpty(username)
+                    .name("email").valueOrEmpty((String) result.get("email"))
+                    .name("balance").money((Double) result.get("balance"))
+                    .endObject();
+            if (result.get("realizedGain") != null) {
+                json.name("realizedGain").money((Double) result.get("realizedGain"));
+            }
+            json.endObject();
+            sendJson(exchange, 200, json);
+        }
+
         private void handleBuy(HttpExchange exchange, String requestBody) throws IOException {
             String username = extractValue(requestBody, "username");
             String symbol = extractValue(requestBody, "symbol");
@@ -479,6 +1373,7 @@ public class Main {
             String quantityStr = extractValue(requestBody, "quantity");
             String orderType = extractValue(requestBody, "orderType");
             String duration = extractValue(requestBody, "duration");
+            String limitPriceStr = extractValue(requestBody, "limitPrice");
 
             if (username == null || symbol == null || stockName == null || quantityStr == null) {
                 sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Missing required fields\"}");
@@ -488,23 +1383,21 @@ public class Main {
             try {
                 int quantity = Integer.parseInt(quantityStr);
                 System.out.println(" Buy order: " + username + " wants to buy " + quantity + " shares of " + symbol);
-                Map<String, Object> result = portfolioService.buyStock(username, symbol, stockName, quantity, orderType, duration);
+                Double limitPrice = limitPriceStr != null ? Double.valueOf(limitPriceStr) : null;
+                Map<String, Object> result = portfolioService.buyStock(username, symbol, stockName, quantity, orderType, duration, limitPrice);
 
                 if (Boolean.TRUE.equals(result.get("success"))) {
-                    User user = authService.getUser(username);
-                    String response = String.format(
-                            "{\"success\":true,\"message\":\"%s\",\"user\":{\"username\":\"%s\",\"email\":\"%s\",\"balance\":%.2f}}",
-                            result.get("message"),
-                            escapeJson(user.getUsername()),
-                            escapeJson(user.getEmail()),
-                            user.getBalance()
-                    );
-                    sendResponse(exchange, 200, response);
+                    sendTradeResponse(exchange, result, username);
+                } else if (Boolean.TRUE.equals(result.get("indeterminate"))) {
+                    // Committed but not durably recorded; the client must not treat it as done
+                    sendError(exchange, 500, "Trade not durable, outcome unknown");
+                } else if (result.get("retryAfter") != null) {
+                    sendRateLimited(exchange, ((Number) result.get("retryAfter")).longValue(), String.valueOf(result.get("message")));
                 } else {
-                    sendResponse(exchange, 400, "{\"success\":false,\"error\":\"" + result.get("message") + "\"}");
+                    sendError(exchange, 400, String.valueOf(result.get("message")));
                 }
             } catch (NumberFormatException e) {
-                sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Invalid quantity\"}");
+                sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Invalid quantity or limit price\"}");
             }
         }
 
@@ -515,6 +1408,7 @@ public class Main {
             String quantityStr = extractValue(requestBody, "quantity");
             String orderType = extractValue(requestBody, "orderType");
             String duration = extractValue(requestBody, "duration");
+            String limitPriceStr = extractValue(requestBody, "limitPrice");
 
             if (username == null || symbol == null || stockName == null || quantityStr == null) {
                 sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Missing required fields\"}");
@@ -524,30 +1418,130 @@ public class Main {
             try {
                 int quantity = Integer.parseInt(quantityStr);
                 System.out.println(" Sell order: " + username + " wants to sell " + quantity + " shares of " + symbol);
-                Map<String, Object> result = portfolioService.sellStock(username, symbol, stockName, quantity, orderType, duration);
+                Double limitPrice = limitPriceStr != null ? Double.valueOf(limitPriceStr) : null;
+                Map<String, Object> result = portfolioService.sellStock(username, symbol, stockName, quantity, orderType, duration, limitPrice);
 
                 if (Boolean.TRUE.equals(result.get("success"))) {
-                    User user = authService.getUser(username);
-                    String response = String.format(
-                            "{\"success\":true,\"message\":\"%s\",\"user\":{\"username\":\"%s\",\"email\":\"%s\",\"balance\":%.2f}}",
-                            result.get("message"),
-                            escapeJson(user.getUsername()),
-                            escapeJson(user.getEmail()),
-                            user.getBalance()
-                    );
-                    sendResponse(exchange, 200, response);
+                    sendTradeResponse(exchange, result, username);
+                } else if (Boolean.TRUE.equals(result.get("indeterminate"))) {
+                    // Committed but not durably recorded; the client must not treat it as done
+                    sendError(exchange, 500, "Trade not durable, outcome unknown");
+                } else if (result.get("retryAfter") != null) {
+                    sendRateLimited(exchange, ((Number) result.get("retryAfter")).longValue(), String.valueOf(result.get("message")));
                 } else {
-                    sendResponse(exchange, 400, "{\"success\":false,\"error\":\"" + result.get("message") + "\"}");
+                    sendError(exchange, 400, String.valueOf(result.get("message")));
                 }
             } catch (NumberFormatException e) {
-                sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Invalid quantity\"}");
+                sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Invalid quantity or limit price\"}");
             }
         }
     }
 
 
+    // ===================== ORDERS HANDLER =====================
+    // GET /api/orders?username=... lists orders; POST /api/orders/cancel {"username","orderId"} cancels one
+    static class OrdersHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCorsHeaders(exchange);
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+
+            try {
+                String path = exchange.getRequestURI().getPath();
+                if ("GET".equalsIgnoreCase(exchange.getRequestMethod()) && path.equals("/api/orders")) {
+                    String username = getParamValue(exchange.getRequestURI().getQuery(), "username");
+                    if (username == null) {
+                        sendResponse(exchange, 400, "{\"error\": \"Username parameter required\"}");
+                        return;
+                    }
+                    List<Order> orders = portfolioService.getOrders(username);
+                    JsonWriter json = startJsonStream(exchange, 200);
+                    json.beginObject().name("success").value(true).name("orders").beginArray();
+                    for (Order order : orders) {
+                        writeOrder(json, order);
+                    }
+                    json.endArray().endObject();
+                    json.flush();
+                } else if ("POST".equalsIgnoreCase(exchange.getRequestMethod()) && path.equals("/api/orders/cancel")) {
+                    String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                    String username = extractValue(requestBody, "username");
+                    String orderId = extractValue(requestBody, "orderId");
+                    if (username == null || orderId == null) {
+                        sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Missing required fields\"}");
+                        return;
+                    }
+                    if (portfolioService.cancelOrder(username, Long.parseLong(orderId))) {
+                        sendResponse(exchange, 200, "{\"success\":true,\"message\":\"Order cancelled\"}");
+                    } else {
+                        sendResponse(exchange, 404, "{\"success\":false,\"error\":\"No open order with that id\"}");
+                    }
+                } else {
+                    sendResponse(exchange, 404, "{\"error\": \"Endpoint not found\"}");
+                }
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 400, "{\"success\":false,\"error\":\"Invalid order id\"}");
+            } catch (Exception e) {
+                System.err.println("Error in OrdersHandler: " + e.getMessage());
+                sendResponse(exchange, 500, "{\"error\": \"Internal server error\"}");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
     // ===================== TUTORIAL HANDLERS =====================
 
+    // Tutorial content only changes on reload, so responses are serialized once per content version
+    static final class TutorialCatalog {
+        final long version;
+        final CachedResponse all;
+        final Map<String, CachedResponse> byId;
+
+        private TutorialCatalog(long version, CachedResponse all, Map<String, CachedResponse> byId) {
+            this.version = version;
+            this.all = all;
+            this.byId = byId;
+        }
+
+        static TutorialCatalog build(long version, List<TutorialSection> tutorials) throws IOException {
+            JsonWriter catalog = new JsonWriter(64 * 1024);
+            catalog.beginObject().name("success").value(true).name("data").beginArray();
+            Map<String, CachedResponse> byId = new HashMap<>();
+            for (TutorialSection tutorial : tutorials) {
+                writeTutorial(catalog, tutorial);
+
+                JsonWriter single = new JsonWriter(8192);
+                single.beginObject().name("success").value(true).name("data");
+                writeTutorial(single, tutorial);
+                single.endObject();
+                byId.put(tutorial.getId(), CachedResponse.of(single.toByteArray()));
+            }
+            catalog.endArray().endObject();
+            return new TutorialCatalog(version, CachedResponse.of(catalog.toByteArray()), Map.copyOf(byId));
+        }
+    }
+
+    private static TutorialCatalog currentTutorialCatalog() throws IOException {
+        long version = tutorialService.getContentVersion();
+        TutorialCatalog catalog = tutorialCatalog;
+        if (catalog == null || catalog.version != version) {
+            synchronized (TutorialCatalog.class) {
+                catalog = tutorialCatalog;
+                if (catalog == null || catalog.version != version) {
+                    catalog = TutorialCatalog.build(version, tutorialService.getAllTutorials());
+                    tutorialCatalog = catalog;
+                    System.out.println(" Tutorial catalog serialized: " + catalog.all.getSize() + " bytes, "
+                            + catalog.all.getGzippedSize() + " gzipped");
+                }
+            }
+        }
+        return catalog;
+    }
+
     static class TutorialsHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -561,9 +1555,7 @@ public class Main {
                 return;
             }
             try {
-                List<TutorialSection> tutorials = tutorialService.getAllTutorials();
-                String tutorialsJson = convertTutorialsToJson(tutorials);
-                sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + tutorialsJson + "}");
+                currentTutorialCatalog().all.send(exchange);
             } catch (Exception e) {
                 sendJsonResponse(exchange, 500, "{\"success\":false,\"error\":\"Failed to fetch tutorials\"}");
             }
@@ -615,10 +1607,9 @@ public class Main {
                 sendJsonResponse(exchange, 400, "{\"success\":false,\"error\":\"Tutorial ID is required\"}");
                 return;
             }
-            TutorialSection tutorial = tutorialService.getTutorial(tutorialId);
+            CachedResponse tutorial = currentTutorialCatalog().byId.get(tutorialId);
             if (tutorial != null) {
-                String tutorialJson = convertTutorialToJson(tutorial);
-                sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + tutorialJson + "}");
+                tutorial.send(exchange);
             } else {
                 sendJsonResponse(exchange, 404, "{\"success\":false,\"error\":\"Tutorial not found\"}");
             }
@@ -641,8 +1632,7 @@ public class Main {
                     return;
                 }
                 boolean isCorrect = tutorialService.validateExercise(tutorialId, userAnswer);
-                String response = String.format("{\"success\":true,\"correct\":%b}", isCorrect);
-                sendJsonResponse(exchange, 200, response);
+                sendJsonResponse(exchange, 200, isCorrect ? "{\"success\":true,\"correct\":true}" : "{\"success\":true,\"correct\":false}");
             } catch (Exception e) {
                 sendJsonResponse(exchange, 500, "{\"success\":false,\"error\":\"Failed to validate exercise\"}");
             }
@@ -673,8 +1663,7 @@ public class Main {
                     return;
                 }
 
-                String tutorialsJson = convertTutorialsToJson(tutorials);
-                sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + tutorialsJson + "}");
+                sendTutorials(exchange, tutorials);
             } catch (Exception e) {
                 sendJsonResponse(exchange, 500, "{\"success\":false,\"error\":\"Failed to search tutorials\"}");
             }
@@ -703,8 +1692,7 @@ public class Main {
                 }
 
                 List<TutorialSection> tutorials = tutorialService.getTutorialsByLevel(level);
-                String tutorialsJson = convertTutorialsToJson(tutorials);
-                sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + tutorialsJson + "}");
+                sendTutorials(exchange, tutorials);
             } catch (Exception e) {
                 sendJsonResponse(exchange, 500, "{\"success\":false,\"error\":\"Failed to fetch tutorials by level\"}");
             }
@@ -733,8 +1721,7 @@ public class Main {
                 }
 
                 List<TutorialSection> tutorials = tutorialService.getTutorialsByCategory(category);
-                String tutorialsJson = convertTutorialsToJson(tutorials);
-                sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + tutorialsJson + "}");
+                sendTutorials(exchange, tutorials);
             } catch (Exception e) {
                 sendJsonResponse(exchange, 500, "{\"success\":false,\"error\":\"Failed to fetch tutorials by category\"}");
             }
@@ -796,30 +1783,13 @@ public class Main {
             Map<String, Boolean> progress = tutorialService.getUserProgress(username);
             Map<String, Object> stats = tutorialService.getUserStatistics(username);
 
-            String progressJson = convertProgressToJson(progress);
-            String statsJson = convertObjectToJson(stats);
-
-            String response = String.format("{\"success\":true,\"data\":%s,\"statistics\":%s}",
-                    progressJson, statsJson);
-            sendJsonResponse(exchange, 200, response);
-        }
-
-        private String convertProgressToJson(Map<String, Boolean> progress) {
-            if (progress == null || progress.isEmpty()) {
-                return "{}";
-            }
-
-            StringBuilder json = new StringBuilder("{");
-            int i = 0;
-            for (Map.Entry<String, Boolean> entry : progress.entrySet()) {
-                json.append("\"").append(escapeJson(entry.getKey())).append("\":").append(entry.getValue());
-                if (i < progress.size() - 1) {
-                    json.append(",");
-                }
-                i++;
-            }
-            json.append("}");
-            return json.toString();
+            JsonWriter json = new JsonWriter();
+            json.beginObject()
+                    .name("success").value(true)
+                    .name("data").value(progress != null ? progress : Map.of())
+                    .name("statistics").value(stats)
+                    .endObject();
+            sendJson(exchange, 200, json);
         }
     }
 
@@ -891,8 +1861,11 @@ public class Main {
 
             Quiz quiz = tutorialService.getQuiz(tutorialId);
             if (quiz != null) {
-                String quizJson = convertQuizToJson(quiz);
-                sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + quizJson + "}");
+                JsonWriter json = new JsonWriter();
+                json.beginObject().name("success").value(true).name("data");
+                writeQuiz(json, quiz);
+                json.endObject();
+                sendJson(exchange, 200, json);
             } else {
                 sendJsonResponse(exchange, 404, "{\"success\":false,\"error\":\"Quiz not found for this tutorial\"}");
             }
@@ -920,16 +1893,17 @@ public class Main {
 
                 Map<String, Object> result = tutorialService.submitQuiz(tutorialId, username, answersJson);
                 if (result != null) {
-                    String resultJson = convertObjectToJson(result);
-                    System.out.println("Quiz submission successful, sending response: " + resultJson);
-                    sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + resultJson + "}");
+                    JsonWriter json = new JsonWriter();
+                    json.beginObject().name("success").value(true).name("data").value(result).endObject();
+                    System.out.println("Quiz submission successful, sending " + json.size() + " bytes");
+                    sendJson(exchange, 200, json);
                 } else {
                     sendJsonResponse(exchange, 400, "{\"success\":false,\"error\":\"Failed to submit quiz\"}");
                 }
             } catch (Exception e) {
                 System.err.println("Error in handleSubmitQuiz: " + e.getMessage());
                 e.printStackTrace();
-                sendJsonResponse(exchange, 500, "{\"success\":false,\"error\":\"Failed to submit quiz: " + e.getMessage() + "\"}");
+                sendError(exchange, 500, "Failed to submit quiz: " + e.getMessage());
             }
         }
     }
@@ -967,8 +1941,11 @@ public class Main {
 
             Exercise exercise = tutorialService.getExercise(tutorialId);
             if (exercise != null) {
-                String exerciseJson = convertExerciseToJson(exercise);
-                sendJsonResponse(exchange, 200, "{\"success\":true,\"data\":" + exerciseJson + "}");
+                JsonWriter json = new JsonWriter(256);
+                json.beginObject().name("success").value(true).name("data");
+                writeExercise(json, exercise);
+                json.endObject();
+                sendJson(exchange, 200, json);
             } else {
                 sendJsonResponse(exchange, 404, "{\"success\":false,\"error\":\"Exercise not found for this tutorial\"}");
             }
@@ -985,7 +1962,7 @@ public class Main {
             }
 
             boolean isCorrect = tutorialService.validateExercise(tutorialId, userAnswer);
-            sendJsonResponse(exchange, 200, String.format("{\"success\":true,\"correct\":%b}", isCorrect));
+            sendJsonResponse(exchange, 200, isCorrect ? "{\"success\":true,\"correct\":true}" : "{\"success\":true,\"correct\":false}");
         }
     }
 
@@ -1005,6 +1982,23 @@ public class Main {
         }
     }
 
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = metricsRegistry.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
     // ===================== UTILITY METHODS =====================
 
     private static void setCorsHeaders(HttpExchange exchange) {
@@ -1015,10 +2009,54 @@ public class Main {
     }
 
     private static void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    // Sends a buffered JsonWriter document with a fixed Content-Length
+    private static void sendJson(HttpExchange exchange, int statusCode, JsonWriter json) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
-        exchange.sendResponseHeaders(statusCode, response.getBytes(StandardCharsets.UTF_8).length);
+        exchange.sendResponseHeaders(statusCode, json.size());
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes(StandardCharsets.UTF_8));
+            json.writeTo(os);
+        }
+    }
+
+    // Messages may carry exception text or echoed input, so they always go through the writer's escaping
+    private static void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        JsonWriter json = new JsonWriter(128);
+        json.beginObject().name("success").value(false).name("error").value(message).endObject();
+        sendJson(exchange, statusCode, json);
+    }
+
+    // Upstream quota is exhausted; the request did nothing and can be retried as is
+    private static void sendRateLimited(HttpExchange exchange, long retryAfterSeconds, String message) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        sendError(exchange, 503, message);
+    }
+
+    // Starts a chunked response; the caller writes the document, flushes and closes the exchange
+    private static JsonWriter startJsonStream(HttpExchange exchange, int statusCode) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(statusCode, 0);
+        return new JsonWriter(exchange.getResponseBody());
+    }
+
+    private static void sendTutorials(HttpExchange exchange, List<TutorialSection> tutorials) throws IOException {
+        try {
+            JsonWriter json = startJsonStream(exchange, 200);
+            json.beginObject().name("success").value(true).name("data").beginArray();
+            for (TutorialSection tutorial : tutorials) {
+                writeTutorial(json, tutorial);
+            }
+            json.endArray().endObject();
+            json.flush();
+        } finally {
+            exchange.close();
         }
     }
 
@@ -1124,194 +2162,149 @@ public class Main {
         }
     }
 
-    // JSON Conversion Methods (keep as they were)
-    private static String convertPortfolioToJson(List<Portfolio> portfolio) {
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < portfolio.size(); i++) {
-            Portfolio item = portfolio.get(i);
-            json.append(String.format(
-                    "{\"id\":%d,\"symbol\":\"%s\",\"stockName\":\"%s\",\"quantity\":%d,\"purchasePrice\":%.2f,\"currentPrice\":%.2f,\"totalValue\":%.2f,\"totalGainLoss\":%.2f,\"gainLossPercentage\":%.2f}",
-                    item.getId(),
-                    escapeJson(item.getSymbol()),
-                    escapeJson(item.getStockName()),
-                    item.getQuantity(),
-                    item.getPurchasePrice(),
-                    item.getCurrentPrice(),
-                    item.getTotalValue(),
-                    item.getTotalGainLoss(),
-                    item.getGainLossPercentage()
-            ));
-            if (i < portfolio.size() - 1) {
-                json.append(",");
-            }
-        }
-        json.append("]");
-        return json.toString();
+    // JSON Conversion Methods
+    private static void writeUser(JsonWriter json, User user) throws IOException {
+        json.beginObject()
+                .name("username").valueOrEmpty(user.getUsername())
+                .name("email").valueOrEmpty(user.getEmail())
+                .name("balance").money(user.getBalance())
+                .endObject();
     }
 
-    private static String convertTransactionsToJson(List<Transaction> transactions) {
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < transactions.size(); i++) {
-            Transaction transaction = transactions.get(i);
-            json.append(String.format(
-                    "{\"id\":%d,\"type\":\"%s\",\"symbol\":\"%s\",\"stockName\":\"%s\",\"quantity\":%d,\"price\":%.2f,\"totalAmount\":%.2f,\"orderType\":\"%s\",\"duration\":\"%s\",\"transactionDate\":\"%s\"}",
-                    transaction.getId(),
-                    escapeJson(transaction.getType()),
-                    escapeJson(transaction.getSymbol()),
-                    escapeJson(transaction.getStockName()),
-                    transaction.getQuantity(),
-                    transaction.getPrice(),
-                    transaction.getTotalAmount(),
-                    escapeJson(transaction.getOrderType()),
-                    escapeJson(transaction.getDuration()),
-                    escapeJson(transaction.getTransactionDate().toString())
-            ));
-            if (i < transactions.size() - 1) {
-                json.append(",");
-            }
-        }
-        json.append("]");
-        return json.toString();
+    private static void writePortfolio(JsonWriter json, PortfolioSnapshot snapshot) throws IOException {
+        json.beginArray();
+        List<Portfolio> holdings = snapshot.getHoldings();
+        for (int i = 0; i < holdings.size(); i++) {
+            Portfolio item = holdings.get(i);
+            json.beginObject()
+                    .name("id").value(item.getId())
+                    .name("symbol").valueOrEmpty(item.getSymbol())
+                    .name("stockName").valueOrEmpty(item.getStockName())
+                    .name("quantity").value(item.getQuantity())
+                    .name("purchasePrice").money(item.getPurchasePrice())
+                    .name("currentPrice").money(item.getCurrentPrice())
+                    .name("totalValue").money(snapshot.getMarketValue(i))
+                    .name("totalCost").money(snapshot.getCostBasis(i))
+                    .name("totalGainLoss").money(snapshot.getGainLoss(i))
+                    .name("gainLossPercentage").money(snapshot.getReturnPercent(i))
+                    .name("weight").value(snapshot.getWeight(i))
+                    .name("priceStale").value(item.isPriceStale())
+                    .endObject();
+        }
+        json.endArray();
     }
 
-    private static String convertObjectToJson(Object obj) {
-        if (obj == null) return "null";
-        if (obj instanceof Map) {
-            return convertMapToJson((Map<?, ?>) obj);
-        } else if (obj instanceof String) {
-            return "\"" + escapeJson(obj.toString()) + "\"";
-        } else if (obj instanceof Number || obj instanceof Boolean) {
-            return obj.toString();
-        } else {
-            return "\"" + escapeJson(obj.toString()) + "\"";
+    private static void writeTransactions(JsonWriter json, List<Transaction> transactions) throws IOException {
+        json.beginArray();
+        for (Transaction transaction : transactions) {
+            writeTransaction(json, transaction);
         }
+        json.endArray();
     }
 
-    private static String convertMapToJson(Map<?, ?> map) {
-        if (map == null || map.isEmpty()) return "{}";
-        StringBuilder json = new StringBuilder("{");
-        int i = 0;
-        for (Map.Entry<?, ?> entry : map.entrySet()) {
-            json.append("\"").append(escapeJson(entry.getKey().toString())).append("\":")
-                    .append(convertObjectToJson(entry.getValue()));
-            if (i < map.size() - 1) json.append(",");
-            i++;
-        }
-        json.append("}");
-        return json.toString();
+    private static void writeTransaction(JsonWriter json, Transaction transaction) throws IOException {
+        json.beginObject()
+                .name("id").value(transaction.getId())
+                .name("type").valueOrEmpty(transaction.getType())
+                .name("symbol").valueOrEmpty(transaction.getSymbol())
+                .name("stockName").valueOrEmpty(transaction.getStockName())
+                .name("quantity").value(transaction.getQuantity())
+                .name("price").money(transaction.getPrice())
+                .name("totalAmount").money(transaction.getTotalAmount())
+                .name("orderType").valueOrEmpty(transaction.getOrderType())
+                .name("duration").valueOrEmpty(transaction.getDuration())
+                .name("transactionDate").valueOrEmpty(transaction.getTransactionDate().toString())
+                .endObject();
     }
 
-    private static String convertTutorialsToJson(List<TutorialSection> tutorials) {
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < tutorials.size(); i++) {
-            TutorialSection tutorial = tutorials.get(i);
-            json.append(convertTutorialToJson(tutorial));
-            if (i < tutorials.size() - 1) {
-                json.append(",");
-            }
+    private static void writeOrder(JsonWriter json, Order order) throws IOException {
+        json.beginObject()
+                .name("id").value(order.getId())
+                .name("side").valueOrEmpty(order.getSide())
+                .name("symbol").valueOrEmpty(order.getSymbol())
+                .name("stockName").valueOrEmpty(order.getStockName())
+                .name("quantity").value(order.getQuantity())
+                .name("limitPrice").money(order.getLimitPrice())
+                .name("duration").valueOrEmpty(order.getDuration())
+                .name("status").valueOrEmpty(order.getStatus())
+                .name("statusMessage").value(order.getStatusMessage());
+        if (Order.FILLED.equals(order.getStatus())) {
+            json.name("fillPrice").money(order.getFillPrice());
         }
-        json.append("]");
-        return json.toString();
-    }
-
-    private static String convertTutorialToJson(TutorialSection tutorial) {
-        return String.format(
-                "{\"id\":\"%s\",\"title\":\"%s\",\"description\":\"%s\",\"level\":\"%s\",\"category\":\"%s\",\"estimatedMinutes\":%d,\"completionRate\":%.2f,\"videoUrl\":\"%s\",\"content\":\"%s\",\"infographics\":%s,\"keyPoints\":%s,\"glossary\":%s,\"quiz\":%s,\"exercise\":%s,\"hasVideo\":%b,\"hasSimulator\":%b,\"hasQuiz\":%b,\"prerequisites\":%s,\"nextTutorials\":%s,\"certificationId\":\"%s\"}",
-                escapeJson(tutorial.getId()),
-                escapeJson(tutorial.getTitle()),
-                escapeJson(tutorial.getDescription()),
-                escapeJson(tutorial.getLevel()),
-                escapeJson(tutorial.getCategory()),
-                tutorial.getEstimatedMinutes(),
-                tutorial.getCompletionRate(),
-                escapeJson(tutorial.getVideoUrl()),
-                escapeJson(tutorial.getContent()),
-                convertStringListToJson(tutorial.getInfographics()),
-                convertStringListToJson(tutorial.getKeyPoints()),
-                convertMapToJson(tutorial.getGlossary()),
-                convertQuizToJson(tutorial.getQuiz()),
-                convertExerciseToJson(tutorial.getExercise()),
-                tutorial.isHasVideo(),
-                tutorial.isHasSimulator(),
-                tutorial.isHasQuiz(),
-                convertStringListToJson(tutorial.getPrerequisites()),
-                convertStringListToJson(tutorial.getNextTutorials()),
-                escapeJson(tutorial.getCertificationId())
-        );
+        json.name("createdAt").valueOrEmpty(order.getCreatedAt().toString())
+                .name("updatedAt").valueOrEmpty(order.getUpdatedAt().toString())
+                .endObject();
     }
 
-    private static String convertQuizToJson(Quiz quiz) {
-        if (quiz == null) return "null";
-        return String.format(
-                "{\"id\":\"%s\",\"passingScore\":%d,\"timeLimit\":%d,\"allowRetakes\":%b,\"questions\":%s}",
-                escapeJson(quiz.getId()),
-                quiz.getPassingScore(),
-                quiz.getTimeLimit(),
-                quiz.isAllowRetakes(),
-                convertQuestionsToJson(quiz.getQuestions())
-        );
+    private static void writeTutorial(JsonWriter json, TutorialSection tutorial) throws IOException {
+        json.beginObject()
+                .name("id").valueOrEmpty(tutorial.getId())
+                .name("title").valueOrEmpty(tutorial.getTitle())
+                .name("description").valueOrEmpty(tutorial.getDescription())
+                .name("level").valueOrEmpty(tutorial.getLevel())
+                .name("category").valueOrEmpty(tutorial.getCategory())
+                .name("estimatedMinutes").value(tutorial.getEstimatedMinutes())
+                .name("completionRate").money(tutorial.getCompletionRate())
+                .name("videoUrl").valueOrEmpty(tutorial.getVideoUrl())
+                .name("content").valueOrEmpty(tutorial.getContent())
+                .name("infographics").stringArray(tutorial.getInfographics())
+                .name("keyPoints").stringArray(tutorial.getKeyPoints())
+                .name("glossary").value(tutorial.getGlossary() != null ? tutorial.getGlossary() : Map.of())
+                .name("quiz");
+        writeQuiz(json, tutorial.getQuiz());
+        json.name("exercise");
+        writeExercise(json, tutorial.getExercise());
+        json.name("hasVideo").value(tutorial.isHasVideo())
+                .name("hasSimulator").value(tutorial.isHasSimulator())
+                .name("hasQuiz").value(tutorial.isHasQuiz())
+                .name("prerequisites").stringArray(tutorial.getPrerequisites())
+                .name("nextTutorials").stringArray(tutorial.getNextTutorials())
+                .name("certificationId").valueOrEmpty(tutorial.getCertificationId())
+                .endObject();
     }
 
-    private static String convertQuestionsToJson(List<Question> questions) {
-        if (questions == null || questions.isEmpty()) {
-            return "[]";
+    private static void writeQuiz(JsonWriter json, Quiz quiz) throws IOException {
+        if (quiz == null) {
+            json.nullValue();
+            return;
         }
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < questions.size(); i++) {
-            Question question = questions.get(i);
-            json.append(convertQuestionToJson(question));
-            if (i < questions.size() - 1) {
-                json.append(",");
+        json.beginObject()
+                .name("id").valueOrEmpty(quiz.getId())
+                .name("passingScore").value(quiz.getPassingScore())
+                .name("timeLimit").value(quiz.getTimeLimit())
+                .name("allowRetakes").value(quiz.isAllowRetakes())
+                .name("questions").beginArray();
+        if (quiz.getQuestions() != null) {
+            for (Question question : quiz.getQuestions()) {
+                writeQuestion(json, question);
             }
         }
-        json.append("]");
-        return json.toString();
-    }
-
-    private static String convertQuestionToJson(Question question) {
-        if (question == null) return "null";
-        return String.format(
-                "{\"questionText\":\"%s\",\"options\":%s,\"correctAnswerIndex\":%d,\"explanation\":\"%s\",\"questionType\":\"%s\"}",
-                escapeJson(question.getQuestionText()),
-                convertStringListToJson(question.getOptions()),
-                question.getCorrectAnswerIndex(),
-                escapeJson(question.getExplanation()),
-                escapeJson(question.getQuestionType())
-        );
+        json.endArray().endObject();
     }
 
-    private static String convertExerciseToJson(Exercise exercise) {
-        if (exercise == null) return "null";
-        return String.format(
-                "{\"question\":\"%s\",\"hint\":\"%s\",\"type\":\"%s\"}",
-                escapeJson(exercise.getQuestion()),
-                escapeJson(exercise.getHint()),
-                escapeJson(exercise.getType())
-        );
-    }
-
-    private static String convertStringListToJson(List<String> list) {
-        if (list == null || list.isEmpty()) {
-            return "[]";
+    private static void writeQuestion(JsonWriter json, Question question) throws IOException {
+        if (question == null) {
+            json.nullValue();
+            return;
         }
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < list.size(); i++) {
-            json.append("\"").append(escapeJson(list.get(i))).append("\"");
-            if (i < list.size() - 1) {
-                json.append(",");
-            }
-        }
-        json.append("]");
-        return json.toString();
+        json.beginObject()
+                .name("questionText").valueOrEmpty(question.getQuestionText())
+                .name("options").stringArray(question.getOptions())
+                .name("correctAnswerIndex").value(question.getCorrectAnswerIndex())
+                .name("explanation").valueOrEmpty(question.getExplanation())
+                .name("questionType").valueOrEmpty(question.getQuestionType())
+                .endObject();
     }
 
-    private static String escapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t")
-                .replace("/", "\\/");
+    private static void writeExercise(JsonWriter json, Exercise exercise) throws IOException {
+        if (exercise == null) {
+            json.nullValue();
+            return;
+        }
+        json.beginObject()
+                .name("question").valueOrEmpty(exercise.getQuestion())
+                .name("hint").valueOrEmpty(exercise.getHint())
+                .name("type").valueOrEmpty(exercise.getType())
+                .endObject();
     }
 }
\ No newline at end of file
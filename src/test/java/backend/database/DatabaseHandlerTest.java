@@ -0,0 +1,191 @@
+package backend.database;
+
+import backend.models.Portfolio;
+import backend.models.TaxLot;
+import backend.models.TradeResult;
+import backend.models.Transaction;
+import backend.models.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseHandlerTest {
+    // The schema of the smartstock.db shipped before positions were upserted
+    private static final String OLD_USERS = "CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "username TEXT UNIQUE NOT NULL, passwordHash TEXT NOT NULL, email TEXT UNIQUE NOT NULL, "
+            + "balance REAL DEFAULT 100000.0)";
+    private static final String OLD_PORTFOLIO = "CREATE TABLE portfolio (id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "username TEXT NOT NULL, symbol TEXT NOT NULL, stock_name TEXT NOT NULL, quantity INTEGER NOT NULL, "
+            + "purchase_price REAL NOT NULL, current_price REAL NOT NULL, purchase_date TEXT NOT NULL, "
+            + "FOREIGN KEY (username) REFERENCES users(username))";
+    private static final String OLD_TRANSACTIONS = "CREATE TABLE transactions (id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "username TEXT NOT NULL, type TEXT NOT NULL, symbol TEXT NOT NULL, stock_name TEXT NOT NULL, "
+            + "quantity INTEGER NOT NULL, price REAL NOT NULL, total_amount REAL NOT NULL, order_type TEXT NOT NULL, "
+            + "duration TEXT NOT NULL, transaction_date TEXT NOT NULL, FOREIGN KEY (username) REFERENCES users(username))";
+
+    @TempDir
+    Path dir;
+
+    private DatabaseHandler db;
+
+    @AfterEach
+    void close() {
+        if (db != null) {
+            db.closeConnection();
+        }
+    }
+
+    private String url() {
+        return "jdbc:sqlite:" + dir.resolve("test.db");
+    }
+
+    private DatabaseHandler open() {
+        db = new DatabaseHandler(url());
+        return db;
+    }
+
+    private void createOldSchema(String... inserts) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url());
+             Statement stmt = connection.createStatement()) {
+            stmt.execute(OLD_USERS);
+            stmt.execute(OLD_PORTFOLIO);
+            stmt.execute(OLD_TRANSACTIONS);
+            for (String insert : inserts) {
+                stmt.execute(insert);
+            }
+        }
+    }
+
+    private static TradeResult trade(DatabaseHandler db, String type, String symbol, int quantity, double price) {
+        return db.executeTrade(new Transaction("alice", type, symbol, symbol + " Inc", quantity, price, "MARKET", "DAY"));
+    }
+
+    private int portfolioRows(String symbol) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url());
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM portfolio WHERE symbol = '" + symbol + "'")) {
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void buysWorkOnAnOldPortfolioTable() throws SQLException {
+        createOldSchema("INSERT INTO users(username, passwordHash, email, balance) VALUES ('alice', 'x', 'a@x', 10000)");
+
+        DatabaseHandler db = open();
+        TradeResult first = trade(db, "BUY", "AAA", 10, 100);
+        assertTrue(first.isSuccess(), first.getMessage());
+        TradeResult second = trade(db, "BUY", "AAA", 10, 120);
+        assertTrue(second.isSuccess(), second.getMessage());
+
+        assertEquals(20, second.getPositionQuantity());
+        assertEquals(110, second.getAveragePrice(), 1e-9);
+        assertEquals(10000 - 1000 - 1200, second.getBalance(), 1e-9);
+        assertEquals(1, portfolioRows("AAA"));
+    }
+
+    @Test
+    void migrationMergesDuplicatePositions() throws SQLException {
+        createOldSchema(
+                "INSERT INTO users(username, passwordHash, email, balance) VALUES ('alice', 'x', 'a@x', 10000)",
+                "INSERT INTO portfolio(username, symbol, stock_name, quantity, purchase_price, current_price, purchase_date) "
+                        + "VALUES ('alice', 'AAA', 'AAA Inc', 10, 100, 100, '2024-01-02T10:00:00')",
+                "INSERT INTO portfolio(username, symbol, stock_name, quantity, purchase_price, current_price, purchase_date) "
+                        + "VALUES ('alice', 'AAA', 'AAA Inc', 30, 120, 125, '2024-03-01T10:00:00')",
+                "INSERT INTO portfolio(username, symbol, stock_name, quantity, purchase_price, current_price, purchase_date) "
+                        + "VALUES ('alice', 'BBB', 'BBB Inc', 5, 50, 50, '2024-02-01T10:00:00')");
+
+        DatabaseHandler db = open();
+        Portfolio aaa = db.getPortfolioItem("alice", "AAA");
+        assertEquals(40, aaa.getQuantity());
+        assertEquals(115, aaa.getPurchasePrice(), 1e-9);
+        assertEquals(125, aaa.getCurrentPrice(), 1e-9);
+        assertEquals("2024-01-02", aaa.getPurchaseDate().toLocalDate().toString());
+        assertEquals(1, portfolioRows("AAA"));
+        assertEquals(5, db.getPortfolioItem("alice", "BBB").getQuantity());
+
+        // The merged position gets one lot at its average cost
+        List<TaxLot> lots = db.getOpenLots("alice");
+        assertEquals(2, lots.size());
+        assertEquals(40, lots.get(0).getQuantity());
+        assertEquals(115, lots.get(0).getCostPerShare(), 1e-9);
+
+        TradeResult buy = trade(db, "BUY", "AAA", 10, 140);
+        assertTrue(buy.isSuccess(), buy.getMessage());
+        assertEquals(50, buy.getPositionQuantity());
+        assertEquals(1, portfolioRows("AAA"));
+    }
+
+    @Test
+    void migrationRunsOnce() throws SQLException {
+        createOldSchema("INSERT INTO users(username, passwordHash, email, balance) VALUES ('alice', 'x', 'a@x', 10000)");
+        open();
+        assertTrue(trade(db, "BUY", "AAA", 1, 10).isSuccess());
+        db.closeConnection();
+
+        DatabaseHandler reopened = open();
+        assertEquals(1, reopened.getPortfolioItem("alice", "AAA").getQuantity());
+        assertTrue(trade(reopened, "BUY", "AAA", 1, 10).isSuccess());
+        assertEquals(2, reopened.getPortfolioItem("alice", "AAA").getQuantity());
+    }
+
+    @Test
+    void guardedUpdatesRejectWithoutSideEffects() {
+        DatabaseHandler db = open();
+        db.addUser(new User("alice", "x", "a@x", 1000));
+
+        TradeResult tooExpensive = trade(db, "BUY", "AAA", 11, 100);
+        assertFalse(tooExpensive.isSuccess());
+        assertEquals("Insufficient balance", tooExpensive.getMessage());
+
+        TradeResult nothingHeld = trade(db, "SELL", "AAA", 1, 100);
+        assertFalse(nothingHeld.isSuccess());
+        assertEquals("Insufficient stocks", nothingHeld.getMessage());
+
+        TradeResult unknown = db.executeTrade(new Transaction("bob", "BUY", "AAA", "AAA Inc", 1, 1, "MARKET", "DAY"));
+        assertEquals("User not found", unknown.getMessage());
+
+        assertEquals(1000, db.getUserByUsername("alice").getBalance(), 1e-9);
+        assertNull(db.getPortfolioItem("alice", "AAA"));
+        assertTrue(db.getOpenLots("alice").isEmpty());
+    }
+
+    @Test
+    void sellingRealizesGainsAndClosesThePosition() {
+        DatabaseHandler db = open();
+        db.addUser(new User("alice", "x", "a@x", 10000));
+        assertTrue(trade(db, "BUY", "AAA", 10, 100).isSuccess());
+        assertTrue(trade(db, "BUY", "AAA", 10, 120).isSuccess());
+
+        // FIFO: the 100 lot goes first
+        TradeResult partial = trade(db, "SELL", "AAA", 15, 130);
+        assertTrue(partial.isSuccess(), partial.getMessage());
+        assertEquals(15 * 130 - (10 * 100 + 5 * 120), partial.getRealizedGain(), 1e-9);
+        assertEquals(5, partial.getPositionQuantity());
+        assertEquals(120, db.getPortfolioItem("alice", "AAA").getPurchasePrice(), 1e-9);
+
+        TradeResult oversell = trade(db, "SELL", "AAA", 6, 130);
+        assertEquals("Insufficient stocks", oversell.getMessage());
+
+        TradeResult rest = trade(db, "SELL", "AAA", 5, 90);
+        assertTrue(rest.isSuccess(), rest.getMessage());
+        assertEquals(5 * 90 - 5 * 120, rest.getRealizedGain(), 1e-9);
+        assertNull(db.getPortfolioItem("alice", "AAA"));
+        assertTrue(db.getOpenLots("alice").isEmpty());
+        assertEquals(350 - 150, db.getRealizedGains("alice").get("AAA"), 1e-9);
+        assertEquals(10000 - 2200 + 1950 + 450, rest.getBalance(), 1e-9);
+    }
+}
@@ -0,0 +1,198 @@
+package backend.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TradeJournalTest {
+    private static final int SEGMENT_BYTES = 4096;
+    // Every payload here is 8 bytes, so every record is 17 + 8 bytes
+    private static final int RECORD_BYTES = 25;
+
+    @TempDir
+    Path dir;
+
+    private static byte[] payload(int n) {
+        return String.format("trade-%02d", n).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static List<String> replay(TradeJournal journal, long after) {
+        List<String> out = new ArrayList<>();
+        journal.replay(after, (sequence, type, payload) -> {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            out.add(sequence + ":" + type + ":" + new String(bytes, StandardCharsets.US_ASCII));
+        });
+        return out;
+    }
+
+    private void appendDurably(TradeJournal journal, int from, int to) throws IOException {
+        long last = 0;
+        for (int n = from; n <= to; n++) {
+            last = journal.append(TradeJournal.TRADE, payload(n));
+        }
+        journal.awaitDurable(last);
+    }
+
+    private Path firstSegment() {
+        return dir.resolve(String.format("%020d.journal", 1));
+    }
+
+    private void overwrite(Path segment, long position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+            channel.force(true);
+        }
+    }
+
+    @Test
+    void recordsSurviveReopen() throws IOException {
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            appendDurably(journal, 1, 3);
+            journal.append(TradeJournal.ABORT, payload(2));
+        }
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(4, journal.getLastSequence());
+            assertEquals(List.of("1:1:trade-01", "2:1:trade-02", "3:1:trade-03", "4:2:trade-02"), replay(journal, 0));
+            assertEquals(List.of("4:2:trade-02"), replay(journal, 3));
+            assertEquals(5, journal.append(TradeJournal.TRADE, payload(5)));
+        }
+    }
+
+    @Test
+    void recordFailingItsChecksumIsCutWithEverythingAfterIt() throws IOException {
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            appendDurably(journal, 1, 4);
+        }
+        // A torn write of record 3's payload; record 4 made it to disk intact
+        overwrite(firstSegment(), 2L * RECORD_BYTES + 17, new byte[] {'X'});
+
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(2, journal.getLastSequence());
+            assertEquals(List.of("1:1:trade-01", "2:1:trade-02"), replay(journal, 0));
+            appendDurably(journal, 30, 30);
+        }
+        // The surviving record 4 was cleared and cannot line up behind the new record 3
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(3, journal.getLastSequence());
+            assertEquals(List.of("1:1:trade-01", "2:1:trade-02", "3:1:trade-30"), replay(journal, 0));
+        }
+    }
+
+    @Test
+    void recordWithMissingHeaderIsCut() throws IOException {
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            appendDurably(journal, 1, 3);
+        }
+        // Record 2's header page never reached disk
+        overwrite(firstSegment(), RECORD_BYTES, new byte[17]);
+
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(1, journal.getLastSequence());
+            assertEquals(List.of("1:1:trade-01"), replay(journal, 0));
+        }
+    }
+
+    @Test
+    void lengthRunningPastTheSegmentIsCut() throws IOException {
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            appendDurably(journal, 1, 2);
+        }
+        overwrite(firstSegment(), RECORD_BYTES, ByteBuffer.allocate(4).putInt(0, SEGMENT_BYTES).array());
+
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(1, journal.getLastSequence());
+        }
+    }
+
+    @Test
+    void corruptionBeforeTheLastSegmentRefusesToOpen() throws IOException {
+        // One record per segment
+        try (TradeJournal journal = new TradeJournal(dir, RECORD_BYTES)) {
+            appendDurably(journal, 1, 3);
+            assertEquals(3, journal.getSegmentCount());
+        }
+        overwrite(firstSegment(), 17, new byte[] {'X'});
+
+        IOException e = assertThrows(IOException.class, () -> new TradeJournal(dir, RECORD_BYTES));
+        assertTrue(e.getMessage().contains("corrupt"), e.getMessage());
+    }
+
+    @Test
+    void rollsAndRetiresSegments() throws IOException {
+        try (TradeJournal journal = new TradeJournal(dir, RECORD_BYTES * 2)) {
+            appendDurably(journal, 1, 5);
+            assertEquals(3, journal.getSegmentCount());
+            assertTrue(journal.hasClosedSegments());
+            // Only closed segments that are fully applied go
+            assertEquals(1, journal.retire(3));
+            assertEquals(2, journal.getSegmentCount());
+        }
+        try (TradeJournal journal = new TradeJournal(dir, RECORD_BYTES * 2)) {
+            assertEquals(5, journal.getLastSequence());
+            assertEquals(List.of("3:1:trade-03", "4:1:trade-04", "5:1:trade-05"), replay(journal, 0));
+        }
+        assertTrue(Files.notExists(firstSegment()));
+    }
+
+    @Test
+    void startAfterSkipsToANewSegment() throws IOException {
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            appendDurably(journal, 1, 1);
+            journal.startAfter(10);
+            assertEquals(11, journal.append(TradeJournal.TRADE, payload(11)));
+            journal.awaitDurable(11);
+        }
+        try (TradeJournal journal = new TradeJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(List.of("1:1:trade-01", "11:1:trade-11"), replay(journal, 0));
+        }
+    }
+
+    @Test
+    void rejectsRecordsLargerThanASegment() throws IOException {
+        try (TradeJournal journal = new TradeJournal(dir, 64)) {
+            assertThrows(IOException.class, () -> journal.append(TradeJournal.TRADE, new byte[64]));
+        }
+    }
+
+    @Test
+    void concurrentAppendsShareSyncs() throws Exception {
+        try (TradeJournal journal = new TradeJournal(dir, 1 << 20)) {
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 100; i++) {
+                            journal.awaitDurable(journal.append(TradeJournal.TRADE, payload(i)));
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(800, journal.getLastSequence());
+            assertEquals(800, journal.getRecordCount());
+            assertTrue(journal.getSyncCount() <= 800);
+        }
+        try (TradeJournal journal = new TradeJournal(dir, 1 << 20)) {
+            assertEquals(800, replay(journal, 0).size());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package backend.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LotSaleTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 2, 10, 0);
+
+    // 10 @ 100 on day 0, 10 @ 120 on day 10, 10 @ 150 on day 20
+    private static final List<TaxLot> LOTS = List.of(
+            new TaxLot(1, "X", T0, 10, 100),
+            new TaxLot(2, "X", T0.plusDays(10), 10, 120),
+            new TaxLot(3, "X", T0.plusDays(20), 10, 150));
+    private static final LocalDateTime SOLD_AT = T0.plusDays(30);
+
+    @Test
+    void fifoSellsTheOldestSharesFirst() {
+        LotSale sale = LotSale.match(LotMethod.FIFO, LOTS, 15, SOLD_AT, 0);
+        assertEquals(10, sale.getTaken(0));
+        assertEquals(5, sale.getTaken(1));
+        assertEquals(0, sale.getTaken(2));
+        assertEquals(10 * 100 + 5 * 120, sale.getCostOfSold(), 1e-9);
+        assertEquals(1000 * 30 + 600 * 20, sale.getCostDays(), 1e-6);
+        assertEquals(0, sale.getShortfall());
+    }
+
+    @Test
+    void lifoSellsTheNewestSharesFirst() {
+        LotSale sale = LotSale.match(LotMethod.LIFO, LOTS, 15, SOLD_AT, 0);
+        assertEquals(0, sale.getTaken(0));
+        assertEquals(5, sale.getTaken(1));
+        assertEquals(10, sale.getTaken(2));
+        assertEquals(10 * 150 + 5 * 120, sale.getCostOfSold(), 1e-9);
+        assertEquals(1500 * 10 + 600 * 20, sale.getCostDays(), 1e-6);
+    }
+
+    @Test
+    void averagePricesEveryShareAtThePooledCost() {
+        LotSale sale = LotSale.match(LotMethod.AVERAGE, LOTS, 15, SOLD_AT, 0);
+        assertEquals(123.33333333, sale.getAverageCost(), 1e-6);
+        assertEquals(15 * sale.getAverageCost(), sale.getCostOfSold(), 1e-9);
+        // Shares still leave the oldest lots first
+        assertEquals(10, sale.getTaken(0));
+        assertEquals(5, sale.getTaken(1));
+    }
+
+    @Test
+    void sellingEverythingEmptiesEveryLotUnderAnyMethod() {
+        for (LotMethod method : LotMethod.values()) {
+            LotSale sale = LotSale.match(method, LOTS, 30, SOLD_AT, 0);
+            for (int i = 0; i < LOTS.size(); i++) {
+                assertEquals(LOTS.get(i).getQuantity(), sale.getTaken(i), method + " lot " + i);
+            }
+            assertEquals(3700, sale.getCostOfSold(), 1e-9, method.toString());
+        }
+    }
+
+    @Test
+    void shortfallIsPricedAtThePooledAverage() {
+        LotSale sale = LotSale.match(LotMethod.FIFO, LOTS, 35, SOLD_AT, 0);
+        assertEquals(5, sale.getShortfall());
+        assertEquals(3700 + 5 * (3700 / 30.0), sale.getCostOfSold(), 1e-9);
+    }
+
+    @Test
+    void noLotsFallsBackToTheGivenCost() {
+        LotSale sale = LotSale.match(LotMethod.FIFO, List.of(), 4, SOLD_AT, 50);
+        assertEquals(4, sale.getShortfall());
+        assertEquals(200, sale.getCostOfSold(), 1e-9);
+        assertEquals(0, sale.getCostDays(), 1e-9);
+    }
+
+    @Test
+    void realizedGainDependsOnTheMethod() {
+        double proceeds = 15 * 160.0;
+        double fifo = proceeds - LotSale.match(LotMethod.FIFO, LOTS, 15, SOLD_AT, 0).getCostOfSold();
+        double lifo = proceeds - LotSale.match(LotMethod.LIFO, LOTS, 15, SOLD_AT, 0).getCostOfSold();
+        double average = proceeds - LotSale.match(LotMethod.AVERAGE, LOTS, 15, SOLD_AT, 0).getCostOfSold();
+        assertEquals(800, fifo, 1e-9);
+        assertEquals(300, lifo, 1e-9);
+        assertEquals(550, average, 1e-6);
+    }
+}
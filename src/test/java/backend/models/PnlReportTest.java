@@ -0,0 +1,68 @@
+package backend.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PnlReportTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    @Test
+    void splitsRealizedAndUnrealizedBySymbol() {
+        List<TaxLot> lots = List.of(
+                new TaxLot(1, "AAA", NOW.minusDays(10), 10, 100),
+                new TaxLot(2, "AAA", NOW.minusDays(5), 5, 110),
+                new TaxLot(3, "BBB", NOW.minusDays(3), 2, 50));
+        PnlReport report = PnlReport.of("u", LotMethod.FIFO, lots, Map.of("AAA", 120.0),
+                Map.of("AAA", 30.0, "CCC", -20.0), 500, 0, NOW);
+
+        assertEquals(List.of("AAA", "BBB", "CCC"), report.getLines().stream().map(PnlReport.Line::getSymbol).toList());
+        PnlReport.Line aaa = report.getLines().get(0);
+        assertEquals(15, aaa.getQuantity());
+        assertEquals(1550, aaa.getCostBasis(), 1e-9);
+        assertEquals(10 * 20 + 5 * 10, aaa.getUnrealized(), 1e-9);
+        assertEquals(30, aaa.getRealized(), 1e-9);
+        // No price: valued at cost
+        assertEquals(0, report.getLines().get(1).getUnrealized(), 1e-9);
+        // Fully sold: realized only
+        assertEquals(0, report.getLines().get(2).getQuantity());
+        assertEquals(10, report.getTotalRealized(), 1e-9);
+        assertEquals(250, report.getTotalUnrealized(), 1e-9);
+    }
+
+    @Test
+    void annualizesReturnsOverAYear() {
+        // 100 grew to 121 over two years: 10% a year
+        List<TaxLot> lots = List.of(new TaxLot(1, "AAA", NOW.minusDays(731), 1, 100));
+        PnlReport report = PnlReport.of("u", LotMethod.FIFO, lots, Map.of("AAA", 121.0), Map.of(), 0, 0, NOW);
+        assertEquals(731, report.getHoldingDays(), 1e-6);
+        assertEquals(10, report.getAnnualReturn(), 0.01);
+    }
+
+    @Test
+    void reportsShortPeriodsWithoutExtrapolating() {
+        List<TaxLot> lots = List.of(new TaxLot(1, "AAA", NOW.minusDays(30), 10, 100));
+        PnlReport report = PnlReport.of("u", LotMethod.FIFO, lots, Map.of("AAA", 105.0), Map.of(), 0, 0, NOW);
+        assertEquals(5, report.getAnnualReturn(), 1e-9);
+    }
+
+    @Test
+    void includesSoldCapitalInTheReturn() {
+        // Sold 1000 of cost held 400 days for a 100 gain; holds nothing now
+        PnlReport report = PnlReport.of("u", LotMethod.FIFO, List.of(), Map.of(), Map.of("AAA", 100.0),
+                1000, 1000 * 400.0, NOW);
+        assertEquals(400, report.getHoldingDays(), 1e-9);
+        assertEquals((Math.pow(1.1, 365.25 / 400) - 1) * 100, report.getAnnualReturn(), 1e-9);
+    }
+
+    @Test
+    void nothingBoughtMeansNoReturn() {
+        PnlReport report = PnlReport.of("u", LotMethod.FIFO, List.of(), Map.of(), Map.of(), 0, 0, NOW);
+        assertEquals(0, report.getAnnualReturn(), 0);
+        assertEquals(0, report.getHoldingDays(), 0);
+    }
+}
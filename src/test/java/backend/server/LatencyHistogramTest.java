@@ -0,0 +1,105 @@
+package backend.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(0, histogram.percentile(0.99));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 0; micros < 16; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(0, histogram.percentile(0.0));
+        assertEquals(7, histogram.percentile(0.5));
+        assertEquals(15, histogram.percentile(1.0));
+        assertEquals(16, histogram.getCount());
+        assertEquals(120, histogram.getSumMicros());
+    }
+
+    @Test
+    void bucketUpperBoundIsWithinOneSixteenthAboveTheValue() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong(1L << random.nextInt(1, 37));
+            long bound = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue(bound >= value, "bound " + bound + " below " + value);
+            assertTrue(bound <= value + value / 16, "bound " + bound + " too far above " + value);
+        }
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        // The first value of each bucket is one past the previous bucket's upper bound
+        for (int index = 1; index < LatencyHistogram.bucketIndex(1L << 36); index++) {
+            long firstValue = LatencyHistogram.bucketUpperBound(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.bucketIndex(firstValue));
+            assertEquals(index, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(index)));
+        }
+    }
+
+    @Test
+    void percentileFindsTheTail() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(1_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(250_000);
+        }
+        long p99 = histogram.percentile(0.99);
+        long p999 = histogram.percentile(0.999);
+        assertTrue(p99 >= 1_000 && p99 < 1_100, "p99 was " + p99);
+        assertTrue(p999 >= 250_000 && p999 < 250_000 * 17 / 16, "p99.9 was " + p999);
+    }
+
+    @Test
+    void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(1.0));
+        assertEquals(0, histogram.getSumMicros());
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals((1L << 37) - 1, histogram.percentile(1.0));
+    }
+
+    @Test
+    void recordNanosConvertsToMicros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(12_345);
+        assertEquals(12, histogram.getSumMicros());
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i % 500);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, histogram.getCount());
+        assertEquals(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(499)), histogram.percentile(1.0));
+    }
+}
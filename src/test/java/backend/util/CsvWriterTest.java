@@ -0,0 +1,62 @@
+package backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvWriterTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final CsvWriter csv = new CsvWriter(out);
+
+    private String text() throws IOException {
+        csv.flush();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesRowsWithCrlf() throws IOException {
+        csv.row("id", "symbol");
+        csv.cell(1).cell("AAPL").endRow();
+        assertEquals("id,symbol\r\n1,AAPL\r\n", text());
+    }
+
+    @Test
+    void quotesSeparatorsQuotesAndNewlines() throws IOException {
+        csv.row("a,b", "say \"hi\"", "two\nlines", "cr\r");
+        assertEquals("\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",\"cr\r\"\r\n", text());
+    }
+
+    @Test
+    void neutralizesFormulaCells() throws IOException {
+        csv.row("=SUM(A1)", "+1", "-cmd", "@x", "plain");
+        assertEquals("\"'=SUM(A1)\",\"'+1\",\"'-cmd\",\"'@x\",plain\r\n", text());
+    }
+
+    @Test
+    void numericCellsAreNotTreatedAsFormulas() throws IOException {
+        csv.cell(-5).money(-12.345).money(Double.NaN).endRow();
+        assertEquals("-5,-12.35,\r\n", text());
+    }
+
+    @Test
+    void nullAndEmptyCellsAreEmpty() throws IOException {
+        csv.row(null, "", "x");
+        assertEquals(",,x\r\n", text());
+    }
+
+    @Test
+    void encodesUtf8AcrossBufferBoundaries() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3_000; i++) {
+            String name = "Société € 😀 " + i;
+            csv.cell(i).cell(name).endRow();
+            expected.append(i).append(',').append(name).append("\r\n");
+        }
+        assertEquals(expected.toString(), text());
+    }
+}
@@ -0,0 +1,140 @@
+package backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonWriterTest {
+
+    private static String text(JsonWriter json) {
+        return new String(json.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesNestedStructure() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.beginObject()
+                .name("success").value(true)
+                .name("count").value(3)
+                .name("items").beginArray()
+                    .beginObject().name("symbol").value("AAPL").endObject()
+                    .beginObject().name("symbol").value("MSFT").endObject()
+                .endArray()
+                .name("empty").beginArray().endArray()
+                .name("missing").nullValue()
+                .endObject();
+        assertEquals("{\"success\":true,\"count\":3,\"items\":[{\"symbol\":\"AAPL\"},{\"symbol\":\"MSFT\"}],"
+                + "\"empty\":[],\"missing\":null}", text(json));
+        assertEquals(json.toByteArray().length, json.size());
+    }
+
+    @Test
+    void escapesControlCharactersAndQuotes() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.value("say \"hi\"\\\n\r\t\u0001");
+        assertEquals("\"say \\\"hi\\\"\\\\\\n\\r\\t\\u0001\"", text(json));
+    }
+
+    @Test
+    void encodesUtf8IncludingSurrogatePairs() throws IOException {
+        String value = "café € 😀";
+        JsonWriter json = new JsonWriter();
+        json.value(value);
+        assertEquals("\"" + value + "\"", text(json));
+    }
+
+    @Test
+    void replacesUnpairedSurrogates() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.value("a\ud83db");
+        assertEquals("\"a?b\"", text(json));
+    }
+
+    @Test
+    void writesNumbers() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.beginArray()
+                .value(0L).value(-42L).value(Long.MIN_VALUE)
+                .value(2.0).value(0.1).value(Double.NaN).value(Double.POSITIVE_INFINITY)
+                .endArray();
+        assertEquals("[0,-42," + Long.MIN_VALUE + ",2.0,0.1,null,null]", text(json));
+    }
+
+    @Test
+    void roundsMoneyToCents() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.beginArray().money(12.345).money(-0.004).money(-7.5).money(100).endArray();
+        assertEquals("[12.35,0.00,-7.50,100.00]", text(json));
+    }
+
+    @Test
+    void writesMapsCollectionsAndArrays() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("name", "x");
+        map.put("qty", 5);
+        map.put("price", 1.5);
+        map.put("tags", List.of("a", "b"));
+        map.put("codes", new String[] {"c"});
+        map.put("none", null);
+        JsonWriter json = new JsonWriter();
+        json.value((Object) map);
+        assertEquals("{\"name\":\"x\",\"qty\":5,\"price\":1.5,\"tags\":[\"a\",\"b\"],\"codes\":[\"c\"],\"none\":null}",
+                text(json));
+    }
+
+    @Test
+    void stringArrayWritesNullsAsEmpty() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.stringArray(Arrays.asList("a", null)).stringArray(null);
+        assertEquals("[\"a\",\"\"],[]", text(json));
+    }
+
+    @Test
+    void endLineSeparatesNdjsonRecords() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.beginObject().name("id").value(1).endObject().endLine();
+        json.beginObject().name("id").value(2).endObject().endLine();
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", text(json));
+    }
+
+    @Test
+    void resetStartsANewDocument() throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.beginArray().value("first");
+        json.reset();
+        json.beginArray().value("second").endArray();
+        assertEquals("[\"second\"]", text(json));
+    }
+
+    @Test
+    void bufferedModeGrowsPastInitialCapacity() throws IOException {
+        JsonWriter json = new JsonWriter(64);
+        String long1 = "x".repeat(10_000);
+        json.beginObject().name("v").value(long1).endObject();
+        assertEquals("{\"v\":\"" + long1 + "\"}", text(json));
+    }
+
+    @Test
+    void streamingModeMatchesBufferedOutput() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter streaming = new JsonWriter(out);
+        JsonWriter buffered = new JsonWriter();
+        for (JsonWriter json : List.of(streaming, buffered)) {
+            json.beginArray();
+            for (int i = 0; i < 5_000; i++) {
+                json.beginObject().name("i").value(i).name("s").value("é😀 row " + i).endObject();
+            }
+            json.endArray();
+        }
+        streaming.flush();
+        assertEquals(text(buffered), out.toString(StandardCharsets.UTF_8));
+    }
+}
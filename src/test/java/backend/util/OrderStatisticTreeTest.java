@@ -0,0 +1,98 @@
+package backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderStatisticTreeTest {
+
+    @Test
+    void emptyTree() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.rank(5));
+        assertEquals(List.of(), tree.range(0, 10));
+        assertFalse(tree.remove(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(0));
+    }
+
+    @Test
+    void rejectsDuplicates() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+        assertTrue(tree.add(1));
+        assertFalse(tree.add(1));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    void ranksAndSelectsInComparatorOrder() {
+        OrderStatisticTree<String> tree = new OrderStatisticTree<>(Comparator.reverseOrder());
+        for (String value : List.of("b", "d", "a", "c")) {
+            tree.add(value);
+        }
+        assertEquals(List.of("d", "c", "b", "a"), tree.range(0, 4));
+        assertEquals(0, tree.rank("d"));
+        assertEquals(3, tree.rank("a"));
+        assertEquals("c", tree.get(1));
+        // An absent value ranks where it would be inserted
+        assertEquals(2, tree.rank("bb"));
+    }
+
+    @Test
+    void rangeClampsToTheTree() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+        for (int i = 0; i < 10; i++) {
+            tree.add(i);
+        }
+        assertEquals(List.of(7, 8, 9), tree.range(7, 5));
+        assertEquals(List.of(0, 1), tree.range(-3, 2));
+        assertEquals(List.of(), tree.range(10, 5));
+        assertEquals(List.of(), tree.range(3, 0));
+    }
+
+    @Test
+    void matchesTreeSetUnderRandomOperations() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+        TreeSet<Integer> reference = new TreeSet<>();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 50_000; i++) {
+            int value = random.nextInt(2_000);
+            if (random.nextInt(3) > 0) {
+                assertEquals(reference.add(value), tree.add(value));
+            } else {
+                assertEquals(reference.remove(value), tree.remove(value));
+            }
+            if (i % 1_000 == 0) {
+                assertMatches(reference, tree, random);
+            }
+        }
+        assertMatches(reference, tree, random);
+    }
+
+    private static void assertMatches(TreeSet<Integer> reference, OrderStatisticTree<Integer> tree, SplittableRandom random) {
+        List<Integer> expected = new ArrayList<>(reference);
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected, tree.range(0, expected.size()));
+        for (int probe = 0; probe < 50; probe++) {
+            int value = random.nextInt(2_000);
+            assertEquals(reference.headSet(value).size(), tree.rank(value));
+            assertEquals(reference.contains(value), tree.contains(value));
+        }
+        if (!expected.isEmpty()) {
+            int k = random.nextInt(expected.size());
+            assertEquals(expected.get(k), tree.get(k));
+            int count = random.nextInt(20);
+            assertEquals(expected.subList(k, Math.min(expected.size(), k + count)), tree.range(k, count));
+        }
+    }
+}